@@ -1,9 +1,9 @@
 package edu.columbia.cs.psl.phosphor;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Opcodes;
@@ -14,18 +14,24 @@ public class ClassHierarchyCreator extends ClassVisitor {
 		super(Configuration.ASM_VERSION);
 	}
 
-	// sub to list of super classes
-	public static Map<String, Set<String>> map = new HashMap<String, Set<String>>();
+	// sub to list of super classes, filled in by the analysis pass from several threads at once
+	public static ConcurrentHashMap<String, Set<String>> map = new ConcurrentHashMap<String, Set<String>>();
 			
 	@Override
 	public void visit(int version, int access, String name, String signature,
 			String superName, String[] interfaces) {
 		super.visit(version, access, name, signature, superName, interfaces);
-		if(!map.containsKey(name))
-			map.put(name, new HashSet<String>());
-		map.get(name).add(superName);
+		Set<String> supers = map.get(name);
+		if(supers == null) {
+			supers = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+			Set<String> prev = map.putIfAbsent(name, supers);
+			if(prev != null)
+				supers = prev;
+		}
+		if(superName != null)
+			supers.add(superName);
 		for(String inter: interfaces) 
-			map.get(name).add(inter);
+			supers.add(inter);
 	}
 	
 	public static Set<String> allSupers(String className) {
@@ -0,0 +1,171 @@
+package edu.columbia.cs.psl.phosphor;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The superclass, interfaces and access flags of every class that Phosphor has seen, filled in by the analysis pass
+ * of the static Instrumenter and by ClassSupertypeReadingTransformer at runtime. Used to answer the common supertype
+ * queries made while computing frames from the class files themselves, without loading any classes.
+ *
+ * The static Instrumenter saves the store into its output directory (see FILE_NAME), and the agent loads it from
+ * the instrumented JRE it is running on, so that it starts out knowing about every class in the JRE.
+ */
+public final class ClassHierarchyStore {
+
+	public static final String FILE_NAME = "phosphor-hierarchy.bin";
+	private static final int MAGIC = 0x50484348;
+	private static final int VERSION = 1;
+
+	private static final String[] NO_INTERFACES = new String[0];
+
+	static final class Entry {
+		final int access;
+		final String superName;
+		final String[] interfaces;
+
+		Entry(int access, String superName, String[] interfaces) {
+			this.access = access;
+			this.superName = superName;
+			this.interfaces = interfaces == null || interfaces.length == 0 ? NO_INTERFACES : interfaces;
+		}
+
+		boolean isInterface() {
+			return (access & Opcodes.ACC_INTERFACE) != 0;
+		}
+	}
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+	public void add(int access, String name, String superName, String[] interfaces) {
+		entries.put(name, new Entry(access, superName, interfaces));
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/* Returns the entry for the specified class, reading the header of its class file from loader if it is not known yet. */
+	Entry get(String name, ClassLoader loader) {
+		Entry ret = entries.get(name);
+		if(ret != null || loader == null || name.charAt(0) == '[')
+			return ret;
+		try(InputStream is = loader.getResourceAsStream(name + ".class")) {
+			if(is == null)
+				return null;
+			ClassReader cr = new ClassReader(is);
+			ret = new Entry(cr.getAccess(), cr.getSuperName(), cr.getInterfaces());
+			Entry prev = entries.putIfAbsent(name, ret);
+			return prev == null ? ret : prev;
+		} catch(IOException | RuntimeException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the same answer as ClassWriter.getCommonSuperClass would for the specified internal names, or null if
+	 * some of the types involved are unknown (or arrays). Classes that are not in the store are looked up as
+	 * resources from loader if it is not null.
+	 */
+	public String getCommonSuperClass(String type1, String type2, ClassLoader loader) {
+		if(type1.equals(type2))
+			return type1;
+		Entry e1 = get(type1, loader);
+		Entry e2 = get(type2, loader);
+		if(e1 == null || e2 == null)
+			return null;
+		Boolean b = isSubtype(type2, type1, loader);
+		if(b == null)
+			return null;
+		if(b)
+			return type1;
+		b = isSubtype(type1, type2, loader);
+		if(b == null)
+			return null;
+		if(b)
+			return type2;
+		if(e1.isInterface() || e2.isInterface())
+			return "java/lang/Object";
+		String c = type1;
+		while(true) {
+			Entry e = get(c, loader);
+			if(e == null)
+				return null;
+			c = e.superName;
+			if(c == null)
+				return "java/lang/Object";
+			b = isSubtype(type2, c, loader);
+			if(b == null)
+				return null;
+			if(b)
+				return c;
+		}
+	}
+
+	/* Returns whether type is sup or one of its subtypes, or null if not all of the supertypes of type are known. */
+	private Boolean isSubtype(String type, String sup, ClassLoader loader) {
+		if(type.equals(sup) || sup.equals("java/lang/Object"))
+			return true;
+		HashSet<String> visited = new HashSet<>();
+		ArrayDeque<String> toVisit = new ArrayDeque<>();
+		toVisit.add(type);
+		while(!toVisit.isEmpty()) {
+			String t = toVisit.poll();
+			if(!visited.add(t))
+				continue;
+			if(t.equals(sup))
+				return true;
+			Entry e = get(t, loader);
+			if(e == null)
+				return null;
+			if(e.superName != null)
+				toVisit.add(e.superName);
+			for(String iface : e.interfaces)
+				toVisit.add(iface);
+		}
+		return false;
+	}
+
+	public void save(File f) throws IOException {
+		File tmp = new File(f.getPath() + ".tmp");
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+			for(java.util.Map.Entry<String, Entry> e : entries.entrySet()) {
+				Entry entry = e.getValue();
+				out.writeUTF(e.getKey());
+				out.writeInt(entry.access);
+				out.writeUTF(entry.superName == null ? "" : entry.superName);
+				out.writeShort(entry.interfaces.length);
+				for(String iface : entry.interfaces)
+					out.writeUTF(iface);
+			}
+		}
+		if(f.exists() && !f.delete() || !tmp.renameTo(f))
+			throw new IOException("Unable to replace " + f);
+	}
+
+	/* Adds the entries saved in the specified file, without replacing any that are already known. */
+	public void load(File f) throws IOException {
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Not a class hierarchy file: " + f);
+			int n = in.readInt();
+			for(int i = 0; i < n; i++) {
+				String name = in.readUTF();
+				int access = in.readInt();
+				String superName = in.readUTF();
+				String[] interfaces = new String[in.readUnsignedShort()];
+				for(int j = 0; j < interfaces.length; j++)
+					interfaces[j] = in.readUTF();
+				entries.putIfAbsent(name, new Entry(access, superName.isEmpty() ? null : superName, interfaces));
+			}
+		}
+	}
+}
@@ -3,13 +3,10 @@ package edu.columbia.cs.psl.phosphor;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.tree.ClassNode;
 
 import java.security.ProtectionDomain;
-import java.util.ArrayList;
-import java.util.Arrays;
 
-/* Creates a class node containing information about its supertypes for each loaded class. */
+/* Records the supertypes of each loaded class in Instrumenter.classes and Instrumenter.hierarchy. */
 public class ClassSupertypeReadingTransformer extends PhosphorBaseTransformer {
 
     @Override
@@ -19,11 +16,7 @@ public class ClassSupertypeReadingTransformer extends PhosphorBaseTransformer {
             @Override
             public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
                 super.visit(version, access, name, signature, superName, interfaces);
-                ClassNode cn = new ClassNode();
-                cn.name = name;
-                cn.superName = superName;
-                cn.interfaces = new ArrayList<>(Arrays.asList(interfaces));
-                Instrumenter.classes.put(name, cn);
+                Instrumenter.addSupertypes(access, name, superName, interfaces);
             }
         }, ClassReader.SKIP_CODE);
         return null;
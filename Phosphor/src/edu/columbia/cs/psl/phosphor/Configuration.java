@@ -15,6 +15,7 @@ import edu.columbia.cs.psl.phosphor.instrumenter.TaintTrackingClassVisitor;
 import edu.columbia.cs.psl.phosphor.runtime.DerivedTaintListener;
 import edu.columbia.cs.psl.phosphor.runtime.Taint;
 import edu.columbia.cs.psl.phosphor.runtime.TaintSourceWrapper;
+import edu.columbia.cs.psl.phosphor.runtime.ViolationReporter;
 import edu.columbia.cs.psl.phosphor.struct.LazyArrayIntTags;
 import edu.columbia.cs.psl.phosphor.struct.LazyArrayObjTags;
 
@@ -24,6 +25,7 @@ public class Configuration {
 	public static boolean MULTI_TAINTING = true;
 	public static boolean IMPLICIT_TRACKING = true; //must be set to TRUE for MULTI_TAINTING to work!
 	public static boolean IMPLICIT_LIGHT_TRACKING;
+	public static boolean IMPLICIT_LIGHT_SUMMARY_TRACKING = false; //light tracking with a single control tag per method that is never popped
 	public static boolean IMPLICIT_HEADERS_NO_TRACKING = false;
 	public static boolean WITHOUT_BRANCH_NOT_TAKEN = false;
 	public static int ASM_VERSION = Opcodes.ASM7;
@@ -53,12 +55,17 @@ public class Configuration {
 	public static boolean READ_AND_SAVE_BCI = false;
 	
 	public static boolean ANNOTATE_LOOPS = false;
+	public static boolean CACHE_LOOP_CONTROL_TAGS = true; //reuse the control tags pushed by branches in loops across iterations
 	
 	public static String STRING_SET_TAG_TAINT_CLASS = "edu/columbia/cs/psl/phosphor/runtime/TaintChecker";
 	public static boolean ALWAYS_CHECK_FOR_FRAMES = false;
 
 	public static boolean CHECK_OBJECT_FIELDS = true;
 
+	public static boolean SPLIT_LARGE_METHODS = true; //outline parts of methods that become too big once instrumented
+	public static boolean FAST_PATH_DISPATCH = false; //call the uninstrumented copy of simple methods when no argument is tainted
+	public static int SOURCE_TRACE_DEPTH = -1; //frames kept in the labels of sources, which are then shared by call site (-1 keeps whole traces)
+
 	public static class Method {
 		final String name;
 		final String owner;
@@ -132,6 +139,8 @@ public class Configuration {
 	public static TaintSourceWrapper autoTainter = new TaintSourceWrapper();
 	
 	public static DerivedTaintListener derivedTaintListener = new DerivedTaintListener();
+
+	public static ViolationReporter violationReporter = new ViolationReporter();
 	public static boolean WITH_HEAVY_OBJ_EQUALS_HASHCODE = false;
 	public static String CACHE_DIR = null;
 	public static boolean TAINT_THROUGH_SERIALIZATION = true;
@@ -151,11 +160,15 @@ public class Configuration {
 		TAINT_ARRAY_STORE_OPCODE = (!MULTI_TAINTING ? Opcodes.IASTORE : Opcodes.AASTORE);
 		TAINT_LOAD_OPCODE = (!MULTI_TAINTING ? Opcodes.ILOAD : Opcodes.ALOAD);
 		TAINT_STORE_OPCODE = (!MULTI_TAINTING ? Opcodes.ISTORE : Opcodes.ASTORE);
-		OPT_CONSTANT_ARITHMETIC = !IMPLICIT_TRACKING && !IMPLICIT_LIGHT_TRACKING;
+		OPT_CONSTANT_ARITHMETIC = !IMPLICIT_TRACKING && !IMPLICIT_LIGHT_TRACKING && !IMPLICIT_LIGHT_SUMMARY_TRACKING;
 		TAINT_TAG_OBJ_ARRAY_CLASS = (MULTI_TAINTING ? LazyArrayObjTags.class : LazyArrayIntTags.class);
 		TAINT_TAG_OBJ_CLASS = (MULTI_TAINTING ? Taint.class : Integer.TYPE);
 		TAINT_INTERFACE_INTERNALNAME = !MULTI_TAINTING ? "edu/columbia/cs/psl/phosphor/struct/TaintedWithIntTag" : "edu/columbia/cs/psl/phosphor/struct/TaintedWithObjTag";
 
+		if(IMPLICIT_LIGHT_SUMMARY_TRACKING) {
+			IMPLICIT_LIGHT_TRACKING = true;
+			IMPLICIT_EXCEPTION_FLOW = false;
+		}
 		if(IMPLICIT_TRACKING || IMPLICIT_LIGHT_TRACKING)
 			WITH_TAGS_FOR_JUMPS = true;
 		if(WITH_SELECTIVE_INST)
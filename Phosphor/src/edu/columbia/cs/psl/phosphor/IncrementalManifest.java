@@ -0,0 +1,212 @@
+package edu.columbia.cs.psl.phosphor;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.*;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lets the static Instrumenter skip inputs that have not changed since it last wrote to the same output directory.
+ *
+ * During the analysis pass, the hash of every class that is read is recorded. Before instrumenting, each class is
+ * given a key that combines its own hash with the keys of its superclass and interfaces (as recorded in
+ * Instrumenter.classes), so that changing a class or its place in the hierarchy also changes the keys of all of its
+ * subclasses. Each input file (a class file or a zip) is then given a key from the hash of its contents and the keys
+ * of the classes in it.
+ *
+ * The keys of the outputs that were written, along with a fingerprint of the Phosphor build and configuration, are
+ * saved to a manifest in the output directory. On the next run with the same fingerprint, an input whose key is
+ * unchanged and whose output still exists is not processed again, and in a zip that did change, each class whose
+ * key is unchanged is copied from the previous output instead of being instrumented again.
+ */
+final class IncrementalManifest {
+
+	static final String MANIFEST_NAME = ".phosphor-manifest";
+	private static final String HEADER = "phosphor-manifest 1 ";
+
+	private final File outputDir;
+	private final long fingerprint;
+	/* Keys of the outputs from the previous run, by path relative to the output directory. Sorted, so that the
+	 * classes in a zip ("zip path!/entry name") follow the zip's own path. */
+	private final TreeMap<String, Long> previous = new TreeMap<>();
+	/* Keys of the outputs written or kept by this run */
+	private final ConcurrentHashMap<String, Long> current = new ConcurrentHashMap<>();
+
+	/* Hash of each class that was analyzed, by class name (classes are analyzed on several threads) */
+	private final ConcurrentHashMap<String, Long> classHashes = new ConcurrentHashMap<>();
+	/* Names of the classes in each input, by input path. A zip that has to be read again (see Instrumenter) has its
+	 * classes analyzed twice */
+	private final ConcurrentHashMap<String, Set<String>> inputClasses = new ConcurrentHashMap<>();
+	/* Sum of the keys of the classes in each input, by input path */
+	private final Map<String, Long> inputClassKeys = new HashMap<>();
+	private Map<String, Long> classKeys;
+
+	IncrementalManifest(File outputDir, long fingerprint) {
+		this.outputDir = outputDir;
+		this.fingerprint = fingerprint;
+		File f = new File(outputDir, MANIFEST_NAME);
+		if(!f.isFile())
+			return;
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8"))) {
+			String line = reader.readLine();
+			if(line == null || !line.equals(HEADER + Long.toHexString(fingerprint)))
+				return;
+			while((line = reader.readLine()) != null) {
+				int tab = line.indexOf('\t');
+				if(tab > 0)
+					previous.put(line.substring(tab + 1), Long.parseLong(line.substring(0, tab)));
+			}
+		} catch(IOException | NumberFormatException ex) {
+			System.err.println("Ignoring unreadable " + f);
+			previous.clear();
+		}
+	}
+
+	/* Records a class that was read from the specified input (a path, possibly to a jar nested in a zip) during the analysis pass */
+	void classAnalyzed(String input, byte[] classBytes) {
+		String name;
+		try {
+			name = new ClassReader(classBytes).getClassName();
+		} catch(RuntimeException ex) {
+			return;
+		}
+		classHashes.put(name, InstrumentedClassCache.hash(classBytes));
+		int nested = input.indexOf("!/");
+		if(nested >= 0)
+			input = input.substring(0, nested);
+		Set<String> names = inputClasses.get(input);
+		if(names == null) {
+			names = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+			Set<String> prev = inputClasses.putIfAbsent(input, names);
+			if(prev != null)
+				names = prev;
+		}
+		names.add(name);
+	}
+
+	/* Computes the keys of all of the analyzed classes, once the analysis pass is done */
+	void analysisFinished() {
+		classKeys = new HashMap<>();
+		for(String name : classHashes.keySet())
+			classKey(name);
+		for(Map.Entry<String, Set<String>> e : inputClasses.entrySet()) {
+			long sum = 0;
+			for(String name : e.getValue())
+				sum += classKeys.get(name);
+			inputClassKeys.put(e.getKey(), sum);
+		}
+	}
+
+	private long classKey(String name) {
+		Long ret = classKeys.get(name);
+		if(ret != null)
+			return ret;
+		Long own = classHashes.get(name);
+		if(own == null) {
+			// Not one of the inputs: it can only be depended on by name
+			byte[] b = name.getBytes();
+			return InstrumentedClassCache.hash(b, 0, b.length);
+		}
+		// Guards against cycles in broken inputs
+		classKeys.put(name, own);
+		long key = own * 31;
+		ClassNode cn = Instrumenter.classes.get(name);
+		if(cn != null) {
+			if(cn.superName != null)
+				key += classKey(cn.superName);
+			if(cn.interfaces != null)
+				for(String iface : cn.interfaces)
+					key = key * 31 + classKey(iface);
+		}
+		classKeys.put(name, key);
+		return key;
+	}
+
+	/* Returns the key of the class with the specified bytes */
+	long keyOfClass(byte[] classBytes) {
+		long hash = InstrumentedClassCache.hash(classBytes);
+		String name;
+		try {
+			name = new ClassReader(classBytes).getClassName();
+		} catch(RuntimeException ex) {
+			return hash;
+		}
+		Long key = classKeys == null ? null : classKeys.get(name);
+		// The class may have been replaced by another one with the same name in a different input
+		return key == null || !Long.valueOf(hash).equals(classHashes.get(name)) ? hash : key;
+	}
+
+	/* Returns the key of the specified input file, which is the input to the analysis pass with the specified path */
+	long keyOfInput(File input, String path) throws IOException {
+		long key = hashFile(input);
+		Long classes = inputClassKeys.get(path);
+		return classes == null ? key : key * 31 + classes;
+	}
+
+	private static long hashFile(File f) throws IOException {
+		try(InputStream is = new FileInputStream(f)) {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream((int) Math.min(f.length(), Integer.MAX_VALUE - 8));
+			byte[] buf = new byte[65536];
+			int n;
+			while((n = is.read(buf)) != -1)
+				bos.write(buf, 0, n);
+			byte[] b = bos.toByteArray();
+			return InstrumentedClassCache.hash(b, 0, b.length);
+		}
+	}
+
+	String relativePath(File output) {
+		String root = outputDir.getAbsolutePath();
+		String path = output.getAbsolutePath();
+		if(path.startsWith(root))
+			path = path.substring(root.length());
+		return path.replace(File.separatorChar, '/');
+	}
+
+	/* Returns whether there was a manifest from a previous run with the same fingerprint */
+	boolean hasPrevious() {
+		return !previous.isEmpty();
+	}
+
+	/* Returns whether the output at the specified path was written for the specified key by the previous run */
+	boolean isUnchanged(String path, long key) {
+		Long prev = previous.get(path);
+		return prev != null && prev == key;
+	}
+
+	/* Records the key of an output written or kept by this run */
+	void written(String path, long key) {
+		current.put(path, key);
+	}
+
+	/* Records the key of an output kept as the previous run wrote it. The keys of the classes in it, if it is a zip,
+	 * are kept too, so that the next run can still reuse them when only some of them change. */
+	void kept(String path, long key) {
+		written(path, key);
+		String prefix = path + "!/";
+		for(Map.Entry<String, Long> e : previous.tailMap(prefix).entrySet()) {
+			if(!e.getKey().startsWith(prefix))
+				break;
+			current.put(e.getKey(), e.getValue());
+		}
+	}
+
+	/* Writes the manifest for this run, replacing the previous one */
+	void save() throws IOException {
+		File tmp = new File(outputDir, MANIFEST_NAME + ".tmp");
+		try(Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"))) {
+			w.write(HEADER + Long.toHexString(fingerprint) + "\n");
+			for(Map.Entry<String, Long> e : current.entrySet())
+				w.write(e.getValue() + "\t" + e.getKey() + "\n");
+		}
+		File f = new File(outputDir, MANIFEST_NAME);
+		if(f.exists() && !f.delete() || !tmp.renameTo(f))
+			throw new IOException("Unable to replace " + f);
+	}
+}
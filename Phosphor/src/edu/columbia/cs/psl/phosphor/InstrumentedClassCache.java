@@ -0,0 +1,303 @@
+package edu.columbia.cs.psl.phosphor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.security.CodeSource;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of instrumented classes for the cacheDir agent option, kept in a single append-only archive in the cache
+ * directory. Each record holds the instrumented bytes of a class together with a 64 bit hash and the length of the
+ * original bytes, and a fingerprint of the Phosphor build and Configuration that produced it, so runs with different
+ * options can share a cache directory without being served each other's classes.
+ *
+ * When the archive is opened, the valid prefix of it is memory mapped and the records with the current fingerprint
+ * are indexed by hash. Lookups go through a ConcurrentHashMap and take no locks. Writers reserve space at the end of
+ * the archive atomically and then write their record with a positional write, so they can run concurrently. Every
+ * record carries a checksum of its contents, and a record that was only partially written when the JVM died is
+ * detected when the archive is next opened: it and everything after it is dropped.
+ *
+ * Only one JVM at a time appends to an archive (the one that gets its file lock); any other JVM uses it read-only.
+ */
+public final class InstrumentedClassCache {
+
+	static final String ARCHIVE_NAME = "phosphor-cache.bin";
+	private static final int MAGIC = 0x50484331;
+	// magic, fingerprint, hash of the original class, length of the original class, length of the data, checksum of the data
+	private static final int HEADER_SIZE = 4 + 8 + 8 + 4 + 4 + 4;
+
+	/* The options that were passed to the agent, see PreMain.premain. */
+	static String agentArgs;
+
+	private static volatile InstrumentedClassCache instance;
+	private static volatile boolean failed;
+
+	private final FileChannel channel;
+	private final FileLock lock;
+	private final long fingerprint;
+	private final MappedByteBuffer mapped;
+	private final AtomicLong end;
+	/* Offset of the record for each hash of an original class, for the current fingerprint */
+	private final ConcurrentHashMap<Long, Long> index = new ConcurrentHashMap<>();
+
+	InstrumentedClassCache(File archive, long fingerprint) throws IOException {
+		this.fingerprint = fingerprint;
+		this.channel = new RandomAccessFile(archive, "rw").getChannel();
+		FileLock l;
+		try {
+			l = channel.tryLock();
+		} catch(OverlappingFileLockException ex) {
+			l = null;
+		}
+		this.lock = l;
+		long size = channel.size();
+		MappedByteBuffer m = null;
+		if(size > 0 && size <= Integer.MAX_VALUE) {
+			m = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			m.order(ByteOrder.BIG_ENDIAN);
+		}
+		this.mapped = m;
+		long valid = m == null ? 0 : scan(m);
+		if(valid < size && lock != null) {
+			try {
+				channel.truncate(valid);
+			} catch(IOException ex) {
+				// Some platforms do not allow truncating a mapped file, the tail will just be overwritten
+			}
+		}
+		this.end = new AtomicLong(valid);
+	}
+
+	/* Indexes the records in the archive, returning the length of its valid prefix */
+	private long scan(MappedByteBuffer m) {
+		int pos = 0;
+		int limit = m.limit();
+		while(pos + HEADER_SIZE <= limit) {
+			if(m.getInt(pos) != MAGIC)
+				break;
+			long recordFingerprint = m.getLong(pos + 4);
+			long classHash = m.getLong(pos + 12);
+			int dataLength = m.getInt(pos + 24);
+			int checksum = m.getInt(pos + 28);
+			if(dataLength < 0 || pos + HEADER_SIZE + (long) dataLength > limit)
+				break;
+			if(checksum != checksum(m, pos + HEADER_SIZE, dataLength))
+				break;
+			if(recordFingerprint == fingerprint)
+				index.put(classHash, (long) pos);
+			pos += HEADER_SIZE + dataLength;
+		}
+		return pos;
+	}
+
+	/**
+	 * Returns the cache for Configuration.CACHE_DIR, opening it on first use, or null if there is no cache directory
+	 * or the archive could not be opened.
+	 */
+	public static InstrumentedClassCache getInstance() {
+		InstrumentedClassCache ret = instance;
+		if(ret != null || failed || Configuration.CACHE_DIR == null)
+			return ret;
+		synchronized(InstrumentedClassCache.class) {
+			if(instance == null && !failed) {
+				try {
+					instance = new InstrumentedClassCache(new File(Configuration.CACHE_DIR, ARCHIVE_NAME), computeFingerprint(agentArgs));
+				} catch(IOException ex) {
+					System.err.printf("Failed to open instrumentation cache in %s. Generated files are not being cached.\n", Configuration.CACHE_DIR);
+					ex.printStackTrace();
+					failed = true;
+				}
+			}
+			return instance;
+		}
+	}
+
+	/* Returns the instrumented bytes cached for the specified original class bytes, or null if there are none. */
+	public byte[] get(byte[] classfileBuffer, long classHash) {
+		Long offset = index.get(classHash);
+		if(offset == null)
+			return null;
+		try {
+			ByteBuffer header = read(offset, HEADER_SIZE);
+			if(header.getInt(20) != classfileBuffer.length)
+				return null;
+			int dataLength = header.getInt(24);
+			ByteBuffer data = read(offset + HEADER_SIZE, dataLength);
+			byte[] ret = new byte[dataLength];
+			data.get(ret);
+			return ret;
+		} catch(IOException ex) {
+			ex.printStackTrace();
+			return null;
+		}
+	}
+
+	private ByteBuffer read(long offset, int length) throws IOException {
+		if(mapped != null && offset + length <= mapped.limit()) {
+			ByteBuffer ret = mapped.duplicate();
+			ret.position((int) offset);
+			ret.limit((int) offset + length);
+			return ret.slice();
+		}
+		ByteBuffer ret = ByteBuffer.allocate(length);
+		while(ret.hasRemaining()) {
+			if(channel.read(ret, offset + ret.position()) < 0)
+				throw new IOException("Truncated instrumentation cache record at " + offset);
+		}
+		ret.flip();
+		return ret;
+	}
+
+	/* Appends the instrumented bytes for the specified original class bytes to the archive. */
+	public void put(byte[] classfileBuffer, long classHash, byte[] instrumented) {
+		if(lock == null || index.containsKey(classHash))
+			return;
+		ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + instrumented.length);
+		record.putInt(MAGIC);
+		record.putLong(fingerprint);
+		record.putLong(classHash);
+		record.putInt(classfileBuffer.length);
+		record.putInt(instrumented.length);
+		record.putInt((int) hash(instrumented, 0, instrumented.length));
+		record.put(instrumented);
+		record.flip();
+		long offset = end.getAndAdd(record.limit());
+		try {
+			while(record.hasRemaining())
+				channel.write(record, offset + record.position());
+			index.putIfAbsent(classHash, offset);
+		} catch(IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	void close() throws IOException {
+		if(lock != null)
+			lock.release();
+		channel.close();
+	}
+
+	private static int checksum(ByteBuffer buf, int offset, int length) {
+		long h = SEED;
+		int i = 0;
+		for(; i + 8 <= length; i += 8)
+			h = round(h, buf.getLong(offset + i));
+		long tail = 0;
+		for(int shift = 0; i < length; i++, shift += 8)
+			tail |= (buf.get(offset + i) & 0xFFL) << shift;
+		return (int) finish(round(h, tail), length);
+	}
+
+	private static final long SEED = 0x9E3779B97F4A7C15L;
+	private static final long M1 = 0xBF58476D1CE4E5B9L;
+	private static final long M2 = 0x94D049BB133111EBL;
+
+	private static long round(long h, long k) {
+		k *= M1;
+		k = Long.rotateLeft(k, 31);
+		k *= M2;
+		h ^= k;
+		return Long.rotateLeft(h, 27) * 5 + 0x52DCE729;
+	}
+
+	private static long finish(long h, int length) {
+		h ^= length;
+		h = (h ^ (h >>> 30)) * M1;
+		h = (h ^ (h >>> 27)) * M2;
+		return h ^ (h >>> 31);
+	}
+
+	/* A fast, non-cryptographic 64 bit hash of the specified bytes. */
+	public static long hash(byte[] b, int offset, int length) {
+		long h = SEED;
+		int i = 0;
+		for(; i + 8 <= length; i += 8) {
+			int p = offset + i;
+			long k = ((long) b[p] << 56) | ((b[p + 1] & 0xFFL) << 48) | ((b[p + 2] & 0xFFL) << 40) | ((b[p + 3] & 0xFFL) << 32)
+					| ((b[p + 4] & 0xFFL) << 24) | ((b[p + 5] & 0xFFL) << 16) | ((b[p + 6] & 0xFFL) << 8) | (b[p + 7] & 0xFFL);
+			h = round(h, k);
+		}
+		long tail = 0;
+		for(int shift = 0; i < length; i++, shift += 8)
+			tail |= (b[offset + i] & 0xFFL) << shift;
+		return finish(round(h, tail), length);
+	}
+
+	public static long hash(byte[] b) {
+		return hash(b, 0, b.length);
+	}
+
+	/**
+	 * Fingerprints everything that the instrumented bytes depend on besides the original bytes: the Phosphor build
+	 * (its version and the jar it was loaded from), the static fields of Configuration and the specified
+	 * comma-separated options, including the size and modification time of any files they name.
+	 */
+	static long computeFingerprint(String options) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(PreMain.class.getPackage() == null ? null : PreMain.class.getPackage().getImplementationVersion());
+		try {
+			CodeSource src = PreMain.class.getProtectionDomain().getCodeSource();
+			URL location = src == null ? null : src.getLocation();
+			if(location != null && "file".equals(location.getProtocol()))
+				appendFile(sb, new File(location.toURI()));
+		} catch(Exception ex) {
+			// Fall back to the version alone
+		}
+		for(Field f : Configuration.class.getDeclaredFields()) {
+			if(!Modifier.isStatic(f.getModifiers()) || f.getName().equals("CACHE_DIR"))
+				continue;
+			try {
+				f.setAccessible(true);
+				sb.append(';').append(f.getName()).append('=');
+				appendValue(sb, f.get(null));
+			} catch(IllegalAccessException ex) {
+				// Skip it
+			}
+		}
+		if(options != null) {
+			for(String s : options.split(",")) {
+				// Neither changes the instrumented bytes
+				if(s.startsWith("cacheDir=") || s.startsWith("profile="))
+					continue;
+				sb.append(';').append(s);
+				int eq = s.indexOf('=');
+				if(eq > 0)
+					appendFile(sb, new File(s.substring(eq + 1)));
+			}
+		}
+		byte[] b = sb.toString().getBytes();
+		return hash(b, 0, b.length);
+	}
+
+	private static void appendFile(StringBuilder sb, File f) {
+		if(f.isFile())
+			sb.append('[').append(f.length()).append(',').append(f.lastModified()).append(']');
+	}
+
+	private static void appendValue(StringBuilder sb, Object v) {
+		if(v == null || v instanceof String || v instanceof Number || v instanceof Boolean || v instanceof Character)
+			sb.append(v);
+		else if(v instanceof Class)
+			sb.append(((Class<?>) v).getName());
+		else if(v instanceof Collection) {
+			// Independent of iteration order
+			int h = 0;
+			for(Object o : (Collection<?>) v)
+				h += o == null ? 0 : o.hashCode();
+			sb.append(((Collection<?>) v).size()).append('/').append(h);
+		} else
+			sb.append(v.getClass().getName());
+	}
+}
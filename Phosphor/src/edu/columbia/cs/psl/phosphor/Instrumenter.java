@@ -1,5 +1,7 @@
 package edu.columbia.cs.psl.phosphor;
 
+import edu.columbia.cs.psl.phosphor.instrumenter.InstrumentationProfiler;
+import edu.columbia.cs.psl.phosphor.instrumenter.MethodSizeStats;
 import edu.columbia.cs.psl.phosphor.instrumenter.TaintTrackingClassVisitor;
 import edu.columbia.cs.psl.phosphor.runtime.StringUtils;
 import edu.columbia.cs.psl.phosphor.runtime.Tainter;
@@ -20,6 +22,7 @@ import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.*;
 
 public class Instrumenter {
@@ -113,12 +116,27 @@ public class Instrumenter {
 		;
 	}
 
-	static HashMap<String, ClassNode> allClasses = new HashMap<String, ClassNode>();
+	static Map<String, ClassNode> allClasses = new ConcurrentHashMap<String, ClassNode>();
+
+	public static Map<String, ClassNode> classes = new ConcurrentHashMap<String, ClassNode>();
+	// Supertypes of every class in classes, for computing frames without loading classes
+	public static final ClassHierarchyStore hierarchy = new ClassHierarchyStore();
+
+	/* Records the supertypes of the specified class in classes and hierarchy. */
+	static void addSupertypes(int access, String name, String superName, String[] interfaces) {
+		ClassNode cn = new ClassNode();
+		cn.name = name;
+		cn.access = access;
+		cn.superName = superName;
+		cn.interfaces = new ArrayList<>(Arrays.asList(interfaces));
+		classes.put(name, cn);
+		hierarchy.add(access, name, superName, interfaces);
+	}
 
-	public static HashMap<String, ClassNode> classes = new HashMap<String, ClassNode>();
+	/* Called for every input class during the analysis pass, from several threads at once. */
 	public static void analyzeClass(InputStream is) {
 		ClassReader cr;
-		nTotal++;
+		nTotal.incrementAndGet();
 		try {
 			cr = new ClassReader(is);
 			if (Configuration.WITH_SELECTIVE_INST) {
@@ -137,11 +155,7 @@ public class Instrumenter {
 				@Override
 				public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
 					super.visit(version, access, name, signature, superName, interfaces);
-					ClassNode cn = new ClassNode();
-					cn.name = name;
-					cn.superName = superName;
-					cn.interfaces = new ArrayList<>(Arrays.asList(interfaces));
-					Instrumenter.classes.put(name, cn);
+					addSupertypes(access, name, superName, interfaces);
 				}
 			}, ClassReader.SKIP_CODE);
 			is.close();
@@ -150,15 +164,20 @@ public class Instrumenter {
 		}
 	}
 
-	static int nTotal = 0;
+	static final AtomicInteger nTotal = new AtomicInteger();
 	static int n = 0;
+	static final AtomicInteger nInstrumented = new AtomicInteger();
+	// Outputs and classes in zips that were kept from the previous run, since they had not changed
+	static final AtomicInteger nReused = new AtomicInteger();
+	// Null unless only the inputs that changed since the last run are being instrumented
+	static IncrementalManifest manifest;
 	public static byte[] instrumentClass(String path, InputStream is, boolean renameInterfaces) {
 		try {
 			// n is shared among threads, but is used only to provide progress feedback
 			// Therefore, it's ok to increment it in a non-thread-safe way
 			n++;
 			if(n % 1000 ==0)
-				System.out.println("Processed: " + n + "/"+nTotal);
+				System.out.println("Processed: " + n + "/" + nTotal.get());
 			curPath = path;
 			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
 
@@ -179,6 +198,8 @@ public class Instrumenter {
 					ret = ret2;
 			}
 			curPath = null;
+			if (ret != null)
+				nInstrumented.incrementAndGet();
 			return ret;
 		} catch (Exception ex) {
 			curPath = null;
@@ -196,6 +217,9 @@ public class Instrumenter {
 	static Option opt_controlLightTrack = Option.builder("lightControlTrack")
 			.desc("Enable taint tracking through control flow, but does NOT propogate control dependencies between methods")
 			.build();
+	static Option opt_controlLightTrackSummary = Option.builder("lightControlTrackSummary")
+			.desc("Enable taint tracking through control flow using a single tag per method: the union of the tags of every branch taken in the method so far. Cheaper, but less precise than -lightControlTrack")
+			.build();
 	static Option opt_controlTrackExceptions = Option.builder("controlTrackExceptions")
 			.desc("Enable taint tracking through exceptional control flow")
 			.build();
@@ -245,6 +269,22 @@ public class Instrumenter {
 			.build();
 	static Option opt_alwaysCheckForFrames = Option.builder("alwaysCheckForFrames")
 			.desc("Always check to ensure that class files with version > Java 8 ACTUALLY have frames - useful for instrumenting android-targeting code that is compiled with Java 8 but without frames").build();
+	static Option opt_withoutLoopControlTagCache = Option.builder("withoutLoopControlTagCache")
+			.desc("Disable reusing the control tags pushed by branches inside of loops across iterations")
+			.build();
+	static Option opt_withoutMethodSplitting = Option.builder("withoutMethodSplitting")
+			.desc("Do not split methods that become too large for the JVM once instrumented")
+			.build();
+	static Option opt_fastPathDispatch = Option.builder("fastPathDispatch")
+			.desc("Call the uninstrumented copy of methods that only compute on their arguments when none of them is tainted")
+			.build();
+	static Option opt_withoutIncremental = Option.builder("withoutIncremental")
+			.desc("Instrument every input, instead of only those that changed since the last run into the same output directory")
+			.build();
+	static Option opt_profile = Option.builder("profile")
+			.desc("Write a JSON profile of the time and size growth of instrumenting each class and method to the specified file")
+			.hasArg()
+			.build();
 	static Option help = Option.builder("help")
 		.desc("print this message")
 		.build();
@@ -266,6 +306,7 @@ public class Instrumenter {
 		options.addOption(opt_controlTrack);
 		options.addOption(opt_controlLightTrack);
 		options.addOption(opt_controlTrackExceptions);
+		options.addOption(opt_controlLightTrackSummary);
 		options.addOption(opt_dataTrack);
 		options.addOption(opt_trackArrayLengthTaints);
 		options.addOption(opt_trackArrayIndexTaints);
@@ -281,6 +322,11 @@ public class Instrumenter {
 		options.addOption(opt_withoutBranchNotTaken);
 		options.addOption(opt_disableLocalsInfo);
 		options.addOption(opt_alwaysCheckForFrames);
+		options.addOption(opt_withoutMethodSplitting);
+		options.addOption(opt_withoutLoopControlTagCache);
+		options.addOption(opt_fastPathDispatch);
+		options.addOption(opt_withoutIncremental);
+		options.addOption(opt_profile);
 
 		CommandLineParser parser = new BasicParser();
 	    CommandLine line = null;
@@ -303,6 +349,7 @@ public class Instrumenter {
 		Configuration.MULTI_TAINTING = line.hasOption("multiTaint");
 		Configuration.IMPLICIT_TRACKING = line.hasOption("controlTrack");
 		Configuration.IMPLICIT_LIGHT_TRACKING = line.hasOption("lightControlTrack");
+		Configuration.IMPLICIT_LIGHT_SUMMARY_TRACKING = line.hasOption("lightControlTrackSummary");
 		Configuration.IMPLICIT_EXCEPTION_FLOW = line.hasOption("controlTrackExceptions");
 		Configuration.DATAFLOW_TRACKING = !line.hasOption("withoutDataTrack");
 		if (Configuration.IMPLICIT_TRACKING)
@@ -323,7 +370,12 @@ public class Instrumenter {
 		Configuration.WITHOUT_BRANCH_NOT_TAKEN = line.hasOption("withoutBranchNotTaken");
 		Configuration.SKIP_LOCAL_VARIABLE_TABLE = line.hasOption("skipLocals");
 		Configuration.ALWAYS_CHECK_FOR_FRAMES = line.hasOption("alwaysCheckForFrames");
+		Configuration.SPLIT_LARGE_METHODS = !line.hasOption("withoutMethodSplitting");
+		Configuration.CACHE_LOOP_CONTROL_TAGS = !line.hasOption("withoutLoopControlTagCache");
+		Configuration.FAST_PATH_DISPATCH = line.hasOption("fastPathDispatch");
 		Configuration.init();
+		if (line.hasOption("profile"))
+			InstrumentationProfiler.enable(new File(line.getOptionValue("profile")));
 
 		
 		if (Configuration.WITH_SELECTIVE_INST)
@@ -356,6 +408,20 @@ public class Instrumenter {
 			System.out.println("Branch not taken: enabled");
 		}
 
+		if (!line.hasOption("withoutIncremental") && !Configuration.WITH_SELECTIVE_INST && line.getArgs().length >= 2) {
+			// Everything besides the inputs that the output depends on
+			StringBuilder opts = new StringBuilder();
+			for (Option o : line.getOptions()) {
+				opts.append(o.getOpt());
+				if (o.getValue() != null)
+					opts.append('=').append(o.getValue());
+				opts.append(',');
+			}
+			for (int i = 2; i < line.getArgs().length; i++)
+				opts.append("classpath=").append(line.getArgs()[i]).append(',');
+			manifest = new IncrementalManifest(new File(line.getArgs()[1]), InstrumentedClassCache.computeFingerprint(opts.toString()));
+		}
+
 		TaintTrackingClassVisitor.IS_RUNTIME_INST = false;
 		ANALYZE_ONLY = true;
 		System.out.println("Starting analysis");
@@ -394,8 +460,24 @@ public class Instrumenter {
 		}
 		System.out.println("Analysis Completed: Beginning Instrumentation Phase");
 //		finishedAnalysis();
+		if (manifest != null)
+			manifest.analysisFinished();
 		ANALYZE_ONLY = false;
 		_main(line.getArgs());
+		try {
+			hierarchy.save(new File(rootOutputDir, ClassHierarchyStore.FILE_NAME));
+		} catch (IOException e) {
+			System.err.println("Unable to save the class hierarchy, agents using the output will start without it");
+			e.printStackTrace();
+		}
+		if (manifest != null) {
+			try {
+				manifest.save();
+			} catch (IOException e) {
+				System.err.println("Unable to save the manifest, the next run will instrument everything again");
+				e.printStackTrace();
+			}
+		}
 		if (Configuration.WITH_SELECTIVE_INST) {
 			// write out file again
 			StringBuilder buf = new StringBuilder();
@@ -505,13 +587,19 @@ public class Instrumenter {
 			System.exit(-1);
 		}
 
+		long start = System.currentTimeMillis();
+		int nAnalyzedBefore = nTotal.get();
+		int nInstrumentedBefore = nInstrumented.get();
+		int nReusedBefore = nReused.get();
 		final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		// Threads that read and write zips, mostly waiting on executor
+		final ExecutorService zipExecutor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
 		LinkedList<Future> toWait = new LinkedList<>();
 
 		if (f.isDirectory()) {
-			toWait.addAll(processDirectory(f, rootOutputDir, true, executor));
+			toWait.addAll(processDirectory(f, rootOutputDir, true, executor, zipExecutor));
 		} else if (inputFolder.endsWith(".jar") || inputFolder.endsWith(".zip") || inputFolder.endsWith(".war")) {
-			toWait.addAll(processZip(f, rootOutputDir, executor));
+			toWait.addAll(processZip(f, rootOutputDir, executor, zipExecutor));
 		} else if (inputFolder.endsWith(".class")) {
 			toWait.addAll(processClass(f, rootOutputDir, executor));
 		} else {
@@ -530,13 +618,28 @@ public class Instrumenter {
 		}
 
 		executor.shutdown();
-		while (!executor.isTerminated()) {
+		zipExecutor.shutdown();
+		while (!executor.isTerminated() || !zipExecutor.isTerminated()) {
 			try {
 				executor.awaitTermination(1, TimeUnit.SECONDS);
+				zipExecutor.awaitTermination(1, TimeUnit.SECONDS);
 			} catch (InterruptedException e) {
 				continue;
 			}
 		}
+		if (ANALYZE_ONLY) {
+			long elapsed = Math.max(1, System.currentTimeMillis() - start);
+			int nClasses = nTotal.get() - nAnalyzedBefore;
+			System.out.printf("Analyzed %d classes in %d ms (%.1f classes/sec)\n", nClasses, elapsed, nClasses * 1000.0 / elapsed);
+		} else {
+			long elapsed = Math.max(1, System.currentTimeMillis() - start);
+			int nClasses = nInstrumented.get() - nInstrumentedBefore;
+			System.out.printf("Instrumented %d classes in %d ms (%.1f classes/sec)\n", nClasses, elapsed, nClasses * 1000.0 / elapsed);
+			if (manifest != null)
+				System.out.println("Kept " + (nReused.get() - nReusedBefore) + " unchanged classes and files from the previous run");
+			if (MethodSizeStats.any())
+				System.out.println(MethodSizeStats.summary());
+		}
 	}
 
 	private static LinkedList<Future> processClass(File f, final File outputDir, ExecutorService executor) {
@@ -546,9 +649,28 @@ public class Instrumenter {
 			final InputStream is = new FileInputStream(f);
 
 			if (ANALYZE_ONLY) {
-				analyzeClass(is);
-				is.close();
+				final String inputPath = f.getAbsolutePath();
+				ret.add(executor.submit(new Callable<LinkedList>() {
+					@Override
+					public LinkedList call() throws Exception {
+						byte[] b = readFully(is);
+						is.close();
+						analyzeClass(new ByteArrayInputStream(b));
+						if (manifest != null)
+							manifest.classAnalyzed(inputPath, b);
+						return new LinkedList();
+					}
+				}));
 			} else {
+				File dest = new File(outputDir.getPath() + File.separator + name);
+				final String outputPath = manifest == null ? null : manifest.relativePath(dest);
+				final long key = manifest == null ? 0 : manifest.keyOfInput(f, f.getAbsolutePath());
+				if (manifest != null && dest.exists() && manifest.isUnchanged(outputPath, key)) {
+					is.close();
+					manifest.written(outputPath, key);
+					nReused.incrementAndGet();
+					return ret;
+				}
 				ret.add(executor.submit(new Callable<LinkedList>() {
 					@Override
 					public LinkedList call() throws Exception {
@@ -560,6 +682,8 @@ public class Instrumenter {
 						bos.write(c);
 						bos.writeTo(fos);
 						fos.close();
+						if (manifest != null)
+							manifest.written(outputPath, key);
 						return new LinkedList();
 					}
 				}));
@@ -571,7 +695,7 @@ public class Instrumenter {
 		return ret;
 	}
 
-	private static LinkedList<Future> processDirectory(File f, File parentOutputDir, boolean isFirstLevel, ExecutorService executor) {
+	private static LinkedList<Future> processDirectory(File f, File parentOutputDir, boolean isFirstLevel, ExecutorService executor, ExecutorService zipExecutor) {
 		LinkedList<Future> ret = new LinkedList<>();
 		if (f.getName().equals(".AppleDouble"))
 			return ret;
@@ -584,11 +708,11 @@ public class Instrumenter {
 		}
 		for (final File fi : f.listFiles()) {
 			if (fi.isDirectory())
-				ret.addAll(processDirectory(fi, thisOutputDir, false, executor));
+				ret.addAll(processDirectory(fi, thisOutputDir, false, executor, zipExecutor));
 			else if (fi.getName().endsWith(".class"))
 				ret.addAll(processClass(fi, thisOutputDir, executor));
 			else if (fi.getName().endsWith(".jar") || fi.getName().endsWith(".zip") || fi.getName().endsWith(".war"))
-				ret.addAll(processZip(fi, thisOutputDir, executor));
+				ret.addAll(processZip(fi, thisOutputDir, executor, zipExecutor));
 			else {
 				File dest = new File(thisOutputDir.getPath() + File.separator + fi.getName());
 				FileChannel source = null;
@@ -640,188 +764,77 @@ public class Instrumenter {
 
 	private static class Result {
 		ZipEntry e;
+		byte[] original;
 		byte[] buf;
 	}
 
+	// How many classes from a single zip may be waiting to be instrumented or written out, per instrumenting thread
+	private static final int ZIP_WINDOW_PER_THREAD = 4;
+
 	/**
 	 * Handle Jar file, Zip file and War file
+	 *
+	 * The zip is read (and unless we are only analyzing, written) by a task on zipExecutor while its classes are
+	 * analyzed or instrumented on executor, so that several zips can be worked on at once.
 	 */
-	public static LinkedList<Future> processZip(final File f, File outputDir, ExecutorService executor) {
-		return _processZip(f, outputDir, executor, false);
-	}
-	private static LinkedList<Future> _processZip(final File f, File outputDir, ExecutorService executor, boolean unCompressed) {
-		try {
-			LinkedList<Future<Result>> ret = new LinkedList<>();
-			final ZipFile zip = new ZipFile(f);
-			ZipOutputStream zos = null;
-			zos = new ZipOutputStream(new FileOutputStream(outputDir.getPath() + File.separator + f.getName()));
-			if(unCompressed)
-				zos.setLevel(ZipOutputStream.STORED);
-			Enumeration<? extends ZipEntry> entries = zip.entries();
-			while (entries.hasMoreElements()) {
-				final ZipEntry e = entries.nextElement();
-
-				if (e.getName().endsWith(".class")) {
-					if (ANALYZE_ONLY)
-						analyzeClass(zip.getInputStream(e));
-					else {
-						ret.add(executor.submit(new Callable<Result>() {
-							@Override
-							public Result call() throws Exception {
-								Result ret = new Result();
-								ret.e = e;
-								byte[] clazz = instrumentClass(f.getAbsolutePath(), zip.getInputStream(e), true);
-								ret.buf = clazz;
-
-								return ret;
-							}
-						}));
-					}
-				} else if (e.getName().endsWith(".jar")) {
-					ZipEntry outEntry = new ZipEntry(e.getName());
-					Random r = new Random();
-					String markFileName = Long.toOctalString(System.currentTimeMillis())
-						+ Integer.toOctalString(r.nextInt(10000))
-						+ e.getName().replace("/", "");
-					File tmp = new File("/tmp/" + markFileName);
-					if (tmp.exists())
-						tmp.delete();
-					FileOutputStream fos = new FileOutputStream(tmp);
-					byte buf[] = new byte[1024];
-					int len;
-					InputStream is = zip.getInputStream(e);
-					while ((len = is.read(buf)) > 0) {
-						fos.write(buf, 0, len);
-					}
-					is.close();
-					fos.close();
-
-					File tmp2 = new File("/tmp/tmp2");
-					if(!tmp2.exists())
-						tmp2.mkdir();
-					_processZip(tmp, tmp2, executor, true);
-					tmp.delete();
-
-					outEntry.setMethod(ZipEntry.STORED);
-					Path newFile = Paths.get("/tmp/tmp2/" + markFileName);
-
-					outEntry.setSize(Files.size(newFile));
-					CRC32 crc= new CRC32();
-					crc.update(Files.readAllBytes(newFile));
-					outEntry.setCrc(crc.getValue());
-					zos.putNextEntry(outEntry);
-					is = new FileInputStream("/tmp/tmp2/" + markFileName);
-					byte[] buffer = new byte[1024];
-					while (true) {
-						int count = is.read(buffer);
-						if (count == -1)
-							break;
-						zos.write(buffer, 0, count);
-					}
-					is.close();
-					zos.closeEntry();
-				} else {
-					ZipEntry outEntry = new ZipEntry(e.getName());
-					if (e.isDirectory()) {
-						try{
-							zos.putNextEntry(outEntry);
-							zos.closeEntry();
-						} catch(ZipException exxxx) {
-							System.out.println("Ignoring exception: " + exxxx.getMessage());
-						}
-					} else if (e.getName().startsWith("META-INF")
-							&& (e.getName().endsWith(".SF")
-									|| e.getName().endsWith(".RSA"))) {
-						// don't copy this
-					} else if (e.getName().equals("META-INF/MANIFEST.MF")) {
-						Scanner s = new Scanner(zip.getInputStream(e));
-						zos.putNextEntry(outEntry);
-
-						String curPair = "";
-						while (s.hasNextLine()) {
-							String line = s.nextLine();
-							if (line.equals("")) {
-								curPair += "\n";
-								if (!curPair.contains("SHA1-Digest:"))
-									zos.write(curPair.getBytes());
-								curPair = "";
-							} else {
-								curPair += line + "\n";
-							}
-						}
-						s.close();
-						// Jar file is different from Zip file. :)
-						if (f.getName().endsWith(".zip"))
-							zos.write("\n".getBytes());
-						zos.closeEntry();
-					} else {
-						try {
-
-							zos.putNextEntry(outEntry);
-							InputStream is = zip.getInputStream(e);
-							byte[] buffer = new byte[1024];
-							while (true) {
-								int count = is.read(buffer);
-								if (count == -1)
-									break;
-								zos.write(buffer, 0, count);
-							}
-							is.close();
-							zos.closeEntry();
-						} catch (ZipException ex) {
-							if (!ex.getMessage().contains("duplicate entry")) {
-								ex.printStackTrace();
-								System.out.println("Ignoring above warning from improper source zip...");
-							}
-						}
-					}
-				}
+	public static LinkedList<Future> processZip(final File f, final File outputDir, final ExecutorService executor, ExecutorService zipExecutor) {
+		LinkedList<Future> ret = new LinkedList<>();
+		ret.add(zipExecutor.submit(new Callable<LinkedList>() {
+			@Override
+			public LinkedList call() throws Exception {
+				processZipFile(f, outputDir, executor);
+				return new LinkedList();
 			}
+		}));
+		return ret;
+	}
 
-			for (Future<Result> fr : ret) {
-				Result r;
-				while (true) {
-					try {
-						r = fr.get();
-						break;
-					} catch (InterruptedException e) {
-						continue;
-					}
+	private static void processZipFile(final File f, File outputDir, ExecutorService executor) {
+		File dest = new File(outputDir.getPath() + File.separator + f.getName());
+		String outputPath = null;
+		long key = 0;
+		HashMap<String, Long> entryKeys = null;
+		File prevFile = null;
+		ZipFile prev = null;
+		try {
+			if (manifest != null && !ANALYZE_ONLY) {
+				outputPath = manifest.relativePath(dest);
+				key = manifest.keyOfInput(f, f.getAbsolutePath());
+				if (dest.exists() && manifest.isUnchanged(outputPath, key)) {
+					manifest.kept(outputPath, key);
+					nReused.incrementAndGet();
+					return;
 				}
-
-				try {
-					ZipEntry outEntry = new ZipEntry(r.e.getName());
-					zos.putNextEntry(outEntry);
-
-					byte[] clazz = r.buf;
-					if (clazz == null) {
-						System.out.println("Failed to instrument " + r.e.getName() + " in " + f.getName());
-						InputStream is = zip.getInputStream(r.e);
-						byte[] buffer = new byte[1024];
-						while (true) {
-							int count = is.read(buffer);
-							if (count == -1)
-								break;
-							zos.write(buffer, 0, count);
-						}
-						is.close();
-					} else
-						zos.write(clazz);
-					zos.closeEntry();
-				} catch (ZipException ex) {
-					ex.printStackTrace();
-					continue;
+				entryKeys = new HashMap<>();
+				if (dest.exists() && manifest.hasPrevious()) {
+					// Keep the previous output around to copy unchanged classes from
+					prevFile = new File(dest.getPath() + ".prev");
+					if (dest.renameTo(prevFile))
+						prev = new ZipFile(prevFile);
+					else
+						prevFile = null;
 				}
-
 			}
-
-			if (zos != null)
-				zos.close();
-			zip.close();
+			try {
+				processZipEntries(f, dest, new StreamedZipEntries(new BufferedInputStream(new FileInputStream(f))), executor, prev, outputPath, entryKeys);
+			} catch (ZipException ex) {
+				if (!isStoredWithDescriptor(ex))
+					throw ex;
+				// Start over, writing the whole zip again
+				if (entryKeys != null)
+					entryKeys.clear();
+				processZipEntries(f, dest, new ZipFileEntries(new ZipFile(f)), executor, prev, outputPath, entryKeys);
+			}
+			if (entryKeys != null) {
+				for (Map.Entry<String, Long> e : entryKeys.entrySet())
+					manifest.written(e.getKey(), e.getValue());
+				manifest.written(outputPath, key);
+			}
 		} catch (Exception e) {
 			System.err.println("Unable to process zip/jar: " + f.getAbsolutePath());
 			e.printStackTrace();
-			File dest = new File(outputDir.getPath() + File.separator + f.getName());
+			if (ANALYZE_ONLY)
+				return;
 			FileChannel source = null;
 			FileChannel destination = null;
 
@@ -848,9 +861,311 @@ public class Instrumenter {
 					}
 				}
 			}
+		} finally {
+			if (prev != null) {
+				try {
+					prev.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			if (prevFile != null)
+				prevFile.delete();
 		}
+	}
+
+	private static void processZipEntries(File f, File dest, ZipEntries entries, ExecutorService executor, ZipFile prev, String outputPath,
+										  Map<String, Long> entryKeys) throws IOException {
+		// The output of the analysis pass is thrown away, and must not replace an output that may be kept
+		OutputStream os = null;
+		try {
+			os = ANALYZE_ONLY ? new OutputStream() {
+				@Override
+				public void write(int b) {
+				}
 
-		return new LinkedList<>();
+				@Override
+				public void write(byte[] b, int off, int len) {
+				}
+			} : new BufferedOutputStream(new FileOutputStream(dest));
+			_processZip(f.getAbsolutePath(), entries, os, executor, false, prev, outputPath, entryKeys);
+		} finally {
+			entries.close();
+			if (os != null)
+				os.close();
+		}
+	}
+
+	/* Processes a jar nested in a zip in memory, or from a temporary file if it cannot be streamed */
+	private static byte[] processNestedZip(String path, byte[] zip, ExecutorService executor) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			_processZip(path, new StreamedZipEntries(new ByteArrayInputStream(zip)), out, executor, true, null, null, null);
+		} catch (ZipException ex) {
+			if (!isStoredWithDescriptor(ex))
+				throw ex;
+			out.reset();
+			File tmp = File.createTempFile("phosphor", ".jar");
+			try {
+				Files.write(tmp.toPath(), zip);
+				ZipEntries entries = new ZipFileEntries(new ZipFile(tmp));
+				try {
+					_processZip(path, entries, out, executor, true, null, null, null);
+				} finally {
+					entries.close();
+				}
+			} finally {
+				tmp.delete();
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * The entries of a zip, one after the other, with the contents of the current entry read from in.
+	 *
+	 * Zips are streamed with ZipInputStream, which cannot read a STORED entry that is followed by a data descriptor
+	 * rather than preceded by its size. Zips with such entries are read again with ZipFile instead, which reads the
+	 * sizes from the central directory.
+	 */
+	private static abstract class ZipEntries implements Closeable {
+		InputStream in;
+
+		/* Moves to the next entry, returning null at the end of the zip */
+		abstract ZipEntry next() throws IOException;
+	}
+
+	private static class StreamedZipEntries extends ZipEntries {
+		private final ZipInputStream zip;
+
+		StreamedZipEntries(InputStream is) {
+			zip = new ZipInputStream(is);
+			in = zip;
+		}
+
+		@Override
+		ZipEntry next() throws IOException {
+			return zip.getNextEntry();
+		}
+
+		@Override
+		public void close() throws IOException {
+			zip.close();
+		}
+	}
+
+	private static class ZipFileEntries extends ZipEntries {
+		private final ZipFile zip;
+		private final Enumeration<? extends ZipEntry> entries;
+
+		ZipFileEntries(ZipFile zip) {
+			this.zip = zip;
+			this.entries = zip.entries();
+		}
+
+		@Override
+		ZipEntry next() throws IOException {
+			if (in != null)
+				in.close();
+			in = null;
+			if (!entries.hasMoreElements())
+				return null;
+			ZipEntry e = entries.nextElement();
+			in = zip.getInputStream(e);
+			return e;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (in != null)
+				in.close();
+			zip.close();
+		}
+	}
+
+	/* Whether ZipInputStream failed with e because of a STORED entry that is followed by a data descriptor */
+	private static boolean isStoredWithDescriptor(ZipException e) {
+		return "only DEFLATED entries can have EXT descriptor".equals(e.getMessage());
+	}
+
+	/**
+	 * Reads a zip from entries and writes the instrumented zip to out (which is left open). Each class is handed to
+	 * executor as soon as it is read, and the finished classes are written out in the order they were read, as
+	 * soon as they are done, with a bounded number in flight. Nested jars are processed in memory. When we are only
+	 * analyzing, the classes are analyzed on executor the same way, and nothing is written for them.
+	 *
+	 * If entryKeys is not null, the key of each class is recorded in it (see IncrementalManifest), and the classes
+	 * whose keys have not changed since the previous output of this zip (prev) are copied from it.
+	 */
+	private static void _processZip(final String path, ZipEntries entries, OutputStream out, ExecutorService executor, boolean unCompressed,
+									final ZipFile prev, String outputPath, Map<String, Long> entryKeys) throws IOException {
+		ZipOutputStream zos = new ZipOutputStream(out);
+		if(unCompressed)
+			zos.setLevel(ZipOutputStream.STORED);
+		ArrayDeque<Future<Result>> inFlight = new ArrayDeque<>();
+		int window = ZIP_WINDOW_PER_THREAD * Runtime.getRuntime().availableProcessors();
+		ZipEntry e;
+		while ((e = nextEntry(entries, inFlight)) != null) {
+			if (e.getName().endsWith(".class")) {
+				if (ANALYZE_ONLY) {
+					final byte[] b = readFully(entries.in);
+					inFlight.add(executor.submit(new Callable<Result>() {
+						@Override
+						public Result call() throws Exception {
+							analyzeClass(new ByteArrayInputStream(b));
+							if (manifest != null)
+								manifest.classAnalyzed(path, b);
+							return null;
+						}
+					}));
+					while (!inFlight.isEmpty() && (inFlight.size() >= window || inFlight.peek().isDone()))
+						writeResult(path, zos, inFlight.poll());
+				} else {
+					final Result r = new Result();
+					r.e = e;
+					r.original = readFully(entries.in);
+					ZipEntry prevEntry = null;
+					if (entryKeys != null) {
+						String entryPath = outputPath + "!/" + e.getName();
+						long entryKey = manifest.keyOfClass(r.original);
+						entryKeys.put(entryPath, entryKey);
+						if (prev != null && manifest.isUnchanged(entryPath, entryKey))
+							prevEntry = prev.getEntry(e.getName());
+					}
+					final ZipEntry unchanged = prevEntry;
+					inFlight.add(executor.submit(new Callable<Result>() {
+						@Override
+						public Result call() throws Exception {
+							if (unchanged != null) {
+								r.buf = readFully(prev.getInputStream(unchanged));
+								nReused.incrementAndGet();
+							} else
+								r.buf = instrumentClass(path, new ByteArrayInputStream(r.original), true);
+							return r;
+						}
+					}));
+					while (!inFlight.isEmpty() && (inFlight.size() >= window || inFlight.peek().isDone()))
+						writeResult(path, zos, inFlight.poll());
+				}
+			} else if (e.getName().endsWith(".jar")) {
+				byte[] buf = processNestedZip(path + "!/" + e.getName(), readFully(entries.in), executor);
+				ZipEntry outEntry = new ZipEntry(e.getName());
+				outEntry.setMethod(ZipEntry.STORED);
+				outEntry.setSize(buf.length);
+				CRC32 crc = new CRC32();
+				crc.update(buf);
+				outEntry.setCrc(crc.getValue());
+				zos.putNextEntry(outEntry);
+				zos.write(buf);
+				zos.closeEntry();
+			} else {
+				ZipEntry outEntry = new ZipEntry(e.getName());
+				if (e.isDirectory()) {
+					try{
+						zos.putNextEntry(outEntry);
+						zos.closeEntry();
+					} catch(ZipException exxxx) {
+						System.out.println("Ignoring exception: " + exxxx.getMessage());
+					}
+				} else if (e.getName().startsWith("META-INF")
+						&& (e.getName().endsWith(".SF")
+								|| e.getName().endsWith(".RSA"))) {
+					// don't copy this
+				} else if (e.getName().equals("META-INF/MANIFEST.MF")) {
+					Scanner s = new Scanner(new ByteArrayInputStream(readFully(entries.in)));
+					zos.putNextEntry(outEntry);
+
+					String curPair = "";
+					while (s.hasNextLine()) {
+						String line = s.nextLine();
+						if (line.equals("")) {
+							curPair += "\n";
+							if (!curPair.contains("SHA1-Digest:"))
+								zos.write(curPair.getBytes());
+							curPair = "";
+						} else {
+							curPair += line + "\n";
+						}
+					}
+					s.close();
+					// Jar file is different from Zip file. :)
+					if (path.endsWith(".zip"))
+						zos.write("\n".getBytes());
+					zos.closeEntry();
+				} else {
+					try {
+						zos.putNextEntry(outEntry);
+						copy(entries.in, zos);
+						zos.closeEntry();
+					} catch (ZipException ex) {
+						if (!ex.getMessage().contains("duplicate entry")) {
+							ex.printStackTrace();
+							System.out.println("Ignoring above warning from improper source zip...");
+						}
+					}
+				}
+			}
+		}
+		while (!inFlight.isEmpty())
+			writeResult(path, zos, inFlight.poll());
+		zos.finish();
+	}
+
+	/* Moves to the next entry of entries. If the zip cannot be read any further, the classes that are in flight
+	 * are cancelled, as the zip is either left as it was or read again */
+	private static ZipEntry nextEntry(ZipEntries entries, Queue<Future<Result>> inFlight) throws IOException {
+		try {
+			return entries.next();
+		} catch (IOException ex) {
+			for (Future<Result> f : inFlight)
+				f.cancel(false);
+			throw ex;
+		}
+	}
+
+	private static void writeResult(String path, ZipOutputStream zos, Future<Result> fr) throws IOException {
+		Result r;
+		while (true) {
+			try {
+				r = fr.get();
+				break;
+			} catch (InterruptedException e) {
+				continue;
+			} catch (ExecutionException e) {
+				throw new IOException(e.getCause());
+			}
+		}
+		// The class was only analyzed
+		if (r == null)
+			return;
+
+		try {
+			ZipEntry outEntry = new ZipEntry(r.e.getName());
+			zos.putNextEntry(outEntry);
+
+			byte[] clazz = r.buf;
+			if (clazz == null) {
+				System.out.println("Failed to instrument " + r.e.getName() + " in " + path);
+				zos.write(r.original);
+			} else
+				zos.write(clazz);
+			zos.closeEntry();
+		} catch (ZipException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	private static byte[] readFully(InputStream is) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		copy(is, bos);
+		return bos.toByteArray();
+	}
+
+	private static void copy(InputStream is, OutputStream os) throws IOException {
+		byte[] buffer = new byte[16384];
+		int count;
+		while ((count = is.read(buffer)) != -1)
+			os.write(buffer, 0, count);
 	}
 
 	public static boolean shouldCallUninstAlways(String owner, String name, String desc) {
@@ -911,11 +1226,7 @@ public class Instrumenter {
 				@Override
 				public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
 					super.visit(version, access, name, signature, superName, interfaces);
-					ClassNode cn = new ClassNode();
-					cn.name = name;
-					cn.superName = superName;
-					cn.interfaces = new ArrayList<>(Arrays.asList(interfaces));
-					classes.put(name, cn);
+					addSupertypes(access, name, superName, interfaces);
 				}
 			}, ClassReader.SKIP_CODE);
 			is.close();
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
@@ -16,7 +17,7 @@ import org.objectweb.asm.Opcodes;
  *
  */
 public class PartialInstrumentationInferencerCV extends ClassVisitor{
-	public static Map<String, List<String>> classToSuperClass = new HashMap<String, List<String>>();
+	public static Map<String, List<String>> classToSuperClass = new ConcurrentHashMap<String, List<String>>();
 	private static String superClassesToConsider = "java/io/.+|java/nio/.+|java/util/.+";
 	
 	List<MethodDescriptor> methodCallingAsStream = new ArrayList<MethodDescriptor>();
@@ -10,8 +10,6 @@ import java.io.PrintWriter;
 import java.lang.instrument.IllegalClassFormatException;
 import java.lang.instrument.Instrumentation;
 import java.lang.reflect.Constructor;
-import java.nio.file.Files;
-import java.security.MessageDigest;
 import java.security.ProtectionDomain;
 import java.util.List;
 
@@ -23,8 +21,10 @@ import org.objectweb.asm.commons.SerialVersionUIDAdder;
 import org.objectweb.asm.tree.*;
 
 import edu.columbia.cs.psl.phosphor.instrumenter.asm.OffsetPreservingClassReader;
+import edu.columbia.cs.psl.phosphor.runtime.AsyncViolationReporter;
 import edu.columbia.cs.psl.phosphor.runtime.TaintInstrumented;
 import edu.columbia.cs.psl.phosphor.runtime.TaintSourceWrapper;
+import edu.columbia.cs.psl.phosphor.runtime.ViolationReporter;
 import edu.columbia.cs.psl.phosphor.struct.ControlTaintTagStack;
 import edu.columbia.cs.psl.phosphor.struct.TaintedWithIntTag;
 import edu.columbia.cs.psl.phosphor.struct.TaintedWithObjTag;
@@ -54,6 +54,14 @@ public class PreMain {
 				super(classReader, flags);
 			}
 
+			/* Where to read the class files of types that are not in Instrumenter.hierarchy yet from */
+			private static ClassLoader hierarchyLoader() {
+				if (!RUNTIME_INST)
+					return bigLoader;
+				ClassLoader ret = curLoader;
+				return ret == null ? ClassLoader.getSystemClassLoader() : ret;
+			}
+
 			private Class<?> getClass(String name) throws ClassNotFoundException {
 				if(RUNTIME_INST)
 					throw new ClassNotFoundException();
@@ -69,6 +77,9 @@ public class PreMain {
 			}
 
 			protected String getCommonSuperClass(String type1, String type2) {
+				String ret = Instrumenter.hierarchy.getCommonSuperClass(type1, type2, hierarchyLoader());
+				if (ret != null)
+					return ret;
 				Class<?> c, d;
 				try {
 					c = getClass(type1);
@@ -109,8 +120,6 @@ public class PreMain {
 			return ret;
 		}
 
-		static MessageDigest md5inst;
-
 		public static byte[] _transform(ClassLoader loader, final String className2, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer)
 				throws IllegalClassFormatException {
 			ClassReader cr = (Configuration.READ_AND_SAVE_BCI ? new OffsetPreservingClassReader(classfileBuffer) : new ClassReader(classfileBuffer));
@@ -141,6 +150,7 @@ public class PreMain {
 			}			
 
 			Configuration.taintTagFactory.instrumentationStarting(className);
+			InstrumentationProfiler.ClassProfile profile = InstrumentationProfiler.classStarted(className, classfileBuffer.length);
 			try {
 				ClassNode cn = new ClassNode();
 				cr.accept(cn, (Configuration.ALWAYS_CHECK_FOR_FRAMES ? 0 : ClassReader.SKIP_CODE));
@@ -198,38 +208,18 @@ public class PreMain {
 					if (((MethodNode) mn).name.equals("getPHOSPHOR_TAG")) {
 						return classfileBuffer;
 					}
-				if (Configuration.CACHE_DIR != null) {
-					String cacheKey = className.replace("/", ".");
-					File f = new File(Configuration.CACHE_DIR + File.separator + cacheKey + ".md5sum");
-					if (f.exists()) {
-						try {
-							FileInputStream fis = new FileInputStream(f);
-							byte[] cachedDigest = new byte[1024];
-							fis.read(cachedDigest);
-							fis.close();
-							if (md5inst == null)
-								md5inst = MessageDigest.getInstance("MD5");
-							byte[] checksum = null;
-							synchronized (md5inst) {
-								checksum = md5inst.digest(classfileBuffer);
-							}
-							boolean matches = true;
-							if (checksum.length > cachedDigest.length)
-								matches = false;
-							if (matches)
-								for (int i = 0; i < checksum.length; i++) {
-									if (checksum[i] != cachedDigest[i]) {
-										matches = false;
-										break;
-									}
-								}
-							if (matches) {
-								byte[] ret = Files.readAllBytes(new File(Configuration.CACHE_DIR + File.separator + cacheKey + ".class").toPath());
-								return ret;
-							}
-						} catch (Throwable t) {
-							t.printStackTrace();
+				InstrumentedClassCache cache = InstrumentedClassCache.getInstance();
+				long cacheKey = 0;
+				if (cache != null) {
+					cacheKey = InstrumentedClassCache.hash(classfileBuffer);
+					byte[] ret = cache.get(classfileBuffer, cacheKey);
+					if (ret != null) {
+						if (profile != null) {
+							profile.setCached();
+							profile.lap(InstrumentationProfiler.Pass.PARSE);
+							InstrumentationProfiler.classFinished(profile, ret);
 						}
+						return ret;
 					}
 				}
 				if (DEBUG) {
@@ -248,6 +238,8 @@ public class PreMain {
 
 				boolean isiFace = (cn.access & Opcodes.ACC_INTERFACE) != 0;
 				List<FieldNode> fields = cn.fields;
+				if (profile != null)
+					profile.lap(InstrumentationProfiler.Pass.PARSE);
 				if (skipFrames) {
 					cn = null;
 					// This class is old enough to not guarantee frames.
@@ -262,6 +254,10 @@ public class PreMain {
 					}, 0);
 
 					cr = (Configuration.READ_AND_SAVE_BCI ? new OffsetPreservingClassReader(cw.toByteArray()) : new ClassReader(cw.toByteArray()));
+					if (profile != null) {
+						profile.setFramesRecomputed();
+						profile.lap(InstrumentationProfiler.Pass.COMPUTE_FRAMES);
+					}
 				}
 				// System.out.println("Instrumenting: " + className);
 				// System.out.println(classBeingRedefined);
@@ -296,10 +292,18 @@ public class PreMain {
 							_cv
 							// )
 							, ClassReader.EXPAND_FRAMES);
+					if (profile != null)
+						profile.lap(InstrumentationProfiler.Pass.INSTRUMENT);
 					byte[] instrumentedBytes = null;
 					try{
 						instrumentedBytes = cw.toByteArray();
+						if (profile != null)
+							profile.lap(InstrumentationProfiler.Pass.WRITE);
 					} catch(MethodTooLargeException ex){
+						// Only when a method could not be split or instrumented again on its own by TaintTrackingClassVisitor
+						long start = System.nanoTime();
+						if (profile != null)
+							profile.reinstrumenting();
 						cw = new HackyClassWriter(cr, ClassWriter.COMPUTE_MAXS);
 						_cv = cw;
 						if (Configuration.extensionClassVisitor != null) {
@@ -322,6 +326,9 @@ public class PreMain {
 								// )
 								, ClassReader.EXPAND_FRAMES);
 						instrumentedBytes = cw.toByteArray();
+						MethodSizeStats.classReduced(className, System.nanoTime() - start);
+						if (profile != null)
+							profile.lap(InstrumentationProfiler.Pass.REDUCE);
 					}
 
 					if (DEBUG) {
@@ -339,26 +346,9 @@ public class PreMain {
 						}
 					}
 
-					if (Configuration.CACHE_DIR != null) {
-						String cacheKey = className.replace("/", ".");
-						File f = new File(Configuration.CACHE_DIR + File.separator + cacheKey + ".class");
-						FileOutputStream fos = new FileOutputStream(f);
-						byte[] ret = instrumentedBytes;
-						fos.write(ret);
-						fos.close();
-						if (md5inst == null)
-							md5inst = MessageDigest.getInstance("MD5");
-						byte[] checksum = null;
-						synchronized (md5inst) {
-							checksum = md5inst.digest(classfileBuffer);
-						}
-						f = new File(Configuration.CACHE_DIR + File.separator + cacheKey + ".md5sum");
-						fos = new FileOutputStream(f);
-
-						fos.write(checksum);
-						fos.close();
-						return ret;
-					}
+					if (cache != null)
+						cache.put(classfileBuffer, cacheKey, instrumentedBytes);
+					InstrumentationProfiler.classFinished(profile, instrumentedBytes);
 					return instrumentedBytes;
 				} catch (Throwable ex) {
 					INSTRUMENTATION_EXCEPTION_OCURRED = true;
@@ -404,6 +394,7 @@ public class PreMain {
 				}
 			} finally {
 				Configuration.taintTagFactory.instrumentationEnding(className);
+				InstrumentationProfiler.classEnded();
 
 			}
 		}
@@ -442,9 +433,34 @@ public class PreMain {
 		premain(args, inst);
 	}
 
+	/*
+	 * Loads the class hierarchy saved by the static Instrumenter from the specified file, or if there is none, from
+	 * the instrumented JRE that we are running on.
+	 */
+	private static void loadHierarchy(File f) {
+		if (f == null) {
+			File home = new File(System.getProperty("java.home"));
+			f = new File(home, ClassHierarchyStore.FILE_NAME);
+			if (!f.isFile() && home.getParentFile() != null)
+				f = new File(home.getParentFile(), ClassHierarchyStore.FILE_NAME);
+			if (!f.isFile())
+				return;
+		}
+		try {
+			Instrumenter.hierarchy.load(f);
+		} catch (IOException e) {
+			System.err.println("Unable to load the class hierarchy from " + f);
+			e.printStackTrace();
+		}
+	}
+
 	public static void premain(String args, Instrumentation inst) {
+		File hierarchyFile = null;
+		int reportBuffer = 0;
+		AsyncViolationReporter.Overflow reportOverflow = AsyncViolationReporter.Overflow.DROP;
 		inst.addTransformer(new ClassSupertypeReadingTransformer());
 		RUNTIME_INST = true;
+		InstrumentedClassCache.agentArgs = args;
 		if (args != null) {
 			String[] aaa = args.split(",");
 			for (String s : aaa) {
@@ -469,6 +485,10 @@ public class PreMain {
 					Configuration.ARRAY_LENGTH_TRACKING = true;
 				else if(s.equals("lightImplicit"))
 					Configuration.IMPLICIT_LIGHT_TRACKING = true;
+				else if(s.equals("lightImplicitSummary")) {
+					Configuration.IMPLICIT_LIGHT_TRACKING = true;
+					Configuration.IMPLICIT_LIGHT_SUMMARY_TRACKING = true;
+				}
 				else if(s.equals("arrayindex"))
 				{
 //					Configuration.ARRAY_LENGTH_TRACKING = true;
@@ -522,15 +542,53 @@ public class PreMain {
 					Configuration.ADDL_IGNORE = s.substring(7);
 				} else if (s.equals("withoutBranchNotTaken")) {
 					Configuration.WITHOUT_BRANCH_NOT_TAKEN = true;
+				} else if (s.equals("withoutMethodSplitting")) {
+					Configuration.SPLIT_LARGE_METHODS = false;
+				} else if (s.equals("withoutLoopControlTagCache")) {
+					Configuration.CACHE_LOOP_CONTROL_TAGS = false;
+				} else if (s.equals("fastPathDispatch")) {
+					Configuration.FAST_PATH_DISPATCH = true;
+				} else if (s.startsWith("sourceTraceDepth=")) {
+					Configuration.SOURCE_TRACE_DEPTH = Integer.parseInt(s.substring(17));
+				} else if (s.startsWith("violationReporter=")) {
+					try {
+						Configuration.violationReporter = (ViolationReporter) Class.forName(s.substring(18)).newInstance();
+					} catch (ClassNotFoundException | IllegalAccessException | InstantiationException e) {
+						e.printStackTrace();
+					}
+				} else if (s.startsWith("reportBuffer=")) {
+					reportBuffer = Integer.parseInt(s.substring(13));
+				} else if (s.startsWith("reportOverflow=")) {
+					reportOverflow = AsyncViolationReporter.Overflow.valueOf(s.substring(15).toUpperCase());
+				} else if (s.startsWith("hierarchy=")) {
+					hierarchyFile = new File(s.substring(10));
+				} else if (s.startsWith("profile=")) {
+					InstrumentationProfiler.enable(new File(s.substring(8)));
 				}
 			}
 		}
+		// Classes loaded while parsing the arguments may already have initialized the configuration without light
+		// tracking, leaving tags for jumps off
+		if (Configuration.IMPLICIT_LIGHT_TRACKING)
+			PhosphorBaseTransformer.INITED = false;
+		if (reportBuffer > 0)
+			Configuration.violationReporter = new AsyncViolationReporter(Configuration.violationReporter, reportBuffer, reportOverflow);
+		loadHierarchy(hierarchyFile);
 		if (Instrumenter.loader == null)
 			Instrumenter.loader = bigLoader;
 		// Ensure that BasicSourceSinkManager & anything needed to call isSourceOrSinkOrTaintThrough gets initialized
 		BasicSourceSinkManager.getInstance().isSourceOrSinkOrTaintThrough(Object.class);
 		inst.addTransformer(new PCLoggingTransformer());
 		inst.addTransformer(new SourceSinkTransformer(), true);
+		if (DEBUG) {
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					if (MethodSizeStats.any())
+						System.err.println(MethodSizeStats.summary());
+				}
+			});
+		}
 		instrumentation = inst;
 	}
 
@@ -5,13 +5,15 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SelectiveInstrumentationManager {
 	
 	public static boolean inited = false;
-	public static Set<MethodDescriptor> methodsToInstrument = new HashSet<MethodDescriptor>();
+	// Added to by the analysis pass, from several threads at once
+	public static Set<MethodDescriptor> methodsToInstrument = Collections.newSetFromMap(new ConcurrentHashMap<MethodDescriptor, Boolean>());
 	
 //	public static HashMap<String, HashSet<String>> methodsToInstrumentByClass = new HashMap<String, HashSet<String>>();
 	public static void populateMethodsToInstrument(String file) {
@@ -71,27 +71,54 @@ public class SourceSinkTransformer extends PhosphorBaseTransformer {
             if(isBusyTransforming == 0 && !isBusyRetransforming && INITED && PreMain.getInstrumentation() != null) {
             	isBusyRetransforming = true;
                 retransformQueue.add(clazz);
-                // Retransform clazz and any classes that were initialized before retransformation could occur.
+                // Retransform clazz and any classes that were initialized before retransformation could occur. Classes
+                // initialized while retransforming are queued again and handled by the next batch.
                 while(!retransformQueue.isEmpty()) {
-                    Class<?> poppedClazz = retransformQueue.pop();
-                    BasicSourceSinkManager.recordClass(poppedClazz);
-                    if(poppedClazz.getName() != null && BasicSourceSinkManager.getInstance().isSourceOrSinkOrTaintThrough(poppedClazz)) {
-                        // poppedClazz represents a class or interface that is or is a subtype of a class or interface with
-                        // at least one method labeled as being a sink or source or taintThrough method
-                        PreMain.getInstrumentation().retransformClasses(poppedClazz);
+                    LinkedList<Class<?>> batch = new LinkedList<>();
+                    int batchSize = 0;
+                    while(!retransformQueue.isEmpty()) {
+                        Class<?> poppedClazz = retransformQueue.pop();
+                        BasicSourceSinkManager.recordClass(poppedClazz);
+                        if(poppedClazz.getName() != null && BasicSourceSinkManager.getInstance().isSourceOrSinkOrTaintThrough(poppedClazz)) {
+                            // poppedClazz represents a class or interface that is or is a subtype of a class or interface with
+                            // at least one method labeled as being a sink or source or taintThrough method
+                            batch.addFast(poppedClazz);
+                            batchSize++;
+                        }
+                    }
+                    if(batchSize > 0) {
+                        retransformBatch(batch, batchSize);
                     }
                 }
                 isBusyRetransforming = false;
             } else {
                 retransformQueue.add(clazz);
             }
-        } catch(UnmodifiableClassException e){
-        	//
         } catch (Throwable e) {
         	// for anything else, we probably want to make sure that it gets printed
 	        e.printStackTrace();
 	        throw e;
         }
     }
-}
 
+    /* Retransforms the specified classes with a single call, so that the VM only has to stop once for all of them.
+     * If one of them can't be modified, the rest are retransformed one at a time. */
+    private static void retransformBatch(LinkedList<Class<?>> batch, int batchSize) {
+        Class<?>[] classes = new Class<?>[batchSize];
+        int i = 0;
+        for(LinkedList.Node<Class<?>> n = batch.getFirst(); n != null; n = n.next) {
+            classes[i++] = n.entry;
+        }
+        try {
+            PreMain.getInstrumentation().retransformClasses(classes);
+        } catch(UnmodifiableClassException e) {
+            for(Class<?> c : classes) {
+                try {
+                    PreMain.getInstrumentation().retransformClasses(c);
+                } catch(UnmodifiableClassException e2) {
+                    //
+                }
+            }
+        }
+    }
+}
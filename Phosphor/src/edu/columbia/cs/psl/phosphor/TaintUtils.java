@@ -77,6 +77,7 @@ public class TaintUtils {
 	public static final int UNCONSTRAINED_NEW_STRING = 4;
 	public static boolean VERIFY_CLASS_GENERATION = false;
 	public static final String METHOD_SUFFIX_UNINST = "$$PHOSPHORUNTAGGED";
+	public static final String METHOD_SUFFIX_SPLIT = "$$PHOSPHORSPLIT";
 	public static int nextTaint = 0;
 	public static int nextTaintPHOSPHOR_TAG = 0;
 	public static int nextMethodId = 0;
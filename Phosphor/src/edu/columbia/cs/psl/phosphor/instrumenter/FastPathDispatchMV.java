@@ -0,0 +1,187 @@
+package edu.columbia.cs.psl.phosphor.instrumenter;
+
+import edu.columbia.cs.psl.phosphor.Configuration;
+import edu.columbia.cs.psl.phosphor.TaintUtils;
+import edu.columbia.cs.psl.phosphor.struct.ControlTaintTagStack;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.HashSet;
+
+/**
+ * Starts an instrumented method with a check of its taint tag arguments and of the control tags: if none of them
+ * carry a tag, the uninstrumented copy of the method is called instead and its result is returned with an empty tag.
+ * TaintTrackingClassVisitor adds that copy, unless GENERATE_UNINST_STUBS already does.
+ *
+ * This is only done for methods whose result depends on nothing but their arguments (see isEligible): they read no
+ * fields or arrays and call no other methods. For those, the uninstrumented copy computes exactly what the instrumented
+ * method would when no argument is tainted. Sits at the end of the chain, so it sees the instrumented descriptor.
+ */
+public class FastPathDispatchMV extends MethodVisitor implements Opcodes {
+
+	// Methods smaller than this without loops are not worth the check on every call
+	static final int MIN_INSNS = 24;
+
+	private final int access;
+	private final String className;
+	final String uninstName;
+	private final String desc;
+	private final String newDesc;
+	private final boolean ignoreFrames;
+	private boolean enabled;
+
+	/*
+	 * uninstName and desc are the name and descriptor of the uninstrumented copy, newDesc the descriptor of the
+	 * instrumented method
+	 */
+	public FastPathDispatchMV(MethodVisitor mv, int access, String className, String name, String desc, String newDesc, boolean ignoreFrames) {
+		super(Configuration.ASM_VERSION, mv);
+		this.access = access;
+		this.className = className;
+		this.uninstName = name + TaintUtils.METHOD_SUFFIX_UNINST;
+		this.desc = desc;
+		this.newDesc = newDesc;
+		this.ignoreFrames = ignoreFrames;
+	}
+
+	/* Adds the dispatch to the method, which must be eligible. Called before the method is visited. */
+	void enable() {
+		enabled = true;
+	}
+
+	/* Returns whether the method with the specified original code can be dispatched, and whether that is profitable */
+	static boolean isEligible(MethodNode mn) {
+		if (mn.name.startsWith("<") || mn.name.contains("$$INVIVO") || (mn.access & (ACC_ABSTRACT | ACC_NATIVE)) != 0)
+			return false;
+		for (Type t : Type.getArgumentTypes(mn.desc)) {
+			if (t.getSort() == Type.ARRAY)
+				return false;
+		}
+		if (Type.getReturnType(mn.desc).getSort() == Type.ARRAY)
+			return false;
+		int nInsns = 0;
+		boolean hasLoop = false;
+		HashSet<LabelNode> seen = new HashSet<>();
+		for (AbstractInsnNode insn = mn.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+			if (insn.getType() == AbstractInsnNode.LABEL)
+				seen.add((LabelNode) insn);
+			int op = insn.getOpcode();
+			if (op < 0)
+				continue;
+			if (!isAllowed(op))
+				return false;
+			if (insn.getType() == AbstractInsnNode.JUMP_INSN && seen.contains(((JumpInsnNode) insn).label))
+				hasLoop = true;
+			nInsns++;
+		}
+		return hasLoop || nInsns >= MIN_INSNS;
+	}
+
+	/* Instructions that neither read nor write the heap, call anything, or branch on a reference */
+	private static boolean isAllowed(int op) {
+		return (op >= NOP && op <= ALOAD) // constants and loads of locals
+				|| (op >= ISTORE && op <= ASTORE)
+				|| (op >= POP && op <= LXOR) // stack manipulation and arithmetic
+				|| (op >= IINC && op <= IF_ICMPLE) // conversions, comparisons and branches on primitives
+				|| op == GOTO || op == TABLESWITCH || op == LOOKUPSWITCH
+				|| (op >= IRETURN && op <= RETURN);
+	}
+
+	@Override
+	public void visitCode() {
+		super.visitCode();
+		if (enabled)
+			dispatch();
+	}
+
+	private void dispatch() {
+		boolean isStatic = (access & ACC_STATIC) != 0;
+		Type[] args = Type.getArgumentTypes(desc);
+		Type[] newArgs = Type.getArgumentTypes(newDesc);
+		Type returnType = Type.getReturnType(desc);
+		int[] slots = new int[newArgs.length];
+		int slot = isStatic ? 0 : 1;
+		for (int i = 0; i < newArgs.length; i++) {
+			slots[i] = slot;
+			slot += newArgs[i].getSize();
+		}
+		// Locals at the labels jumped to, which are just the arguments
+		Object[] locals = new Object[newArgs.length + (isStatic ? 0 : 1)];
+		int k = 0;
+		if (!isStatic)
+			locals[k++] = className;
+		for (Type t : newArgs)
+			locals[k++] = TaintUtils.getStackTypeForType(t);
+		Label instrumented = new Label();
+		// Every primitive argument is preceded by its tag, see TaintTrackingClassVisitor.visitMethod
+		int j = 0;
+		for (Type t : args) {
+			if (t.getSort() != Type.OBJECT) {
+				if (Configuration.MULTI_TAINTING) {
+					super.visitVarInsn(ALOAD, slots[j]);
+					super.visitJumpInsn(IFNONNULL, instrumented);
+				} else {
+					super.visitVarInsn(ILOAD, slots[j]);
+					super.visitJumpInsn(IFNE, instrumented);
+				}
+				j++;
+			}
+			j++;
+		}
+		if (j < newArgs.length && newArgs[j].getDescriptor().equals(Type.getDescriptor(ControlTaintTagStack.class))) {
+			Label noCtrl = new Label();
+			super.visitVarInsn(ALOAD, slots[j]);
+			super.visitJumpInsn(IFNULL, noCtrl);
+			super.visitVarInsn(ALOAD, slots[j]);
+			super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(ControlTaintTagStack.class), "hasNoInfluence", "()Z", false);
+			super.visitJumpInsn(IFEQ, instrumented);
+			super.visitLabel(noCtrl);
+			if (!ignoreFrames)
+				super.visitFrame(F_NEW, locals.length, locals, 0, new Object[0]);
+		}
+		if (!isStatic)
+			super.visitVarInsn(ALOAD, 0);
+		j = 0;
+		for (Type t : args) {
+			if (t.getSort() != Type.OBJECT)
+				j++;
+			super.visitVarInsn(t.getOpcode(ILOAD), slots[j]);
+			j++;
+		}
+		super.visitMethodInsn(isStatic ? INVOKESTATIC : INVOKESPECIAL, className, uninstName, desc, false);
+		if (returnType.getSort() == Type.VOID || returnType.getSort() == Type.OBJECT) {
+			super.visitInsn(returnType.getOpcode(IRETURN));
+		} else {
+			// Preallocated container for the return value, always the last argument
+			int container = slots[newArgs.length - 1];
+			String containerType = newArgs[newArgs.length - 1].getInternalName();
+			super.visitVarInsn(ALOAD, container);
+			if (returnType.getSize() == 2) {
+				super.visitInsn(DUP_X2);
+				super.visitInsn(POP);
+			} else
+				super.visitInsn(SWAP);
+			super.visitFieldInsn(PUTFIELD, containerType, "val", returnType.getDescriptor());
+			super.visitVarInsn(ALOAD, container);
+			if (Configuration.MULTI_TAINTING)
+				super.visitInsn(ACONST_NULL);
+			else
+				super.visitInsn(ICONST_0);
+			super.visitFieldInsn(PUTFIELD, containerType, "taint", Configuration.TAINT_TAG_DESC);
+			super.visitVarInsn(ALOAD, container);
+			super.visitInsn(ARETURN);
+		}
+		super.visitLabel(instrumented);
+		if (!ignoreFrames) {
+			super.visitFrame(F_NEW, locals.length, locals, 0, new Object[0]);
+			// The method itself may start with a frame, which must not be at the same offset
+			super.visitInsn(NOP);
+		}
+	}
+}
@@ -0,0 +1,358 @@
+package edu.columbia.cs.psl.phosphor.instrumenter;
+
+import edu.columbia.cs.psl.phosphor.Configuration;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Opt-in profile of instrumentation (the profile option of the agent and of the static Instrumenter). Records, for
+ * every class that is instrumented, the wall time of each pass over it and its size before and after, and for every
+ * method, how many instructions and local variable slots it had before and after, and how many local variables
+ * LocalVariableManager created for it. Written as JSON when the JVM exits.
+ *
+ * Each class is instrumented on a single thread, so the class being profiled is kept in a ThreadLocal and the
+ * visitors deep in the chain only need to call the static methods here.
+ */
+public final class InstrumentationProfiler {
+
+	public enum Pass {
+		/* Reading the class and deciding how to instrument it */
+		PARSE,
+		/* Computing frames for classes that are too old to have them */
+		COMPUTE_FRAMES,
+		/* Running the instrumenting visitors */
+		INSTRUMENT,
+		/* Writing the instrumented class */
+		WRITE,
+		/* Instrumenting the whole class again with reduced size, since a method was too large */
+		REDUCE
+	}
+
+	private static volatile File reportFile;
+	private static final ConcurrentLinkedQueue<ClassProfile> classes = new ConcurrentLinkedQueue<>();
+	private static final ThreadLocal<ClassProfile> current = new ThreadLocal<>();
+
+	private InstrumentationProfiler() {
+	}
+
+	public static final class ClassProfile {
+		final String name;
+		final int bytesIn;
+		int bytesOut = -1;
+		boolean cached;
+		boolean framesRecomputed;
+		final long[] passNanos = new long[Pass.values().length];
+		private long lap;
+		final List<MethodProfile> methods = new ArrayList<>();
+		MethodProfile curMethod;
+
+		ClassProfile(String name, int bytesIn) {
+			this.name = name;
+			this.bytesIn = bytesIn;
+			this.lap = System.nanoTime();
+		}
+
+		/* Adds the time since the previous call (or since the class was started) to the specified pass */
+		public void lap(Pass pass) {
+			long now = System.nanoTime();
+			passNanos[pass.ordinal()] += now - lap;
+			lap = now;
+		}
+
+		public void setFramesRecomputed() {
+			framesRecomputed = true;
+		}
+
+		public void setCached() {
+			cached = true;
+		}
+
+		/* Drops the methods recorded so far, since the whole class is being instrumented again (see Pass.REDUCE),
+		 * which records each of them again */
+		public void reinstrumenting() {
+			methods.clear();
+			curMethod = null;
+		}
+	}
+
+	static final class MethodProfile {
+		final String name;
+		final String desc;
+		final String outName;
+		final String outDesc;
+		final int insnsIn;
+		final int localsIn;
+		int insnsOut = -1;
+		int localsOut = -1;
+		int lvsCreated;
+		int tmpLVsCreated;
+		long nanos;
+
+		MethodProfile(String name, String desc, String outName, String outDesc, int insnsIn, int localsIn) {
+			this.name = name;
+			this.desc = desc;
+			this.outName = outName;
+			this.outDesc = outDesc;
+			this.insnsIn = insnsIn;
+			this.localsIn = localsIn;
+		}
+	}
+
+	/* Starts profiling, writing the report to the specified file when the JVM exits. */
+	public static synchronized void enable(File f) {
+		if (reportFile == null) {
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					try {
+						write(reportFile);
+					} catch (IOException ex) {
+						System.err.println("Unable to write the instrumentation profile to " + reportFile);
+						ex.printStackTrace();
+					}
+				}
+			});
+		}
+		reportFile = f;
+	}
+
+	public static boolean isEnabled() {
+		return reportFile != null;
+	}
+
+	/* Starts profiling the specified class on this thread, returning null if profiling is off. */
+	public static ClassProfile classStarted(String className, int bytesIn) {
+		if (reportFile == null)
+			return null;
+		ClassProfile ret = new ClassProfile(className, bytesIn);
+		current.set(ret);
+		return ret;
+	}
+
+	/* Records the result of instrumenting the class being profiled on this thread. */
+	public static void classFinished(ClassProfile profile, byte[] instrumented) {
+		if (profile == null)
+			return;
+		profile.bytesOut = instrumented.length;
+		if (!profile.methods.isEmpty())
+			countOutput(profile, instrumented);
+		classes.add(profile);
+	}
+
+	/* Stops profiling on this thread, discarding the class if it was not finished (it was not instrumented). */
+	public static void classEnded() {
+		if (reportFile != null)
+			current.remove();
+	}
+
+	/* Starts recording a method, whose original code is in source and which is written as outName and outDesc. */
+	static MethodProfile methodStarted(String name, MethodNode source, String outName, String outDesc) {
+		ClassProfile c = reportFile == null ? null : current.get();
+		if (c == null)
+			return null;
+		int insns = 0;
+		for (AbstractInsnNode insn = source.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+			if (insn.getOpcode() >= 0)
+				insns++;
+		}
+		MethodProfile ret = new MethodProfile(name, source.desc, outName, outDesc, insns, source.maxLocals);
+		ret.nanos = System.nanoTime();
+		c.methods.add(ret);
+		c.curMethod = ret;
+		return ret;
+	}
+
+	static void methodFinished(MethodProfile profile) {
+		if (profile == null)
+			return;
+		profile.nanos = System.nanoTime() - profile.nanos;
+		// Methods generated later on (wrappers and such) are not attributed to this one
+		ClassProfile c = current.get();
+		if (c != null)
+			c.curMethod = null;
+	}
+
+	/* Forgets the local variables created for the method being instrumented on this thread, since it is being
+	 * instrumented again with reduced size */
+	static void methodReinstrumenting() {
+		ClassProfile c = reportFile == null ? null : current.get();
+		if (c == null || c.curMethod == null)
+			return;
+		c.curMethod.lvsCreated = 0;
+		c.curMethod.tmpLVsCreated = 0;
+	}
+
+	/* Records the local variables that LocalVariableManager created for the method being instrumented on this thread */
+	static void localsCreated(int lvs, int tmpLVs) {
+		ClassProfile c = reportFile == null ? null : current.get();
+		if (c == null || c.curMethod == null)
+			return;
+		c.curMethod.lvsCreated += lvs;
+		c.curMethod.tmpLVsCreated += tmpLVs;
+	}
+
+	/* Fills in the instructions and local variable slots of each method in the instrumented class */
+	private static void countOutput(ClassProfile profile, byte[] instrumented) {
+		final HashMap<String, int[]> counts = new HashMap<>();
+		try {
+			new ClassReader(instrumented).accept(new ClassVisitor(Configuration.ASM_VERSION) {
+				@Override
+				public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+					final int[] c = new int[2];
+					counts.put(name + descriptor, c);
+					return new InsnCounter(c);
+				}
+			}, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		} catch (RuntimeException ex) {
+			return;
+		}
+		for (MethodProfile m : profile.methods) {
+			int[] c = counts.get(m.outName + m.outDesc);
+			if (c != null) {
+				m.insnsOut = c[0];
+				m.localsOut = c[1];
+			}
+		}
+	}
+
+	/* Counts the instructions of a method into count[0], and its local variable slots into count[1] */
+	private static final class InsnCounter extends MethodVisitor {
+		private final int[] count;
+
+		InsnCounter(int[] count) {
+			super(Configuration.ASM_VERSION);
+			this.count = count;
+		}
+
+		@Override
+		public void visitInsn(int opcode) {
+			count[0]++;
+		}
+
+		@Override
+		public void visitIntInsn(int opcode, int operand) {
+			count[0]++;
+		}
+
+		@Override
+		public void visitVarInsn(int opcode, int var) {
+			count[0]++;
+		}
+
+		@Override
+		public void visitTypeInsn(int opcode, String type) {
+			count[0]++;
+		}
+
+		@Override
+		public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+			count[0]++;
+		}
+
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+			count[0]++;
+		}
+
+		@Override
+		public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+			count[0]++;
+		}
+
+		@Override
+		public void visitJumpInsn(int opcode, Label label) {
+			count[0]++;
+		}
+
+		@Override
+		public void visitLdcInsn(Object value) {
+			count[0]++;
+		}
+
+		@Override
+		public void visitIincInsn(int var, int increment) {
+			count[0]++;
+		}
+
+		@Override
+		public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+			count[0]++;
+		}
+
+		@Override
+		public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+			count[0]++;
+		}
+
+		@Override
+		public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+			count[0]++;
+		}
+
+		@Override
+		public void visitMaxs(int maxStack, int maxLocals) {
+			count[1] = maxLocals;
+		}
+	}
+
+	/* Writes every class profiled so far to the specified file as JSON. */
+	static void write(File f) throws IOException {
+		try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), "UTF-8"))) {
+			w.write("{\"classes\":[");
+			boolean firstClass = true;
+			for (ClassProfile c : classes) {
+				if (!firstClass)
+					w.write(',');
+				firstClass = false;
+				w.write("\n{\"name\":");
+				string(w, c.name);
+				w.write(",\"bytesIn\":" + c.bytesIn + ",\"bytesOut\":" + c.bytesOut + ",\"cached\":" + c.cached + ",\"framesRecomputed\":" + c.framesRecomputed);
+				w.write(",\"passNanos\":{");
+				for (Pass p : Pass.values()) {
+					if (p.ordinal() > 0)
+						w.write(',');
+					w.write("\"" + p.name().toLowerCase() + "\":" + c.passNanos[p.ordinal()]);
+				}
+				w.write("},\"methods\":[");
+				for (int i = 0; i < c.methods.size(); i++) {
+					MethodProfile m = c.methods.get(i);
+					if (i > 0)
+						w.write(',');
+					w.write("\n {\"name\":");
+					string(w, m.name);
+					w.write(",\"desc\":");
+					string(w, m.desc);
+					w.write(",\"nanos\":" + m.nanos + ",\"insnsIn\":" + m.insnsIn + ",\"insnsOut\":" + m.insnsOut + ",\"localsIn\":" + m.localsIn
+							+ ",\"localsOut\":" + m.localsOut + ",\"lvsCreated\":" + m.lvsCreated + ",\"tmpLVsCreated\":" + m.tmpLVsCreated + "}");
+				}
+				w.write("]}");
+			}
+			w.write("\n]}\n");
+		}
+	}
+
+	private static void string(Writer w, String s) throws IOException {
+		w.write('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+				w.write('\\');
+			if (c < 0x20)
+				w.write(String.format("\\u%04x", (int) c));
+			else
+				w.write(c);
+		}
+		w.write('"');
+	}
+}
@@ -348,6 +348,8 @@ public class LocalVariableManager extends OurLocalVariablesSorter implements Opc
 	ArrayList<TmpLV> tmpLVs = new ArrayList<LocalVariableManager.TmpLV>();
 
 	boolean endVisited = false;
+	// LVs created so far that were already written out of createdLVs
+	private int nCreatedLVs;
 	@Override
 	public void visitLocalVariable(String name, String desc, String signature, Label start, Label end, int index) {
 		super.visitLocalVariable(name, desc, signature, start, end, index);
@@ -361,6 +363,7 @@ public class LocalVariableManager extends OurLocalVariablesSorter implements Opc
 				for (LocalVariableNode n : createdLVs) {
 					uninstMV.visitLocalVariable(n.name, n.desc, n.signature, n.start.getLabel(), n.end.getLabel(), n.index);
 				}
+			nCreatedLVs += createdLVs.size();
 			createdLVs.clear();
 		}
 	}
@@ -393,6 +396,7 @@ public class LocalVariableManager extends OurLocalVariablesSorter implements Opc
 	@Override
 	public void visitEnd() {
 		super.visitEnd();
+		InstrumentationProfiler.localsCreated(nCreatedLVs + createdLVs.size(), tmpLVs.size());
 		for (TmpLV l : tmpLVs) {
 			if (l.inUse)
 				throw l.owner;
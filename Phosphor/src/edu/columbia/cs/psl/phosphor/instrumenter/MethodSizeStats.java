@@ -0,0 +1,63 @@
+package edu.columbia.cs.psl.phosphor.instrumenter;
+
+import edu.columbia.cs.psl.phosphor.PreMain;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how often instrumented methods were too large for the JVM's 64KB limit, and what was done about it:
+ * splitting them (MethodSplittingMV), instrumenting just the method again with aggressivelyReduceMethodSize
+ * (TaintTrackingClassVisitor) or, as a last resort, instrumenting the whole class again that way (PreMain).
+ */
+public final class MethodSizeStats {
+
+	private static final AtomicInteger methodsSplit = new AtomicInteger();
+	private static final AtomicInteger helpersAdded = new AtomicInteger();
+	private static final AtomicInteger methodsReduced = new AtomicInteger();
+	private static final AtomicLong methodsReducedNanos = new AtomicLong();
+	private static final AtomicInteger classesReduced = new AtomicInteger();
+	private static final AtomicLong classesReducedNanos = new AtomicLong();
+
+	private MethodSizeStats() {
+	}
+
+	static void methodSplit(int nHelpers) {
+		methodsSplit.incrementAndGet();
+		helpersAdded.addAndGet(nHelpers);
+	}
+
+	static void methodReduced(String className, String methodName, long nanos) {
+		methodsReduced.incrementAndGet();
+		methodsReducedNanos.addAndGet(nanos);
+		if (PreMain.DEBUG)
+			System.err.println("Instrumented " + className + "." + methodName + " again to reduce its size");
+	}
+
+	public static void classReduced(String className, long nanos) {
+		classesReduced.incrementAndGet();
+		classesReducedNanos.addAndGet(nanos);
+		if (PreMain.DEBUG)
+			System.err.println("Instrumented all of " + className + " again to reduce its size");
+	}
+
+	static int methodsReduced() {
+		return methodsReduced.get();
+	}
+
+	static int classesReduced() {
+		return classesReduced.get();
+	}
+
+	/* Returns whether any method was too large so far. */
+	public static boolean any() {
+		return methodsSplit.get() + methodsReduced.get() + classesReduced.get() > 0;
+	}
+
+	public static String summary() {
+		return String.format("Methods too large after instrumentation: %d split into %d helpers, %d instrumented again with reduced size (%d ms), %d classes instrumented again with reduced size (%d ms)",
+				methodsSplit.get(), helpersAdded.get(), methodsReduced.get(), TimeUnit.NANOSECONDS.toMillis(methodsReducedNanos.get()),
+				classesReduced.get(), TimeUnit.NANOSECONDS.toMillis(classesReducedNanos.get()));
+	}
+}
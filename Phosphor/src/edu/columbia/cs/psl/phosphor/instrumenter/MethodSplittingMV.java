@@ -0,0 +1,1155 @@
+package edu.columbia.cs.psl.phosphor.instrumenter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodTooLargeException;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.LocalVariableAnnotationNode;
+import org.objectweb.asm.tree.LocalVariableNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+import edu.columbia.cs.psl.phosphor.Configuration;
+import edu.columbia.cs.psl.phosphor.TaintUtils;
+import edu.columbia.cs.psl.phosphor.instrumenter.PrimitiveArrayAnalyzer.BasicBlock;
+import edu.columbia.cs.psl.phosphor.runtime.SplitMethodExit;
+
+/**
+ * Sits after TaintPassingMV and splits methods whose instrumented code would no
+ * longer fit in the JVM's 64KB limit. Regions of basic blocks that are only entered
+ * at their first block are moved into private static helper methods. The helper's
+ * parameters mirror the caller's local variable slots (so the moved code and frames
+ * keep their original numbering), which also carries the ControlTaintTagStack and
+ * the other control tracking locals across the call. If the region can leave
+ * through more than one edge, the helper returns the index of the exit taken and the
+ * caller switches on it. Regions of methods that return objects may also return from
+ * the method, in which case the helper returns either that value or a SplitMethodExit.
+ * Locals that a handler around the region reads are also written back when the
+ * helper throws, before the exception reaches that handler.
+ *
+ * Methods that can't be split this way are passed through untouched, and will still
+ * end up in the MethodTooLargeException fallback in PreMain, unless deferIfTooLarge
+ * was called: then nothing is written, and TaintTrackingClassVisitor instruments just
+ * that method again with aggressivelyReduceMethodSize.
+ */
+public class MethodSplittingMV extends MethodNode {
+	public static final int MAX_CODE_SIZE = 65535;
+	private static final int MAX_REGION_SIZE = (MAX_CODE_SIZE * 3) / 4;
+	private static final int MIN_REGION_SIZE = 256;
+	private static final int MAX_PARAM_SLOTS = 255;
+	private static final int MAX_CANDIDATES_CHECKED = 256;
+	private static final String SPLIT_EXIT = Type.getInternalName(SplitMethodExit.class);
+
+	private final MethodVisitor next;
+	private final ClassVisitor cv;
+	private final String className;
+	private final boolean isInterface;
+	private final HashSet<String> helperNames;
+	/* Helpers outlined from this method, which are only written out along with it */
+	private final ArrayList<MethodNode> helpers = new ArrayList<MethodNode>();
+	private boolean deferIfTooLarge;
+	private boolean tooLarge;
+
+	/**
+	 * @param helperNames names of the helpers already added to this class, shared by
+	 *                    all of the class's methods
+	 */
+	public MethodSplittingMV(int access, String className, String name, String desc, String signature, String[] exceptions, MethodVisitor next, ClassVisitor cv, boolean isInterface, HashSet<String> helperNames) {
+		super(Configuration.ASM_VERSION, access, name, desc, signature, exceptions);
+		this.next = next;
+		this.cv = cv;
+		this.className = className;
+		this.isInterface = isInterface;
+		this.helperNames = helperNames;
+	}
+
+	/**
+	 * Don't write this method if it is still too large after splitting, see
+	 * isTooLarge.
+	 */
+	public void deferIfTooLarge() {
+		deferIfTooLarge = true;
+	}
+
+	/**
+	 * Returns whether this method was too large to write, even after splitting. Only
+	 * if deferIfTooLarge was called.
+	 */
+	public boolean isTooLarge() {
+		return tooLarge;
+	}
+
+	@Override
+	public void visitEnd() {
+		super.visitEnd();
+		if (Configuration.SPLIT_LARGE_METHODS && instructions.size() > 0 && codeSize(instructions.getFirst(), null) > MAX_CODE_SIZE) {
+			split();
+			if (deferIfTooLarge && codeSize(instructions.getFirst(), null) > MAX_CODE_SIZE && !fits()) {
+				tooLarge = true;
+				return;
+			}
+			if (!helpers.isEmpty())
+				MethodSizeStats.methodSplit(helpers.size());
+		}
+		for (MethodNode helper : helpers)
+			helper.accept(cv);
+		accept(next);
+	}
+
+	/*
+	 * Whether ASM can write this method after all: codeSize overestimates, so it is
+	 * checked by writing the method on its own.
+	 */
+	private boolean fits() {
+		ClassWriter cw = new ClassWriter(0);
+		cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, className, null, "java/lang/Object", null);
+		accept(cw);
+		try {
+			cw.toByteArray();
+			return true;
+		} catch (MethodTooLargeException ex) {
+			return false;
+		} catch (RuntimeException ex) {
+			// Leave it to the writer of the class to complain about
+			return true;
+		}
+	}
+
+	private void split() {
+		int size = codeSize(instructions.getFirst(), null);
+		while (size > MAX_CODE_SIZE) {
+			Region r = findRegion();
+			if (r == null)
+				return;
+			outline(r);
+			int newSize = codeSize(instructions.getFirst(), null);
+			if (newSize >= size)
+				return;
+			size = newSize;
+		}
+	}
+
+	/**
+	 * Conservative estimate of the number of bytes that ASM will emit for the
+	 * instructions in [from, to). Switch padding is always counted as 3, and once
+	 * the code is too big for 16-bit branch offsets jumps are counted in the form
+	 * that ASM widens them to.
+	 */
+	static int codeSize(AbstractInsnNode from, AbstractInsnNode to) {
+		int narrow = 0;
+		int wide = 0;
+		for (AbstractInsnNode insn = from; insn != to; insn = insn.getNext()) {
+			narrow += insnSize(insn, false);
+			wide += insnSize(insn, true);
+		}
+		return (narrow <= Short.MAX_VALUE ? narrow : wide);
+	}
+
+	static int insnSize(AbstractInsnNode insn, boolean wideJumps) {
+		switch (insn.getType()) {
+			case AbstractInsnNode.INSN:
+				return 1;
+			case AbstractInsnNode.INT_INSN:
+				return insn.getOpcode() == Opcodes.SIPUSH ? 3 : 2;
+			case AbstractInsnNode.VAR_INSN:
+				int var = ((VarInsnNode) insn).var;
+				if (var < 4 && insn.getOpcode() != Opcodes.RET)
+					return 1;
+				return var < 256 ? 2 : 4;
+			case AbstractInsnNode.TYPE_INSN:
+			case AbstractInsnNode.FIELD_INSN:
+			case AbstractInsnNode.LDC_INSN:
+				return 3;
+			case AbstractInsnNode.METHOD_INSN:
+				return insn.getOpcode() == Opcodes.INVOKEINTERFACE ? 5 : 3;
+			case AbstractInsnNode.INVOKE_DYNAMIC_INSN:
+				return 5;
+			case AbstractInsnNode.JUMP_INSN:
+				if (!wideJumps)
+					return 3;
+				return (insn.getOpcode() == Opcodes.GOTO || insn.getOpcode() == Opcodes.JSR) ? 5 : 8;
+			case AbstractInsnNode.IINC_INSN:
+				IincInsnNode iinc = (IincInsnNode) insn;
+				return (iinc.var > 255 || iinc.incr > Byte.MAX_VALUE || iinc.incr < Byte.MIN_VALUE) ? 6 : 3;
+			case AbstractInsnNode.TABLESWITCH_INSN:
+				return 16 + 4 * ((TableSwitchInsnNode) insn).labels.size();
+			case AbstractInsnNode.LOOKUPSWITCH_INSN:
+				return 12 + 8 * ((LookupSwitchInsnNode) insn).keys.size();
+			case AbstractInsnNode.MULTIANEWARRAY_INSN:
+				return 4;
+			default:
+				return 0;
+		}
+	}
+
+	static class Region {
+		int start;
+		int end;
+		int size;
+		boolean startsInLoop;
+		int nParamSlots;
+		int nFrameSlots;
+		int[] liveOut;
+		Object[] liveOutTypes;
+		/* The locals of liveOut that a handler around the region reads */
+		BitSet thrownOut;
+		boolean spill;
+		boolean returnExit;
+		boolean valueReturn;
+		ArrayList<Integer> exitBlocks = new ArrayList<Integer>();
+		ArrayList<TryCatchBlockNode> movedTryCatchBlocks = new ArrayList<TryCatchBlockNode>();
+	}
+
+	/*
+	 * Analysis state for the current shape of the method, rebuilt before each region is
+	 * picked since outlining changes the instruction list.
+	 */
+	private AbstractInsnNode[] insns;
+	private BasicBlock[] blocks;
+	private int[] blockOf;
+	private int[] blockStart;
+	private int[] frameIdx;
+	private int[] blockLabel;
+	private BitSet[] liveIn;
+
+	private Region findRegion() {
+		insns = instructions.toArray();
+		int n = insns.length;
+		blockOf = new int[n];
+		for (AbstractInsnNode insn : insns)
+			if (insn instanceof FrameNode && ((FrameNode) insn).type != Opcodes.F_NEW && ((FrameNode) insn).type != Opcodes.F_FULL)
+				return null;
+
+		// Blocks start at every label that has a frame: all jump targets and handlers do.
+		ArrayList<Integer> starts = new ArrayList<Integer>();
+		ArrayList<Integer> frames = new ArrayList<Integer>();
+		starts.add(0);
+		frames.add(-1);
+		for (int i = 0; i < n; i++) {
+			if (!(insns[i] instanceof FrameNode))
+				continue;
+			int s = i;
+			int label = -1;
+			while (s > 0 && (insns[s - 1] instanceof LabelNode || insns[s - 1] instanceof LineNumberNode)) {
+				s--;
+				if (insns[s] instanceof LabelNode)
+					label = s;
+			}
+			if (label < 0 || s == 0)
+				continue;
+			starts.add(s);
+			frames.add(i);
+		}
+		int nBlocks = starts.size();
+		blockStart = new int[nBlocks + 1];
+		frameIdx = new int[nBlocks];
+		blockLabel = new int[nBlocks];
+		blocks = new BasicBlock[nBlocks];
+		for (int b = 0; b < nBlocks; b++) {
+			blockStart[b] = starts.get(b);
+			frameIdx[b] = frames.get(b);
+			blocks[b] = new BasicBlock();
+			blocks[b].idx = b;
+			blocks[b].insn = insns[blockStart[b]];
+			blockLabel[b] = -1;
+			for (int i = blockStart[b]; b > 0 && i < frameIdx[b]; i++)
+				if (insns[i] instanceof LabelNode) {
+					blockLabel[b] = i;
+					break;
+				}
+		}
+		blockStart[nBlocks] = n;
+		for (int b = 0; b < nBlocks; b++)
+			for (int i = blockStart[b]; i < blockStart[b + 1]; i++)
+				blockOf[i] = b;
+
+		int[] narrowSize = new int[nBlocks];
+		int[] wideSize = new int[nBlocks];
+		boolean[] pinned = new boolean[nBlocks];
+		boolean[] fallsThrough = new boolean[nBlocks];
+		int[] minPred = new int[nBlocks];
+		int[] maxPred = new int[nBlocks];
+		for (int b = 0; b < nBlocks; b++) {
+			minPred[b] = Integer.MAX_VALUE;
+			maxPred[b] = -1;
+		}
+		boolean inInit = name.equals("<init>") || name.equals("<clinit>");
+		for (int b = 0; b < nBlocks; b++) {
+			AbstractInsnNode last = null;
+			for (int i = blockStart[b]; i < blockStart[b + 1]; i++) {
+				AbstractInsnNode insn = insns[i];
+				narrowSize[b] += insnSize(insn, false);
+				wideSize[b] += insnSize(insn, true);
+				if (insn.getOpcode() < 0)
+					continue;
+				last = insn;
+				switch (insn.getOpcode()) {
+					case Opcodes.IRETURN:
+					case Opcodes.LRETURN:
+					case Opcodes.FRETURN:
+					case Opcodes.DRETURN:
+					case Opcodes.MONITORENTER:
+					case Opcodes.MONITOREXIT:
+					case Opcodes.JSR:
+					case Opcodes.RET:
+						pinned[b] = true;
+						break;
+					case Opcodes.PUTFIELD:
+					case Opcodes.PUTSTATIC:
+						// Final fields may only be assigned from the class's own initializers
+						if (inInit && ((FieldInsnNode) insn).owner.equals(className))
+							pinned[b] = true;
+						break;
+				}
+				if (insn instanceof JumpInsnNode)
+					addEdge(b, ((JumpInsnNode) insn).label, minPred, maxPred, pinned);
+				else if (insn instanceof TableSwitchInsnNode) {
+					addEdge(b, ((TableSwitchInsnNode) insn).dflt, minPred, maxPred, pinned);
+					for (LabelNode l : ((TableSwitchInsnNode) insn).labels)
+						addEdge(b, l, minPred, maxPred, pinned);
+				} else if (insn instanceof LookupSwitchInsnNode) {
+					addEdge(b, ((LookupSwitchInsnNode) insn).dflt, minPred, maxPred, pinned);
+					for (LabelNode l : ((LookupSwitchInsnNode) insn).labels)
+						addEdge(b, l, minPred, maxPred, pinned);
+				}
+			}
+			fallsThrough[b] = b + 1 < nBlocks && (last == null || fallsThrough(last));
+			if (fallsThrough[b]) {
+				blocks[b].successors.add(blocks[b + 1]);
+				blocks[b + 1].predecessors.add(blocks[b]);
+				minPred[b + 1] = Math.min(minPred[b + 1], b);
+				maxPred[b + 1] = Math.max(maxPred[b + 1], b);
+			}
+		}
+		// Exception edges only matter for finding loops; they are checked separately below
+		for (TryCatchBlockNode tcb : tryCatchBlocks) {
+			BasicBlock handler = blocks[blockOf[instructions.indexOf(tcb.handler)]];
+			for (int b = blockOf[instructions.indexOf(tcb.start)]; b <= blockOf[instructions.indexOf(tcb.end)] && b < nBlocks; b++)
+				blocks[b].successors.add(handler);
+		}
+		boolean[] inLoop = new boolean[nBlocks];
+		for (List<BasicBlock> component : new SCCAnalyzer().scc(blocks)) {
+			if (component.size() > 1)
+				for (BasicBlock bb : component)
+					inLoop[bb.idx] = true;
+			else if (component.get(0).successors.contains(component.get(0)))
+				inLoop[component.get(0).idx] = true;
+		}
+
+		// Collect every block range that is only entered at its first block
+		ArrayList<Region> candidates = new ArrayList<Region>();
+		for (int i = 1; i < nBlocks; i++) {
+			if (pinned[i] || blockLabel[i] < 0 || !emptyStack(frameIdx[i]))
+				continue;
+			int narrow = 0;
+			int wide = 0;
+			int runMin = Integer.MAX_VALUE;
+			int runMax = -1;
+			ArrayList<Integer> ends = new ArrayList<Integer>();
+			ArrayList<Integer> sizes = new ArrayList<Integer>();
+			for (int j = i + 1; j < nBlocks; j++) {
+				int b = j - 1;
+				if (pinned[b])
+					break;
+				narrow += narrowSize[b];
+				wide += wideSize[b];
+				int size = narrow <= Short.MAX_VALUE ? narrow : wide;
+				if (size > MAX_REGION_SIZE)
+					break;
+				if (b > i) {
+					runMin = Math.min(runMin, minPred[b]);
+					runMax = Math.max(runMax, maxPred[b]);
+				}
+				if (runMin >= i && runMax < j && size >= MIN_REGION_SIZE && emptyStack(frameIdx[j]) && blockLabel[j] >= 0) {
+					ends.add(j);
+					sizes.add(size);
+				}
+			}
+			// Keep the few largest ends for each start, the checks below are not cheap
+			for (int k = ends.size() - 1; k >= 0 && k >= ends.size() - 4; k--) {
+				Region r = new Region();
+				r.start = i;
+				r.end = ends.get(k);
+				r.size = sizes.get(k);
+				r.startsInLoop = inLoop[i];
+				candidates.add(r);
+			}
+		}
+		if (candidates.isEmpty())
+			return null;
+		// Prefer regions that start outside of any loop, so that the helper isn't re-entered each iteration
+		Collections.sort(candidates, new Comparator<Region>() {
+			@Override
+			public int compare(Region o1, Region o2) {
+				if (o1.startsInLoop != o2.startsInLoop)
+					return o1.startsInLoop ? 1 : -1;
+				return o2.size - o1.size;
+			}
+		});
+		computeLiveness();
+		int checked = 0;
+		for (Region r : candidates) {
+			if (checked++ > MAX_CANDIDATES_CHECKED)
+				break;
+			if (checkRegion(r, fallsThrough))
+				return r;
+		}
+		return null;
+	}
+
+	private void addEdge(int from, LabelNode target, int[] minPred, int[] maxPred, boolean[] pinned) {
+		int to = blockOf[instructions.indexOf(target)];
+		if (instructions.indexOf(target) > frameIdx[to] || !emptyStack(frameIdx[to]))
+			pinned[from] = true;
+		blocks[from].successors.add(blocks[to]);
+		blocks[to].predecessors.add(blocks[from]);
+		minPred[to] = Math.min(minPred[to], from);
+		maxPred[to] = Math.max(maxPred[to], from);
+	}
+
+	private static boolean fallsThrough(AbstractInsnNode insn) {
+		switch (insn.getOpcode()) {
+			case Opcodes.GOTO:
+			case Opcodes.TABLESWITCH:
+			case Opcodes.LOOKUPSWITCH:
+			case Opcodes.RETURN:
+			case Opcodes.IRETURN:
+			case Opcodes.LRETURN:
+			case Opcodes.FRETURN:
+			case Opcodes.DRETURN:
+			case Opcodes.ARETURN:
+			case Opcodes.ATHROW:
+			case Opcodes.RET:
+				return false;
+			default:
+				return true;
+		}
+	}
+
+	private boolean emptyStack(int idx) {
+		return idx >= 0 && (((FrameNode) insns[idx]).stack == null || ((FrameNode) insns[idx]).stack.isEmpty());
+	}
+
+	private boolean checkRegion(Region r, boolean[] fallsThrough) {
+		int interiorStart = frameIdx[r.start] + 1;
+		int interiorEnd = blockStart[r.end];
+
+		// Try blocks must either move entirely into the helper or be left entirely in the caller
+		BitSet handlerLive = new BitSet();
+		ArrayList<Integer> handlers = new ArrayList<Integer>();
+		for (TryCatchBlockNode tcb : tryCatchBlocks) {
+			int ts = instructions.indexOf(tcb.start);
+			int te = instructions.indexOf(tcb.end);
+			int h = instructions.indexOf(tcb.handler);
+			boolean handlerInside = blockOf[h] > r.start && blockOf[h] < r.end;
+			if (handlerInside) {
+				if (ts >= blockStart[r.start] && te <= frameIdx[r.end])
+					r.movedTryCatchBlocks.add(tcb);
+				else
+					return false;
+			} else if (ts <= frameIdx[r.start] && te >= blockStart[r.end]) {
+				handlerLive.or(liveIn[h]);
+				handlers.add(h);
+			} else if (!(te <= frameIdx[r.start] || ts >= blockStart[r.end]))
+				return false;
+		}
+
+		BitSet defs = new BitSet();
+		int maxSlot = 0;
+		LinkedHashMap<Integer, Boolean> exits = new LinkedHashMap<Integer, Boolean>();
+		if (fallsThrough[r.end - 1])
+			exits.put(r.end, true);
+		for (int i = interiorStart; i < interiorEnd; i++) {
+			AbstractInsnNode insn = insns[i];
+			if (insn instanceof VarInsnNode) {
+				VarInsnNode v = (VarInsnNode) insn;
+				maxSlot = Math.max(maxSlot, v.var + slotSize(v.getOpcode()));
+				if (v.getOpcode() >= Opcodes.ISTORE && v.getOpcode() <= Opcodes.ASTORE)
+					defs.set(v.var);
+			} else if (insn instanceof IincInsnNode) {
+				maxSlot = Math.max(maxSlot, ((IincInsnNode) insn).var + 1);
+				defs.set(((IincInsnNode) insn).var);
+			} else if (insn instanceof JumpInsnNode)
+				addExit(r, ((JumpInsnNode) insn).label, exits);
+			else if (insn instanceof TableSwitchInsnNode) {
+				addExit(r, ((TableSwitchInsnNode) insn).dflt, exits);
+				for (LabelNode l : ((TableSwitchInsnNode) insn).labels)
+					addExit(r, l, exits);
+			} else if (insn instanceof LookupSwitchInsnNode) {
+				addExit(r, ((LookupSwitchInsnNode) insn).dflt, exits);
+				for (LabelNode l : ((LookupSwitchInsnNode) insn).labels)
+					addExit(r, l, exits);
+			} else if (insn.getOpcode() == Opcodes.RETURN)
+				r.returnExit = true;
+			else if (insn.getOpcode() == Opcodes.ARETURN)
+				r.valueReturn = true;
+		}
+		r.exitBlocks.addAll(exits.keySet());
+		for (int b : r.exitBlocks)
+			for (Object o : ((FrameNode) insns[frameIdx[b]]).local)
+				if (o instanceof LabelNode || o == Opcodes.UNINITIALIZED_THIS)
+					return false;
+
+		// Locals that the region writes and that are read again after it leaves, or by a handler if it throws
+		BitSet liveAfter = new BitSet();
+		for (int b : r.exitBlocks)
+			liveAfter.or(liveIn[blockStart[b]]);
+		r.thrownOut = handlerLive;
+		r.thrownOut.and(defs);
+		liveAfter.and(defs);
+		liveAfter.or(r.thrownOut);
+		r.liveOut = new int[liveAfter.cardinality()];
+		r.liveOutTypes = new Object[r.liveOut.length];
+		int k = 0;
+		for (int var = liveAfter.nextSetBit(0); var >= 0; var = liveAfter.nextSetBit(var + 1)) {
+			Object type = null;
+			for (int b : r.exitBlocks) {
+				if (!liveIn[blockStart[b]].get(var))
+					continue;
+				Object t = localAt((FrameNode) insns[frameIdx[b]], var);
+				if (type == null)
+					type = t;
+				else if (!type.equals(t))
+					return false;
+			}
+			for (int h : handlers) {
+				if (!liveIn[h].get(var))
+					continue;
+				Object t = localAt((FrameNode) insns[frameIdx[blockOf[h]]], var);
+				if (type == null)
+					type = t;
+				else if (!type.equals(t))
+					return false;
+			}
+			if (!(type instanceof String) && type != Opcodes.INTEGER && type != Opcodes.FLOAT && type != Opcodes.LONG && type != Opcodes.DOUBLE)
+				return false;
+			r.liveOut[k] = var;
+			r.liveOutTypes[k++] = type;
+		}
+		// A single value can be returned directly, anything more goes through arrays passed to the helper
+		int nExits = r.exitBlocks.size() + (r.returnExit ? 1 : 0);
+		r.spill = r.liveOut.length > 1 || (r.liveOut.length == 1 && (nExits > 1 || r.valueReturn)) || !r.thrownOut.isEmpty();
+
+		// The helper's parameters are the caller's locals, slot for slot
+		FrameNode startFrame = (FrameNode) insns[frameIdx[r.start]];
+		int slot = 0;
+		for (Object o : startFrame.local) {
+			if (slot >= maxSlot)
+				break;
+			if (o instanceof LabelNode || o == Opcodes.UNINITIALIZED_THIS)
+				return false;
+			slot += (o == Opcodes.LONG || o == Opcodes.DOUBLE) ? 2 : 1;
+		}
+		r.nParamSlots = slot;
+		r.nFrameSlots = Math.max(slot, maxSlot);
+		if ((r.spill ? r.nFrameSlots + 2 : r.nParamSlots) > MAX_PARAM_SLOTS)
+			return false;
+		// Don't bother when the call and the dispatch would be close to the size of the code they replace
+		int callSize = 2 * (r.spill ? r.nFrameSlots : r.nParamSlots) + 10 * (r.liveOut.length + r.thrownOut.cardinality()) + 4 * nExits + 24;
+		return r.size >= callSize + MIN_REGION_SIZE;
+	}
+
+	private void addExit(Region r, LabelNode target, Map<Integer, Boolean> exits) {
+		int b = blockOf[instructions.indexOf(target)];
+		if (b <= r.start || b >= r.end)
+			exits.put(b, true);
+	}
+
+	private static int slotSize(int opcode) {
+		switch (opcode) {
+			case Opcodes.LLOAD:
+			case Opcodes.DLOAD:
+			case Opcodes.LSTORE:
+			case Opcodes.DSTORE:
+				return 2;
+			default:
+				return 1;
+		}
+	}
+
+	private static Object localAt(FrameNode frame, int var) {
+		int slot = 0;
+		for (Object o : frame.local) {
+			if (slot == var)
+				return o;
+			slot += (o == Opcodes.LONG || o == Opcodes.DOUBLE) ? 2 : 1;
+			if (slot > var)
+				break;
+		}
+		return Opcodes.TOP;
+	}
+
+	/**
+	 * Backwards live variable analysis at instruction granularity. A long or double
+	 * is tracked by its first slot only.
+	 */
+	private void computeLiveness() {
+		int n = insns.length;
+		liveIn = new BitSet[n];
+		int[][] handlers = new int[tryCatchBlocks.size()][];
+		int k = 0;
+		for (TryCatchBlockNode tcb : tryCatchBlocks)
+			handlers[k++] = new int[] { instructions.indexOf(tcb.start), instructions.indexOf(tcb.end), instructions.indexOf(tcb.handler) };
+		for (int i = 0; i < n; i++)
+			liveIn[i] = new BitSet();
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = n - 1; i >= 0; i--) {
+				AbstractInsnNode insn = insns[i];
+				BitSet live = new BitSet();
+				if (insn instanceof JumpInsnNode) {
+					live.or(liveIn[instructions.indexOf(((JumpInsnNode) insn).label)]);
+					if (insn.getOpcode() != Opcodes.GOTO && i + 1 < n)
+						live.or(liveIn[i + 1]);
+				} else if (insn instanceof TableSwitchInsnNode) {
+					live.or(liveIn[instructions.indexOf(((TableSwitchInsnNode) insn).dflt)]);
+					for (LabelNode l : ((TableSwitchInsnNode) insn).labels)
+						live.or(liveIn[instructions.indexOf(l)]);
+				} else if (insn instanceof LookupSwitchInsnNode) {
+					live.or(liveIn[instructions.indexOf(((LookupSwitchInsnNode) insn).dflt)]);
+					for (LabelNode l : ((LookupSwitchInsnNode) insn).labels)
+						live.or(liveIn[instructions.indexOf(l)]);
+				} else if (fallsThrough(insn) && i + 1 < n)
+					live.or(liveIn[i + 1]);
+				if (insn instanceof VarInsnNode) {
+					VarInsnNode v = (VarInsnNode) insn;
+					if (v.getOpcode() >= Opcodes.ISTORE && v.getOpcode() <= Opcodes.ASTORE)
+						live.clear(v.var);
+					else
+						live.set(v.var);
+				} else if (insn instanceof IincInsnNode)
+					live.set(((IincInsnNode) insn).var);
+				for (int[] h : handlers)
+					if (i >= h[0] && i < h[1])
+						live.or(liveIn[h[2]]);
+				if (!live.equals(liveIn[i])) {
+					liveIn[i] = live;
+					changed = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replaces the types of dead locals in every frame with TOP. Once a region has been
+	 * moved, the caller no longer writes the locals that the region used as
+	 * temporaries, so frames further down can't keep claiming that they hold a value.
+	 */
+	private void clearDeadLocals() {
+		for (int i = 0; i < insns.length; i++) {
+			if (!(insns[i] instanceof FrameNode))
+				continue;
+			FrameNode fn = (FrameNode) insns[i];
+			ArrayList<Object> locals = new ArrayList<Object>(fn.local.size());
+			int slot = 0;
+			for (Object o : fn.local) {
+				boolean wide = (o == Opcodes.LONG || o == Opcodes.DOUBLE);
+				if (o == Opcodes.TOP || o == Opcodes.UNINITIALIZED_THIS || o instanceof LabelNode || liveIn[i].get(slot))
+					locals.add(o);
+				else {
+					locals.add(Opcodes.TOP);
+					if (wide)
+						locals.add(Opcodes.TOP);
+				}
+				slot += wide ? 2 : 1;
+			}
+			fn.local = locals;
+		}
+	}
+
+	private void outline(Region r) {
+		clearDeadLocals();
+		int interiorStart = frameIdx[r.start] + 1;
+		int interiorEnd = blockStart[r.end];
+		FrameNode startFrame = (FrameNode) insns[frameIdx[r.start]];
+		int nExits = r.exitBlocks.size() + (r.returnExit ? 1 : 0);
+		boolean returnsExit = nExits > 1 && !r.valueReturn;
+		boolean returnsLiveOut = r.liveOut.length == 1 && !r.spill;
+
+		// Locals written by the region that are needed afterwards go through a long[] and an Object[]
+		int[] spillIdx = new int[r.liveOut.length];
+		int nLongSpills = 0;
+		int nObjSpills = 0;
+		for (int k = 0; k < r.liveOut.length; k++)
+			spillIdx[k] = (r.liveOutTypes[k] instanceof String) ? nObjSpills++ : nLongSpills++;
+		int longSpillSlot = r.nFrameSlots;
+		int objSpillSlot = r.nFrameSlots + 1;
+
+		// Build the helper's descriptor from the caller's locals at the start of the region
+		StringBuilder helperDesc = new StringBuilder("(");
+		ArrayList<Object> paramTypes = new ArrayList<Object>();
+		int slot = 0;
+		for (Object o : startFrame.local) {
+			if (slot >= r.nParamSlots)
+				break;
+			paramTypes.add(o);
+			slot += (o == Opcodes.LONG || o == Opcodes.DOUBLE) ? 2 : 1;
+		}
+		if (r.spill) {
+			while (slot++ < r.nFrameSlots)
+				paramTypes.add(Opcodes.TOP);
+			paramTypes.add("[J");
+			paramTypes.add("[Ljava/lang/Object;");
+		}
+		for (Object o : paramTypes)
+			helperDesc.append(frameTypeToDesc(o));
+		helperDesc.append(')');
+		Type retType;
+		if (r.valueReturn)
+			retType = Type.getType(Object.class);
+		else if (returnsExit)
+			retType = Type.INT_TYPE;
+		else if (returnsLiveOut)
+			retType = Type.getType(frameTypeToDesc(r.liveOutTypes[0]));
+		else
+			retType = Type.VOID_TYPE;
+		helperDesc.append(retType.getDescriptor());
+
+		// Keep the helper hidden from reflection along with the other generated methods
+		String base = name.replace('<', '_').replace('>', '_');
+		if (base.endsWith(TaintUtils.METHOD_SUFFIX))
+			base = base.substring(0, base.length() - TaintUtils.METHOD_SUFFIX.length());
+		String helperName;
+		int id = 0;
+		do {
+			helperName = base + TaintUtils.METHOD_SUFFIX_SPLIT + (id++) + TaintUtils.METHOD_SUFFIX;
+		} while (!helperNames.add(helperName));
+		MethodNode helper = new MethodNode(Configuration.ASM_VERSION, Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, helperName, helperDesc.toString(), null, null);
+
+		// Labels that stay in the caller are reached from the helper through exit stubs
+		HashMap<LabelNode, LabelNode> labels = new HashMap<LabelNode, LabelNode>();
+		for (int i = interiorStart; i < interiorEnd; i++)
+			if (insns[i] instanceof LabelNode)
+				labels.put((LabelNode) insns[i], new LabelNode());
+		HashMap<Integer, LabelNode> stubs = new HashMap<Integer, LabelNode>();
+		for (int b : r.exitBlocks)
+			stubs.put(b, new LabelNode());
+		LabelNode bodyStart = new LabelNode();
+		LabelNode bodyEnd = new LabelNode();
+		Object[] spillLocals = r.spill ? new Object[] { "[J", "[Ljava/lang/Object;" } : null;
+
+		slot = 0;
+		boolean needsNop = true;
+		for (Object o : paramTypes) {
+			if (o == Opcodes.NULL) {
+				helper.instructions.add(new InsnNode(Opcodes.ACONST_NULL));
+				helper.instructions.add(new VarInsnNode(Opcodes.ASTORE, slot));
+				needsNop = false;
+			}
+			slot += (o == Opcodes.LONG || o == Opcodes.DOUBLE) ? 2 : 1;
+		}
+		for (int i = interiorStart; i < interiorEnd && needsNop; i++) {
+			if (insns[i].getOpcode() >= 0)
+				needsNop = false;
+			else if (insns[i] instanceof FrameNode)
+				break;
+		}
+		if (needsNop)
+			helper.instructions.add(new InsnNode(Opcodes.NOP));
+		helper.instructions.add(bodyStart);
+		for (int i = interiorStart; i < interiorEnd; i++) {
+			AbstractInsnNode insn = insns[i];
+			if (insn instanceof JumpInsnNode)
+				helper.instructions.add(new JumpInsnNode(insn.getOpcode(), target(((JumpInsnNode) insn).label, labels, stubs)));
+			else if (insn instanceof TableSwitchInsnNode) {
+				TableSwitchInsnNode sw = (TableSwitchInsnNode) insn;
+				LabelNode[] targets = new LabelNode[sw.labels.size()];
+				for (int k = 0; k < targets.length; k++)
+					targets[k] = target(sw.labels.get(k), labels, stubs);
+				helper.instructions.add(new TableSwitchInsnNode(sw.min, sw.max, target(sw.dflt, labels, stubs), targets));
+			} else if (insn instanceof LookupSwitchInsnNode) {
+				LookupSwitchInsnNode sw = (LookupSwitchInsnNode) insn;
+				LabelNode[] targets = new LabelNode[sw.labels.size()];
+				int[] keys = new int[sw.keys.size()];
+				for (int k = 0; k < targets.length; k++) {
+					targets[k] = target(sw.labels.get(k), labels, stubs);
+					keys[k] = sw.keys.get(k);
+				}
+				helper.instructions.add(new LookupSwitchInsnNode(target(sw.dflt, labels, stubs), keys, targets));
+			} else if (insn.getOpcode() == Opcodes.RETURN) {
+				if (returnsExit) {
+					helper.instructions.add(pushInt(r.exitBlocks.size()));
+					helper.instructions.add(new InsnNode(Opcodes.IRETURN));
+				} else
+					helper.instructions.add(new InsnNode(Opcodes.RETURN));
+			} else if (insn instanceof FrameNode)
+				helper.instructions.add(helperFrame((FrameNode) insn, labels, r.nFrameSlots, true, spillLocals));
+			else
+				helper.instructions.add(insn.clone(labels));
+		}
+		helper.instructions.add(bodyEnd);
+		// The fall through exit goes first so that it is reached from the end of the body
+		ArrayList<Integer> stubOrder = new ArrayList<Integer>(r.exitBlocks);
+		if (stubOrder.remove((Integer) r.end))
+			stubOrder.add(0, r.end);
+		for (int b : stubOrder) {
+			helper.instructions.add(stubs.get(b));
+			helper.instructions.add(helperFrame((FrameNode) insns[frameIdx[b]], labels, r.nFrameSlots, false, spillLocals));
+			for (int k = 0; r.spill && k < r.liveOut.length; k++)
+				if (liveIn[blockStart[b]].get(r.liveOut[k]))
+					spill(helper.instructions, r.liveOut[k], r.liveOutTypes[k], spillIdx[k], longSpillSlot, objSpillSlot);
+			if (r.valueReturn) {
+				helper.instructions.add(pushInt(r.exitBlocks.indexOf(b)));
+				helper.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, SPLIT_EXIT, "get", "(I)L" + SPLIT_EXIT + ";", false));
+				helper.instructions.add(new InsnNode(Opcodes.ARETURN));
+			} else if (returnsExit) {
+				helper.instructions.add(pushInt(r.exitBlocks.indexOf(b)));
+				helper.instructions.add(new InsnNode(Opcodes.IRETURN));
+			} else if (returnsLiveOut) {
+				helper.instructions.add(new VarInsnNode(retType.getOpcode(Opcodes.ILOAD), r.liveOut[0]));
+				helper.instructions.add(new InsnNode(retType.getOpcode(Opcodes.IRETURN)));
+			} else
+				helper.instructions.add(new InsnNode(Opcodes.RETURN));
+		}
+		// When the body throws, the locals that a handler around the call reads are spilled before rethrowing
+		LabelNode thrown = null;
+		if (!r.thrownOut.isEmpty()) {
+			thrown = new LabelNode();
+			helper.instructions.add(thrown);
+			Object[] slots = new Object[r.nFrameSlots + 2];
+			Arrays.fill(slots, Opcodes.TOP);
+			for (int k = 0; k < r.liveOut.length; k++)
+				if (r.thrownOut.get(r.liveOut[k]))
+					setSlot(slots, r.liveOut[k], r.liveOutTypes[k]);
+			slots[longSpillSlot] = "[J";
+			slots[objSpillSlot] = "[Ljava/lang/Object;";
+			Object[] thrownLocals = fromSlots(slots);
+			helper.instructions.add(new FrameNode(Opcodes.F_NEW, thrownLocals.length, thrownLocals, 1, new Object[] { "java/lang/Throwable" }));
+			for (int k = 0; k < r.liveOut.length; k++)
+				if (r.thrownOut.get(r.liveOut[k]))
+					spill(helper.instructions, r.liveOut[k], r.liveOutTypes[k], spillIdx[k], longSpillSlot, objSpillSlot);
+			helper.instructions.add(new InsnNode(Opcodes.ATHROW));
+		}
+		for (TryCatchBlockNode tcb : r.movedTryCatchBlocks)
+			helper.tryCatchBlocks.add(new TryCatchBlockNode(tryLabel(tcb.start, r, labels, bodyStart, bodyEnd), tryLabel(tcb.end, r, labels, bodyStart, bodyEnd), labels.get(tcb.handler), tcb.type));
+		if (thrown != null)
+			helper.tryCatchBlocks.add(new TryCatchBlockNode(bodyStart, bodyEnd, thrown, null));
+		helper.maxLocals = Math.max(maxLocals, r.nFrameSlots + 2);
+		helper.maxStack = maxStack + 4;
+
+		// Replace the region in the caller with the call and the dispatch to the exit that it took
+		ArrayList<AbstractInsnNode> call = new ArrayList<AbstractInsnNode>();
+		int longSpills = maxLocals;
+		int objSpills = maxLocals + 1;
+		if (r.spill) {
+			call.add(pushInt(nLongSpills));
+			call.add(new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_LONG));
+			call.add(new VarInsnNode(Opcodes.ASTORE, longSpills));
+			call.add(pushInt(nObjSpills));
+			call.add(new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/Object"));
+			call.add(new VarInsnNode(Opcodes.ASTORE, objSpills));
+			maxLocals += 2;
+		}
+		slot = 0;
+		for (int k = 0; k < paramTypes.size(); k++) {
+			Object o = paramTypes.get(k);
+			if (r.spill && k >= paramTypes.size() - 2)
+				call.add(new VarInsnNode(Opcodes.ALOAD, k == paramTypes.size() - 2 ? longSpills : objSpills));
+			else if (o == Opcodes.TOP || o == Opcodes.NULL)
+				call.add(new InsnNode(Opcodes.ICONST_0));
+			else
+				call.add(new VarInsnNode(Type.getType(frameTypeToDesc(o)).getOpcode(Opcodes.ILOAD), slot));
+			slot += (o == Opcodes.LONG || o == Opcodes.DOUBLE) ? 2 : 1;
+		}
+		LabelNode callStart = new LabelNode();
+		LabelNode callEnd = new LabelNode();
+		call.add(callStart);
+		call.add(new MethodInsnNode(Opcodes.INVOKESTATIC, className, helperName, helper.desc, isInterface));
+		call.add(callEnd);
+		Object[] afterCall = toSlots(startFrame.local, maxLocals);
+		if (returnsLiveOut) {
+			call.add(new VarInsnNode(retType.getOpcode(Opcodes.ISTORE), r.liveOut[0]));
+			setSlot(afterCall, r.liveOut[0], r.liveOutTypes[0]);
+		}
+		for (int k = 0; r.spill && k < r.liveOut.length; k++) {
+			// Slots that weren't live at the exit taken just get a dead value back
+			unspill(call, r.liveOut[k], r.liveOutTypes[k], spillIdx[k], longSpills, objSpills);
+			setSlot(afterCall, r.liveOut[k], r.liveOutTypes[k]);
+		}
+		if (r.spill) {
+			setSlot(afterCall, longSpills, Opcodes.TOP);
+			setSlot(afterCall, objSpills, Opcodes.TOP);
+		}
+		Object[] afterCallLocals = fromSlots(afterCall);
+		if (r.valueReturn) {
+			// Anything other than a SplitMethodExit is the value that the method returns
+			String returnType = Type.getReturnType(desc).getInternalName();
+			if (!r.exitBlocks.isEmpty()) {
+				LabelNode exitTaken = new LabelNode();
+				call.add(new InsnNode(Opcodes.DUP));
+				call.add(new TypeInsnNode(Opcodes.INSTANCEOF, SPLIT_EXIT));
+				call.add(new JumpInsnNode(Opcodes.IFNE, exitTaken));
+				call.add(new TypeInsnNode(Opcodes.CHECKCAST, returnType));
+				call.add(new InsnNode(Opcodes.ARETURN));
+				call.add(exitTaken);
+				call.add(new FrameNode(Opcodes.F_NEW, afterCallLocals.length, afterCallLocals, 1, new Object[] { "java/lang/Object" }));
+				if (r.exitBlocks.size() == 1) {
+					call.add(new InsnNode(Opcodes.POP));
+					if (r.exitBlocks.get(0) != r.end)
+						call.add(new JumpInsnNode(Opcodes.GOTO, (LabelNode) insns[blockLabel[r.exitBlocks.get(0)]]));
+				} else {
+					LabelNode[] targets = new LabelNode[r.exitBlocks.size()];
+					for (int k = 0; k < targets.length; k++)
+						targets[k] = (LabelNode) insns[blockLabel[r.exitBlocks.get(k)]];
+					call.add(new TypeInsnNode(Opcodes.CHECKCAST, SPLIT_EXIT));
+					call.add(new FieldInsnNode(Opcodes.GETFIELD, SPLIT_EXIT, "idx", "I"));
+					call.add(new TableSwitchInsnNode(0, targets.length - 1, targets[0], targets));
+				}
+			} else {
+				call.add(new TypeInsnNode(Opcodes.CHECKCAST, returnType));
+				call.add(new InsnNode(Opcodes.ARETURN));
+			}
+		} else if (returnsExit) {
+			LabelNode[] targets = new LabelNode[nExits];
+			for (int k = 0; k < r.exitBlocks.size(); k++)
+				targets[k] = (LabelNode) insns[blockLabel[r.exitBlocks.get(k)]];
+			LabelNode returnLabel = null;
+			if (r.returnExit) {
+				returnLabel = new LabelNode();
+				targets[nExits - 1] = returnLabel;
+			}
+			call.add(new TableSwitchInsnNode(0, nExits - 1, targets[0], targets));
+			if (returnLabel != null) {
+				call.add(returnLabel);
+				call.add(new FrameNode(Opcodes.F_NEW, afterCallLocals.length, afterCallLocals, 0, new Object[0]));
+				call.add(new InsnNode(Opcodes.RETURN));
+			}
+		} else if (r.returnExit)
+			call.add(new InsnNode(Opcodes.RETURN));
+		else if (r.exitBlocks.isEmpty()) {
+			// The region always throws, but the caller still can't fall into the next block
+			call.add(new InsnNode(Opcodes.ACONST_NULL));
+			call.add(new InsnNode(Opcodes.ATHROW));
+		} else if (r.exitBlocks.get(0) != r.end)
+			call.add(new JumpInsnNode(Opcodes.GOTO, (LabelNode) insns[blockLabel[r.exitBlocks.get(0)]]));
+
+		LabelNode after = (LabelNode) insns[blockLabel[r.end]];
+		if (thrown != null) {
+			// Reload what the helper spilled when it threw, then rethrow to the handlers around the region
+			if (fallsThrough(call.get(call.size() - 1)))
+				call.add(new JumpInsnNode(Opcodes.GOTO, after));
+			LabelNode reload = new LabelNode();
+			call.add(reload);
+			Object[] slots = toSlots(startFrame.local, maxLocals);
+			setSlot(slots, longSpills, "[J");
+			setSlot(slots, objSpills, "[Ljava/lang/Object;");
+			Object[] reloadLocals = fromSlots(slots);
+			call.add(new FrameNode(Opcodes.F_NEW, reloadLocals.length, reloadLocals, 1, new Object[] { "java/lang/Throwable" }));
+			for (int k = 0; k < r.liveOut.length; k++)
+				if (r.thrownOut.get(r.liveOut[k]))
+					unspill(call, r.liveOut[k], r.liveOutTypes[k], spillIdx[k], longSpills, objSpills);
+			call.add(new InsnNode(Opcodes.ATHROW));
+			// Ahead of the handlers around the region, which it rethrows to
+			tryCatchBlocks.add(0, new TryCatchBlockNode(callStart, callEnd, reload, null));
+		}
+		for (Iterator<LocalVariableNode> iter = localVariables == null ? null : localVariables.iterator(); iter != null && iter.hasNext();) {
+			LocalVariableNode lv = iter.next();
+			if (labels.containsKey(lv.start))
+				lv.start = after;
+			if (labels.containsKey(lv.end))
+				lv.end = after;
+			if (instructions.indexOf(lv.start) >= instructions.indexOf(lv.end))
+				iter.remove();
+		}
+		removeAnnotationsIn(visibleLocalVariableAnnotations, labels);
+		removeAnnotationsIn(invisibleLocalVariableAnnotations, labels);
+		tryCatchBlocks.removeAll(r.movedTryCatchBlocks);
+		for (int i = interiorStart; i < interiorEnd; i++)
+			instructions.remove(insns[i]);
+		AbstractInsnNode prev = insns[frameIdx[r.start]];
+		for (AbstractInsnNode insn : call) {
+			instructions.insert(prev, insn);
+			prev = insn;
+		}
+		maxStack = Math.max(maxStack, slot + 4);
+
+		helpers.add(helper);
+	}
+
+	/* Stores local var, of the specified frame type, at index idx of the long[] or Object[] spill array */
+	private static void spill(InsnList out, int var, Object type, int idx, int longSpillSlot, int objSpillSlot) {
+		boolean isObj = type instanceof String;
+		out.add(new VarInsnNode(Opcodes.ALOAD, isObj ? objSpillSlot : longSpillSlot));
+		out.add(pushInt(idx));
+		out.add(new VarInsnNode(Type.getType(frameTypeToDesc(type)).getOpcode(Opcodes.ILOAD), var));
+		if (type == Opcodes.INTEGER)
+			out.add(new InsnNode(Opcodes.I2L));
+		else if (type == Opcodes.FLOAT) {
+			out.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/Float", "floatToRawIntBits", "(F)I", false));
+			out.add(new InsnNode(Opcodes.I2L));
+		} else if (type == Opcodes.DOUBLE)
+			out.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/Double", "doubleToRawLongBits", "(D)J", false));
+		out.add(new InsnNode(isObj ? Opcodes.AASTORE : Opcodes.LASTORE));
+	}
+
+	/* Loads local var back from where spill stored it */
+	private static void unspill(List<AbstractInsnNode> out, int var, Object type, int idx, int longSpillSlot, int objSpillSlot) {
+		boolean isObj = type instanceof String;
+		out.add(new VarInsnNode(Opcodes.ALOAD, isObj ? objSpillSlot : longSpillSlot));
+		out.add(pushInt(idx));
+		out.add(new InsnNode(isObj ? Opcodes.AALOAD : Opcodes.LALOAD));
+		if (isObj) {
+			if (!type.equals("java/lang/Object"))
+				out.add(new TypeInsnNode(Opcodes.CHECKCAST, (String) type));
+		} else if (type == Opcodes.INTEGER)
+			out.add(new InsnNode(Opcodes.L2I));
+		else if (type == Opcodes.FLOAT) {
+			out.add(new InsnNode(Opcodes.L2I));
+			out.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/Float", "intBitsToFloat", "(I)F", false));
+		} else if (type == Opcodes.DOUBLE)
+			out.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/Double", "longBitsToDouble", "(J)D", false));
+		out.add(new VarInsnNode(Type.getType(frameTypeToDesc(type)).getOpcode(Opcodes.ISTORE), var));
+	}
+
+	/**
+	 * Expands frame locals to one entry per slot, with null for the second half of a
+	 * long or double.
+	 */
+	private static Object[] toSlots(List<Object> local, int nSlots) {
+		ArrayList<Object> slots = new ArrayList<Object>();
+		for (Object o : local) {
+			slots.add(o);
+			if (o == Opcodes.LONG || o == Opcodes.DOUBLE)
+				slots.add(null);
+		}
+		while (slots.size() < nSlots)
+			slots.add(Opcodes.TOP);
+		return slots.toArray();
+	}
+
+	private static void setSlot(Object[] slots, int slot, Object type) {
+		if (slots[slot] == null)
+			slots[slot - 1] = Opcodes.TOP;
+		if ((slots[slot] == Opcodes.LONG || slots[slot] == Opcodes.DOUBLE) && slot + 1 < slots.length)
+			slots[slot + 1] = Opcodes.TOP;
+		slots[slot] = type;
+		if (type == Opcodes.LONG || type == Opcodes.DOUBLE) {
+			if (slot + 2 < slots.length && (slots[slot + 1] == Opcodes.LONG || slots[slot + 1] == Opcodes.DOUBLE))
+				slots[slot + 2] = Opcodes.TOP;
+			slots[slot + 1] = null;
+		}
+	}
+
+	private static Object[] fromSlots(Object[] slots) {
+		ArrayList<Object> local = new ArrayList<Object>();
+		for (Object o : slots)
+			if (o != null)
+				local.add(o);
+		while (!local.isEmpty() && local.get(local.size() - 1) == Opcodes.TOP)
+			local.remove(local.size() - 1);
+		return local.toArray();
+	}
+
+	private LabelNode target(LabelNode label, Map<LabelNode, LabelNode> labels, Map<Integer, LabelNode> stubs) {
+		LabelNode ret = labels.get(label);
+		if (ret == null)
+			ret = stubs.get(blockOf[instructions.indexOf(label)]);
+		return ret;
+	}
+
+	private LabelNode tryLabel(LabelNode label, Region r, Map<LabelNode, LabelNode> labels, LabelNode bodyStart, LabelNode bodyEnd) {
+		LabelNode ret = labels.get(label);
+		if (ret != null)
+			return ret;
+		return instructions.indexOf(label) < frameIdx[r.start] ? bodyStart : bodyEnd;
+	}
+
+	private static void removeAnnotationsIn(List<LocalVariableAnnotationNode> annotations, Map<LabelNode, LabelNode> labels) {
+		if (annotations == null)
+			return;
+		for (Iterator<LocalVariableAnnotationNode> iter = annotations.iterator(); iter.hasNext();) {
+			LocalVariableAnnotationNode an = iter.next();
+			for (LabelNode l : an.start)
+				if (labels.containsKey(l)) {
+					iter.remove();
+					break;
+				}
+		}
+	}
+
+	/**
+	 * Frames in the helper only describe the slots that are passed in or used by the
+	 * region, followed by the spill arrays if there are any.
+	 */
+	private static FrameNode helperFrame(FrameNode fn, Map<LabelNode, LabelNode> labels, int nSlots, boolean keepStack, Object[] spillLocals) {
+		ArrayList<Object> locals = new ArrayList<Object>();
+		int slot = 0;
+		for (Object o : fn.local) {
+			boolean wide = (o == Opcodes.LONG || o == Opcodes.DOUBLE);
+			if (slot >= nSlots)
+				break;
+			if (wide && slot + 1 >= nSlots)
+				o = Opcodes.TOP;
+			else if (o instanceof LabelNode)
+				o = labels.get(o);
+			locals.add(o);
+			slot += wide ? 2 : 1;
+		}
+		if (spillLocals != null) {
+			for (; slot < nSlots; slot++)
+				locals.add(Opcodes.TOP);
+			Collections.addAll(locals, spillLocals);
+		}
+		ArrayList<Object> stack = new ArrayList<Object>();
+		if (keepStack)
+			for (Object o : fn.stack)
+				stack.add(o instanceof LabelNode ? labels.get(o) : o);
+		return new FrameNode(Opcodes.F_NEW, locals.size(), locals.toArray(), stack.size(), stack.toArray());
+	}
+
+	private static String frameTypeToDesc(Object o) {
+		if (o == Opcodes.INTEGER || o == Opcodes.TOP || o == Opcodes.NULL)
+			return "I";
+		if (o == Opcodes.FLOAT)
+			return "F";
+		if (o == Opcodes.LONG)
+			return "J";
+		if (o == Opcodes.DOUBLE)
+			return "D";
+		String internalName = (String) o;
+		if (internalName.charAt(0) == '[')
+			return internalName;
+		return "L" + internalName + ";";
+	}
+
+	private static AbstractInsnNode pushInt(int i) {
+		if (i <= 5)
+			return new InsnNode(Opcodes.ICONST_0 + i);
+		if (i <= Byte.MAX_VALUE)
+			return new IntInsnNode(Opcodes.BIPUSH, i);
+		if (i <= Short.MAX_VALUE)
+			return new IntInsnNode(Opcodes.SIPUSH, i);
+		return new LdcInsnNode(i);
+	}
+}
@@ -224,13 +224,11 @@ public class PrimitiveArrayAnalyzer extends MethodVisitor {
 			final HashSet<Integer> insertACONSTNULLBEFORE = new HashSet<Integer>();
 			Analyzer a = new Analyzer(new BasicArrayInterpreter((this.access & Opcodes.ACC_STATIC) != 0)) {
 			    protected int[] insnToLabel;
+				// Last instruction that is not a frame after each label, offset by one since the first label is -1
+				int[] lastInsnByLabel;
 
 				int getLabel(int insn) {
-					int label = -1;
-					for (int j = 0; j <= insn; j++) {
-						label = insnToLabel[j];
-					}
-					return label;
+					return insnToLabel[insn];
 				}
 
 				int getInsnAfterFrameFor(int insn) {
@@ -243,15 +241,18 @@ public class PrimitiveArrayAnalyzer extends MethodVisitor {
 				}
 
 				int getLastInsnByLabel(int label) {
-					int r = 0;
-					for (int j = 0; j < insnToLabel.length; j++) {
-						if (insnToLabel[j] == label) {
-							if (instructions.get(j).getType() == AbstractInsnNode.FRAME)
-								continue;
-							r = j;
+					if (lastInsnByLabel == null) {
+						int max = 1;
+						for (int l : insnToLabel)
+							max = Math.max(max, l);
+						lastInsnByLabel = new int[max + 2];
+						AbstractInsnNode[] insns = instructions.toArray();
+						for (int j = 0; j < insnToLabel.length; j++) {
+							if (insns[j].getType() != AbstractInsnNode.FRAME)
+								lastInsnByLabel[insnToLabel[j] + 1] = j;
 						}
 					}
-					return r;
+					return label + 1 < lastInsnByLabel.length ? lastInsnByLabel[label + 1] : 0;
 				}
 
 				int getFirstInsnByLabel(int label) {
@@ -423,7 +424,7 @@ public class PrimitiveArrayAnalyzer extends MethodVisitor {
 
 
 				LinkedList<Integer> varsStoredThisInsn = new LinkedList<Integer>();
-				HashSet<String> visited = new HashSet<String>();
+				HashSet<Long> visited = new HashSet<Long>();
 				int insnIdxOrderVisited = 0;
 
 				@Override
@@ -441,9 +442,8 @@ public class PrimitiveArrayAnalyzer extends MethodVisitor {
 				}
 
 				protected void newControlFlowEdge(int insn, int successor, boolean isExceptionalEdge){
-					if(visited.contains(insn+"-"+successor))
+					if(!visited.add(((long) insn << 32) | successor))
 						return;
-					visited.add(insn+"-"+successor);
 					if (!edges.containsKey(successor))
 						edges.put(successor, new LinkedList<Integer>());
 					if (!edges.get(successor).contains(insn))
@@ -746,6 +746,8 @@ public class PrimitiveArrayAnalyzer extends MethodVisitor {
 			}
 			if (Configuration.ANNOTATE_LOOPS) {
 				GraphBasedAnalyzer.doGraphAnalysis(this, implicitAnalysisblocks);
+			} else if ((Configuration.IMPLICIT_TRACKING || Configuration.IMPLICIT_LIGHT_TRACKING) && Configuration.CACHE_LOOP_CONTROL_TAGS && !Configuration.IMPLICIT_LIGHT_SUMMARY_TRACKING) {
+				annotateLoopBranches();
 			}
 
 			if (Configuration.IMPLICIT_TRACKING || Configuration.IMPLICIT_LIGHT_TRACKING) {
@@ -1297,10 +1299,53 @@ public class PrimitiveArrayAnalyzer extends MethodVisitor {
 				}
 				insn = insn.getNext();
 			}
-			this.accept(cmv);
+			// TaintLoadCoercer builds the same tree again, so hand this one over instead
+			if (cmv instanceof TaintLoadCoercer)
+				((TaintLoadCoercer) cmv).visitTree(this);
+			else
+				this.accept(cmv);
 		}
 		HashMap<Integer,BasicBlock> implicitAnalysisblocks = new HashMap<Integer,PrimitiveArrayAnalyzer.BasicBlock>();
 
+		/**
+		 * Marks every conditional branch that lies between a backwards jump and its target with LOOP_HEADER, so that
+		 * TaintPassingMV can have the control tag that the branch pushes reused across iterations
+		 */
+		private void annotateLoopBranches() {
+			AbstractInsnNode[] insns = instructions.toArray();
+			int[] loopDepth = new int[insns.length + 1];
+			boolean hasLoops = false;
+			for (int i = 0; i < insns.length; i++) {
+				ArrayList<LabelNode> targets = new ArrayList<LabelNode>();
+				if (insns[i] instanceof JumpInsnNode)
+					targets.add(((JumpInsnNode) insns[i]).label);
+				else if (insns[i] instanceof TableSwitchInsnNode) {
+					targets.add(((TableSwitchInsnNode) insns[i]).dflt);
+					targets.addAll(((TableSwitchInsnNode) insns[i]).labels);
+				} else if (insns[i] instanceof LookupSwitchInsnNode) {
+					targets.add(((LookupSwitchInsnNode) insns[i]).dflt);
+					targets.addAll(((LookupSwitchInsnNode) insns[i]).labels);
+				}
+				for (LabelNode l : targets) {
+					int target = instructions.indexOf(l);
+					if (target <= i) {
+						loopDepth[target]++;
+						loopDepth[i + 1]--;
+						hasLoops = true;
+					}
+				}
+			}
+			if (!hasLoops)
+				return;
+			int depth = 0;
+			for (int i = 0; i < insns.length; i++) {
+				depth += loopDepth[i];
+				if (depth > 0 && (insns[i].getType() == AbstractInsnNode.TABLESWITCH_INSN || insns[i].getType() == AbstractInsnNode.LOOKUPSWITCH_INSN
+						|| (insns[i].getType() == AbstractInsnNode.JUMP_INSN && insns[i].getOpcode() != Opcodes.GOTO && insns[i].getOpcode() != Opcodes.JSR)))
+					instructions.insertBefore(insns[i], new InsnNode(TaintUtils.LOOP_HEADER));
+			}
+		}
+
 	}
 
 	private boolean mightEndBlock(AbstractInsnNode insn) {
@@ -90,56 +90,11 @@ public class PrimitiveBoxingFixer extends TaintAdapter implements Opcodes {
 		//				|| owner.equals(Type.getInternalName(Short.class)) ||  owner.equals(Type.getInternalName(Float.class)) 
 				|| owner.equals(Type.getInternalName(Long.class)) || owner.equals(Type.getInternalName(Double.class))) && name.equals("valueOf$$PHOSPHORTAGGED") && nArgs == (Configuration.IMPLICIT_TRACKING ? 3 : 2) && !argIsStr) {
 			Type argT = Type.getArgumentTypes(desc)[1];
-			int argSize = argT.getSize();
-			if (argSize == 1) {
-				if(Configuration.IMPLICIT_TRACKING)
-					super.visitInsn(POP);
-//				System.out.println(analyzer.stack);
-				//stack is currently T I <top>
-				//we'll support (Integer) 1 == (Integer) 1 as long as there is no taint on it.
-				super.visitInsn(SWAP);
-				FrameNode fn = getCurrentFrameNode();
-				super.visitInsn(DUP);
-				Label makeNew = new Label();
-				Label isOK = new Label();
-				super.visitJumpInsn((Configuration.MULTI_TAINTING ? IFNONNULL:IFNE), makeNew);
-				super.visitInsn(SWAP);
-				if(Configuration.IMPLICIT_TRACKING)
-					super.visitVarInsn(ALOAD,lvs.idxOfMasterControlLV);
-				super.visitMethodInsn(opcode, owner, name, desc, itfc);
-				super.visitJumpInsn(GOTO, isOK);
-				super.visitLabel(makeNew);
-				acceptFn(fn);
-				super.visitInsn(SWAP);
-				super.visitTypeInsn(Opcodes.NEW, owner);
-				super.visitInsn(Opcodes.DUP);
-				//T I N N
-				super.visitInsn(Opcodes.DUP2_X2);
-				super.visitInsn(Opcodes.POP2);
-				//N N T I
-				super.visitInsn(Opcodes.ACONST_NULL);
-				if(Configuration.IMPLICIT_TRACKING)
-				{
-					super.visitVarInsn(ALOAD,lvs.idxOfMasterControlLV);
-					super.visitInsn(SWAP);
-					super.visitMethodInsn(Opcodes.INVOKESPECIAL, owner, "<init>", "("+Configuration.TAINT_TAG_DESC + Type.getArgumentTypes(desc)[1].getDescriptor() + Type.getDescriptor(ControlTaintTagStack.class)+Type.getDescriptor(TaintSentinel.class) + ")V",false);
-				}
-				else
-					super.visitMethodInsn(Opcodes.INVOKESPECIAL, owner, "<init>", "("+Configuration.TAINT_TAG_DESC + Type.getArgumentTypes(desc)[1].getDescriptor() + Type.getDescriptor(TaintSentinel.class) + ")V",false);
-				super.visitInsn(DUP);
-				super.visitInsn(DUP);
-				super.visitFieldInsn(GETFIELD, owner, "value"+TaintUtils.TAINT_FIELD, Configuration.TAINT_TAG_DESC);
-//				super.visitMethodInsn(INVOKESTATIC,Type.getInternalName(Taint.class), "copyTaint","("+Configuration.TAINT_TAG_DESC+")"+Configuration.TAINT_TAG_DESC,false);
-				super.visitFieldInsn(PUTFIELD, owner, TaintUtils.TAINT_FIELD, Configuration.TAINT_TAG_DESC);
-				FrameNode fn2 = getCurrentFrameNode();
-				super.visitLabel(isOK);
-				if(!followedByFrame)
-					acceptFn(fn2);
-			} else if(argT.getSort() == Type.LONG) {
+			if (argT.getSort() == Type.INT || argT.getSort() == Type.LONG) {
+				// Shares the boxes of small values with the same tag
 				super.visitMethodInsn(INVOKESTATIC, "edu/columbia/cs/psl/phosphor/runtime/RuntimeBoxUnboxPropogator", "valueOf", desc, false);
 				return;
-			}
-			else{
+			} else {
 				if(Configuration.IMPLICIT_TRACKING)
 					super.visitInsn(POP);
 				//T V V <top>
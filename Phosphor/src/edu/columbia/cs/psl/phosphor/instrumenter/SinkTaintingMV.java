@@ -2,6 +2,8 @@ package edu.columbia.cs.psl.phosphor.instrumenter;
 
 import edu.columbia.cs.psl.phosphor.*;
 import edu.columbia.cs.psl.phosphor.runtime.TaintSourceWrapper;
+import edu.columbia.cs.psl.phosphor.struct.LazyArrayIntTags;
+import edu.columbia.cs.psl.phosphor.struct.LazyArrayObjTags;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.commons.AdviceAdapter;
 import org.objectweb.asm.MethodVisitor;
@@ -41,56 +43,44 @@ public class SinkTaintingMV extends AdviceAdapter {
         super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(TaintSourceWrapper.class), "enteringSink", "(Ljava/lang/String;)V", false);
     }
 
-    /* Adds code to add a non-taint tag object to the object array. */
-    private void addObject(int arrayIdx, int idx) {
-        // Duplicate the object array
-        super.visitInsn(DUP);
-        // Push the array index onto the stack
-        push(arrayIdx);
-        // Push the argument onto the stack
-        super.visitVarInsn(ALOAD, idx);
-        // Store the argument into the array
-        super.visitInsn(AASTORE);
- }
-
-    /* Adds code to wrap an taint tag argument with its primitive and add the wrapped object to the object array at the specified
-     * index. */
-    private void addWrappedPrimitive(int arrayIdx, int tagIdx, int primitiveIdx, Type primitiveType) {
-        // Duplicate the object array
-        super.visitInsn(DUP);
-        // Push the array index onto the stack
-        push(arrayIdx);
-        // Wrap the primitive and tag together
-        Type containerType = TaintUtils.getContainerReturnType(primitiveType);
-        super.visitTypeInsn(NEW, containerType.getInternalName());
-        super.visitInsn(DUP);
+    /* Adds code to check the taint tag of a primitive argument, passing the primitive along to be reported if it is
+     * tainted. */
+    private void checkPrimitive(int tagIdx, int primitiveIdx, Type primitiveType) {
+        super.visitFieldInsn(GETSTATIC, Type.getInternalName(Configuration.class), "autoTainter", Type.getDescriptor(TaintSourceWrapper.class));
         if(Configuration.MULTI_TAINTING) {
             super.visitVarInsn(ALOAD, tagIdx);
+            super.visitVarInsn(primitiveType.getOpcode(ILOAD), primitiveIdx);
+            super.visitLdcInsn(baseSink);
+            super.visitLdcInsn(actualSink);
+            super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(TaintSourceWrapper.class), "checkTaint", "(" + Configuration.TAINT_TAG_DESC +
+                    primitiveType.getDescriptor() + "Ljava/lang/String;Ljava/lang/String;)V", false);
         } else {
             super.visitVarInsn(ILOAD, tagIdx);
+            super.visitLdcInsn(actualSink);
+            super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(TaintSourceWrapper.class), "checkTaint", "(ILjava/lang/String;)V", false);
         }
-        super.visitVarInsn(primitiveType.getOpcode(ILOAD), primitiveIdx);
-        super.visitMethodInsn(INVOKESPECIAL, containerType.getInternalName(), "<init>", "("+Configuration.TAINT_TAG_DESC+
-                primitiveType.getDescriptor()+")V", false);
-        // Store the wrapped value into the array
-        super.visitInsn(AASTORE);
     }
 
-    /* Adds the code to create an appropriately sized array for all of the objects that need to be checked for taint tags. */
-    private void initializeArgumentArray() {
-        int count = 0;
-        for (int i = 0; i < args.length; i++) {
-            if(args[i].getDescriptor().equals(Configuration.TAINT_TAG_DESC)) {
-                // Argument is a taint tag
-                count++;
-                // Skip the next arg - it is the primitive whose taint tag was just counted
-                i++;
-            } else if (args[i].getSort() == Type.OBJECT || (args[i].getSort() == Type.ARRAY && args[i].getElementType().getSort() == Type.OBJECT)) {
-                count++;
+    /* Adds code to check an object argument (or this), calling the checkTaint method for its static type if there is
+     * one. */
+    private void checkObject(int idx, Type type) {
+        super.visitFieldInsn(GETSTATIC, Type.getInternalName(Configuration.class), "autoTainter", Type.getDescriptor(TaintSourceWrapper.class));
+        super.visitVarInsn(ALOAD, idx);
+        String paramType = "Ljava/lang/Object;";
+        if(type.getSort() == Type.OBJECT) {
+            String name = type.getInternalName();
+            if(name.equals("java/lang/String")) {
+                paramType = "Ljava/lang/String;";
+            } else if(name.startsWith("edu/columbia/cs/psl/phosphor/struct/Lazy") && name.endsWith("ArrayObjTags")) {
+                paramType = Type.getDescriptor(LazyArrayObjTags.class);
+            } else if(name.startsWith("edu/columbia/cs/psl/phosphor/struct/Lazy") && name.endsWith("ArrayIntTags")) {
+                paramType = Type.getDescriptor(LazyArrayIntTags.class);
             }
         }
-        super.visitIntInsn(SIPUSH, count);
-        super.visitTypeInsn(ANEWARRAY, "java/lang/Object");
+        super.visitLdcInsn(baseSink);
+        super.visitLdcInsn(actualSink);
+        super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(TaintSourceWrapper.class), "checkTaint", "(" + paramType +
+                "Ljava/lang/String;Ljava/lang/String;)V", false);
     }
 
     @Override
@@ -98,37 +88,28 @@ public class SinkTaintingMV extends AdviceAdapter {
         super.onMethodEnter();
         // Call enteringSink before the original body code of the sink
         callEnteringSink();
-        // Add the auto-tainter to the stack
-        super.visitFieldInsn(GETSTATIC, Type.getInternalName(Configuration.class), "autoTainter", Type.getDescriptor(TaintSourceWrapper.class));
-        // Load this onto the stack for non-static methods or null for static methods
-        if(isStatic) {
-            super.visitInsn(ACONST_NULL);
-        } else {
-            loadThis();
-        }
-        // Initialize the array of objects to check
-        initializeArgumentArray();
-        int arrayIdx = 0;
-        // Added objects that need to be checked to the array
-        int idx = isStatic ? 0 : 1; // Start the arguments array after "this" argument for non-static methods
+        // Check each argument that can carry a tag, without gathering them into an array
+        int checked = 0;
+        int idx = isStatic ? 0 : 1; // Start the arguments after "this" argument for non-static methods
         for (int i = 0; i < args.length; i++) {
             if(args[i].getDescriptor().equals(Configuration.TAINT_TAG_DESC)) {
                 // The argument is a taint tag
-                addWrappedPrimitive(arrayIdx++, idx, idx + args[i].getSize(), args[i+1]);
+                checkPrimitive(idx, idx + args[i].getSize(), args[i+1]);
+                checked++;
                 // Skip the primitive associated with this taint tag
                 idx += args[i].getSize();
                 i++;
             } else if(args[i].getSort() == Type.OBJECT ||(args[i].getSort() == Type.ARRAY && args[i].getElementType().getSort() == Type.OBJECT)) {
                 // Argument is an object or an array of objects (possibly wrapped primitive array objects)
-                addObject(arrayIdx++, idx);
+                checkObject(idx, args[i]);
+                checked++;
             }
             idx += args[i].getSize();
         }
-        // Load the sink info
-        super.visitLdcInsn(baseSink);
-        super.visitLdcInsn(actualSink);
-        // Call checkTaint
-        super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(TaintSourceWrapper.class), "checkTaint", "(Ljava/lang/Object;[Ljava/lang/Object;Ljava/lang/String;Ljava/lang/String;)V", false);
+        // The receiver is only checked for sinks without arguments that can carry tags
+        if(!isStatic && checked == 0) {
+            checkObject(0, Type.getType(Object.class));
+        }
         // If there are no other exception handlers for this method begin the try-finally block around the sink
         if(numberOfRemainingTryCatchBlocks == 0) {
             addTryCatchBlockHeader();
@@ -40,15 +40,50 @@ public class TaintLoadCoercer extends MethodVisitor implements Opcodes {
 
 	@Override
 	public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
-		if (owner.equals(Type.getInternalName(Character.class)) && (name.startsWith("codePointAt") || name.startsWith("toChars") || name.startsWith("codePointBefore")
+		if (isReplacedByCharacterUtils(owner, name)) {
+			super.visitMethodInsn(opcode, Type.getInternalName(CharacterUtils.class), name, descriptor, isInterface);
+		} else
+			super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+	}
+
+	private static boolean isReplacedByCharacterUtils(String owner, String name) {
+		return owner.equals(Type.getInternalName(Character.class)) && (name.startsWith("codePointAt") || name.startsWith("toChars") || name.startsWith("codePointBefore")
 		|| name.startsWith("reverseBytes")
 		|| name.startsWith("toLowerCase")
 		|| name.startsWith("toTitleCase")
 		|| name.startsWith("toUpperCase")
-		)) {
-			super.visitMethodInsn(opcode, Type.getInternalName(CharacterUtils.class), name, descriptor, isInterface);
-		} else
-			super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+		);
+	}
+
+	/**
+	 * Takes over the method that was buffered in src, instead of being visited with a copy of it node by node, and then
+	 * analyzes it as visitEnd would. src must not be used afterwards, except for its local variable table.
+	 */
+	void visitTree(MethodNode src) {
+		MethodNode mn = (MethodNode) this.mv;
+		mn.parameters = src.parameters;
+		mn.visibleAnnotations = src.visibleAnnotations;
+		mn.invisibleAnnotations = src.invisibleAnnotations;
+		mn.visibleTypeAnnotations = src.visibleTypeAnnotations;
+		mn.invisibleTypeAnnotations = src.invisibleTypeAnnotations;
+		mn.attrs = src.attrs;
+		mn.annotationDefault = src.annotationDefault;
+		mn.visibleAnnotableParameterCount = src.visibleAnnotableParameterCount;
+		mn.visibleParameterAnnotations = src.visibleParameterAnnotations;
+		mn.invisibleAnnotableParameterCount = src.invisibleAnnotableParameterCount;
+		mn.invisibleParameterAnnotations = src.invisibleParameterAnnotations;
+		mn.instructions = src.instructions;
+		mn.tryCatchBlocks = src.tryCatchBlocks;
+		mn.maxStack = src.maxStack;
+		mn.maxLocals = src.maxLocals;
+		mn.localVariables = src.localVariables;
+		mn.visibleLocalVariableAnnotations = src.visibleLocalVariableAnnotations;
+		mn.invisibleLocalVariableAnnotations = src.invisibleLocalVariableAnnotations;
+		for (AbstractInsnNode insn = mn.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+			if (insn.getType() == AbstractInsnNode.METHOD_INSN && isReplacedByCharacterUtils(((MethodInsnNode) insn).owner, ((MethodInsnNode) insn).name))
+				((MethodInsnNode) insn).owner = Type.getInternalName(CharacterUtils.class);
+		}
+		mn.visitEnd();
 	}
 
 	class UninstTaintLoadCoercerMN extends MethodNode {
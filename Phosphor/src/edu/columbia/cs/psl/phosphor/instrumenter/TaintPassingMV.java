@@ -53,29 +53,54 @@ public class TaintPassingMV extends TaintAdapter implements Opcodes {
 	 * Calls "push" on controltainttagstack, possibly requiring loading the exception data
 	 */
 	public void callPushControlTaint(int idx) {
+		if (Configuration.IMPLICIT_LIGHT_SUMMARY_TRACKING) {
+			super.visitInsn(POP);
+			super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(ControlTaintTagStack.class), "addSummaryTag", "(" + Configuration.TAINT_TAG_DESC + ")V", false);
+			return;
+		}
 		super.push(idx);
 		super.push(sizeOfControlTaintArray);
+		String pushMethod = pushControlTaintMethod();
 		if (lvs.idxOfMasterExceptionLV >= 0) {
 			super.visitVarInsn(ALOAD, lvs.idxOfMasterExceptionLV);
-			super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(ControlTaintTagStack.class), "push", "(" + Configuration.TAINT_TAG_DESC + "[III" + Type.getDescriptor(ExceptionalTaintData.class) + ")[I", false);
+			super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(ControlTaintTagStack.class), pushMethod, "(" + Configuration.TAINT_TAG_DESC + "[III" + Type.getDescriptor(ExceptionalTaintData.class) + ")[I", false);
 
 		} else
-			super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(ControlTaintTagStack.class), "push", "(" + Configuration.TAINT_TAG_DESC + "[III" + ")[I", false);
+			super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(ControlTaintTagStack.class), pushMethod, "(" + Configuration.TAINT_TAG_DESC + "[III" + ")[I", false);
 		super.visitVarInsn(ASTORE, controlTaintArray);
 	}
 
 	public void callPushControlTaintObj(int idx) {
+		if (Configuration.IMPLICIT_LIGHT_SUMMARY_TRACKING) {
+			super.visitInsn(POP);
+			super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(ControlTaintTagStack.class), "addSummaryTag", "(Ljava/lang/Object;)V", false);
+			return;
+		}
 		super.push(idx);
 		super.push(sizeOfControlTaintArray);
+		String pushMethod = pushControlTaintMethod();
 		if (lvs.idxOfMasterExceptionLV >= 0) {
 			super.visitVarInsn(ALOAD, lvs.idxOfMasterExceptionLV);
-			super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(ControlTaintTagStack.class), "push", "(Ljava/lang/Object;[III" + Type.getDescriptor(ExceptionalTaintData.class) + ")[I", false);
+			super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(ControlTaintTagStack.class), pushMethod, "(Ljava/lang/Object;[III" + Type.getDescriptor(ExceptionalTaintData.class) + ")[I", false);
 
 		} else
-			super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(ControlTaintTagStack.class), "push", "(Ljava/lang/Object;[III" + ")[I", false);
+			super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(ControlTaintTagStack.class), pushMethod, "(Ljava/lang/Object;[III" + ")[I", false);
 		super.visitVarInsn(ASTORE, controlTaintArray);
 	}
 
+	/* The ControlTaintTagStack method that the branch that is starting pushes its tag with */
+	private String pushControlTaintMethod() {
+		return (branchStartingInLoop && Configuration.CACHE_LOOP_CONTROL_TAGS && Configuration.MULTI_TAINTING) ? "pushLoopBranch" : "push";
+	}
+
+	/* Called after each jump or switch, so that a LOOP_HEADER mark that no BRANCH_START picked up does not apply to a
+	 * later branch, which may be outside of the loop. Labels only drop the pending mark, as the tag factory visits
+	 * labels of its own between the BRANCH_START of a branch and the push of its tag */
+	private void clearLoopBranch() {
+		branchStartingInLoop = false;
+		nextBranchInLoop = false;
+	}
+
 	public void callPopControlTaint(MethodVisitor _mv, int idx) {
 		if(idx < 0)
 			callPopAllControlTaint(_mv);
@@ -184,6 +209,7 @@ public class TaintPassingMV extends TaintAdapter implements Opcodes {
 
 	@Override
 	public void visitLabel(Label label) {
+		nextBranchInLoop = false;
 		if (isIgnoreAllInstrumenting) {
 			super.visitLabel(label);
 			return;
@@ -219,6 +245,8 @@ public class TaintPassingMV extends TaintAdapter implements Opcodes {
 
 
 	private HashSet<MethodNode> wrapperMethodsToAdd;
+	// Followed by the number of wrappers that were added before it
+	static final String INDY_WRAPPER_PREFIX = "phosphorWrapInvokeDymnamic";
 
 	private boolean isExcludedFromControlTrack = false;
 	public TaintPassingMV(MethodVisitor mv, int access, String className, String name, String desc, String signature, String[] exceptions, String originalDesc, NeverNullArgAnalyzerAdapter analyzer,MethodVisitor passthruMV, HashSet<MethodNode> wrapperMethodsToAdd) {
@@ -287,6 +315,9 @@ public class TaintPassingMV extends TaintAdapter implements Opcodes {
 	HashSet<Integer> boxAtNextJump = new HashSet<Integer>();
 
 	public int branchStarting;
+	// Whether the branch that is starting was marked with LOOP_HEADER
+	private boolean branchStartingInLoop;
+	private boolean nextBranchInLoop;
 	HashSet<Integer> forceCtrlAdd = new HashSet<Integer>();
 
 	@SuppressWarnings("unused")
@@ -342,11 +373,13 @@ public class TaintPassingMV extends TaintAdapter implements Opcodes {
 		if(opcode == TaintUtils.BRANCH_START)
 		{
 			branchStarting = var;
+			branchStartingInLoop = nextBranchInLoop;
+			nextBranchInLoop = false;
 			return;
 		}
 		if(opcode == TaintUtils.BRANCH_END)
 		{
-			if(controlTaintArray >= 0) {
+			if(controlTaintArray >= 0 && !Configuration.IMPLICIT_LIGHT_SUMMARY_TRACKING) {
 				passthruMV.visitVarInsn(ALOAD, lvs.getIdxOfMasterControlLV());
 				passthruMV.visitVarInsn(ALOAD, controlTaintArray);
 				callPopControlTaint(passthruMV, var);
@@ -1997,7 +2030,7 @@ public class TaintPassingMV extends TaintAdapter implements Opcodes {
 				        }
 				        wrapperDesc = Type.getMethodType(newReturnType, newWrapperArgs.toArray(new Type[newWrapperArgs.size()]));
 
-				        String wrapperName = "phosphorWrapInvokeDymnamic" + wrapperMethodsToAdd.size();
+				        String wrapperName = INDY_WRAPPER_PREFIX + wrapperMethodsToAdd.size();
 
 				        MethodNode mn = new MethodNode(Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, wrapperName, wrapperDesc.getDescriptor(), null, null);
 
@@ -2800,7 +2833,7 @@ public class TaintPassingMV extends TaintAdapter implements Opcodes {
 //			if(this.name.equals("<init>"))
 //				baseLvs[0] = UNINITIALIZED_THIS;
 			super.visitFrame(F_NEW, baseLvs.length, baseLvs,1,new Object[]{"java/lang/Throwable"});
-			if(controlTaintArray >= 0) {
+			if(controlTaintArray >= 0 && !Configuration.IMPLICIT_LIGHT_SUMMARY_TRACKING) {
 				passthruMV.visitVarInsn(ALOAD, lvs.getIdxOfMasterControlLV());
 				passthruMV.visitVarInsn(ALOAD, controlTaintArray);
 				callPopAllControlTaint(passthruMV);
@@ -2884,6 +2917,8 @@ public class TaintPassingMV extends TaintAdapter implements Opcodes {
 //			System.out.println(name+" "+PhosphorTextifier.MORE_OPCODES[opcode-200]);
 		if(opcode == TaintUtils.CUSTOM_SIGNAL_1 || opcode == TaintUtils.CUSTOM_SIGNAL_2 || opcode == TaintUtils.CUSTOM_SIGNAL_3 || opcode == TaintUtils.LOOP_HEADER)
 		{
+			if(opcode == TaintUtils.LOOP_HEADER)
+				nextBranchInLoop = true;
 			Configuration.taintTagFactory.signalOp(opcode, null);
 			super.visitInsn(opcode);
 			return;
@@ -3046,9 +3081,11 @@ public class TaintPassingMV extends TaintAdapter implements Opcodes {
 					passthruMV.visitVarInsn(ALOAD, lvs.getIdxOfMasterControlLV());
 					passthruMV.visitMethodInsn(INVOKESTATIC, Type.getInternalName(Taint.class), "combineTagsOnObject", "(Ljava/lang/Object;" + Type.getDescriptor(ControlTaintTagStack.class) + ")V", false);
 
-					passthruMV.visitVarInsn(ALOAD, lvs.getIdxOfMasterControlLV());
-					passthruMV.visitVarInsn(ALOAD, controlTaintArray);
-					callPopAllControlTaint(passthruMV);
+					if (!Configuration.IMPLICIT_LIGHT_SUMMARY_TRACKING) {
+						passthruMV.visitVarInsn(ALOAD, lvs.getIdxOfMasterControlLV());
+						passthruMV.visitVarInsn(ALOAD, controlTaintArray);
+						callPopAllControlTaint(passthruMV);
+					}
 				}
 				break;
 //			case FASTORE:
@@ -4887,6 +4924,7 @@ public class TaintPassingMV extends TaintAdapter implements Opcodes {
 //		System.out.println("PRE" + name + Printer.OPCODES[opcode] + " " + analyzer.stack);
 
 		if (isIgnoreAllInstrumenting) {
+			clearLoopBranch();
 			super.visitJumpInsn(opcode, label);
 			return;
 		}
@@ -4946,6 +4984,7 @@ public class TaintPassingMV extends TaintAdapter implements Opcodes {
 					Configuration.taintTagFactory.jumpOp(opcode, branchStarting, label, mv, lvs, this);
 			}
 		}
+		clearLoopBranch();
 	}
 
 	@Override
@@ -4965,6 +5004,7 @@ public class TaintPassingMV extends TaintAdapter implements Opcodes {
 			callPushControlTaint(branchStarting);
 		}
 		Configuration.taintTagFactory.tableSwitch(min, max, dflt, labels, mv, lvs, this);
+		clearLoopBranch();
 	}
 
 	@Override
@@ -4982,6 +5022,7 @@ public class TaintPassingMV extends TaintAdapter implements Opcodes {
 			callPushControlTaint(branchStarting);
 		}
 		Configuration.taintTagFactory.lookupSwitch(dflt, keys, labels, mv, lvs, this);
+		clearLoopBranch();
 	}
 
 	int argOffset;
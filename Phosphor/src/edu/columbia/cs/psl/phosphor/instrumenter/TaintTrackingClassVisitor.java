@@ -19,6 +19,8 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map.Entry;
@@ -98,12 +100,15 @@ public class TaintTrackingClassVisitor extends ClassVisitor {
 
 	private String superName;
 	private boolean isLambda;
+	private boolean canAddStaticHelpers;
+	private HashSet<String> splitHelperNames = new HashSet<>();
 	@Override
 	public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
 		addTaintField = true;
 		addTaintMethod = true;
 		this.generateExtraLVDebug = name.equals("java/lang/invoke/MethodType");
 		this.fixLdcClass = (version & 0xFFFF) < Opcodes.V1_5;
+		this.canAddStaticHelpers = (access & Opcodes.ACC_INTERFACE) == 0 || (version & 0xFFFF) >= Opcodes.V1_8;
 		if(Instrumenter.IS_KAFFE_INST && name.endsWith("java/lang/VMSystem"))
 			access = access | Opcodes.ACC_PUBLIC;
 		else if(Instrumenter.IS_HARMONY_INST && name.endsWith("java/lang/VMMemoryManager"))
@@ -256,6 +261,8 @@ public class TaintTrackingClassVisitor extends ClassVisitor {
 	private HashMap<String, Method> superMethodsToOverride = new HashMap<String, Method>();
 	private HashSet<MethodNode> wrapperMethodsToAdd = new HashSet<>();
 	HashMap<MethodNode, MethodNode> forMore = new HashMap<MethodNode, MethodNode>();
+	/* Methods that FastPathDispatchMV dispatches to an uninstrumented copy of, with the name of the copy */
+	private LinkedHashMap<MethodNode, String> fastPathCopies = new LinkedHashMap<MethodNode, String>();
 	@Override
 	public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
 		if (name.equals("hashCode") && desc.equals("()I"))
@@ -351,7 +358,7 @@ public class TaintTrackingClassVisitor extends ClassVisitor {
 		} else if ((className.equals("java/lang/Integer") || className.equals("java/lang/Long")) && name.equals("getChars")) {
 			access = access | Opcodes.ACC_PUBLIC;
 		}
-		String originalName = name;
+		final String originalName = name;
 		if (FIELDS_ONLY) { // || isAnnotation
 			return super.visitMethod(access, name, desc, signature, exceptions);
 		}
@@ -433,7 +440,7 @@ public class TaintTrackingClassVisitor extends ClassVisitor {
 		if (!requiresNoChange && !name.equals("<clinit>") && !(name.equals("<init>") && !isRewrittenDesc))
 			methodsToAddWrappersFor.add(wrapper);
 
-		String newDesc = Type.getMethodDescriptor(newReturnType, newArgs);
+		final String newDesc = Type.getMethodDescriptor(newReturnType, newArgs);
 		//		System.out.println("olddesc " + desc + " newdesc " + newDesc);
 		if ((access & Opcodes.ACC_NATIVE) == 0 && !methodIsTooBigAlready(name, desc)) {
 			//not a native method
@@ -449,72 +456,17 @@ public class TaintTrackingClassVisitor extends ClassVisitor {
 				name = name + TaintUtils.METHOD_SUFFIX;
 //			if(className.equals("sun/misc/URLClassPath$JarLoader"))
 //				System.out.println("\t\t:"+name+newDesc);
-			MethodVisitor mv = super.visitMethod(access, name, newDesc, signature, exceptions);
-			mv = new TaintTagFieldCastMV(mv, name);
-
-			MethodVisitor rootmV = mv;
-//			mv = new SourceSinkTaintingMV(mv, access, className, name, newDesc, desc);
-			//			mv = new CheckMethodAdapter(mv);
-//			mv = new SpecialOpcodeRemovingMV(mv,ignoreFrames, className);
-
-//			mv = reflectionMasker;
-			//			PropertyDebug debug = new PropertyDebug(Configuration.ASM_VERSION, mv, access, name, newDesc,className);
-			MethodVisitor optimizer;
-			optimizer = mv;
-
-//			if (DO_OPT)
-//				optimizer = new PopOptimizingMV(mv, access, className, name, newDesc, signature, exceptions);
-			SpecialOpcodeRemovingMV somv = new SpecialOpcodeRemovingMV(optimizer,ignoreFrames, access, className, newDesc, fixLdcClass);
-			mv = somv;
-//			optimizer = new PopOptimizingMV(mv, access,className, name, newDesc, signature, exceptions);
-
-			NeverNullArgAnalyzerAdapter analyzer = new NeverNullArgAnalyzerAdapter(className, access, name, newDesc, mv);
-			mv = new StringTaintVerifyingMV(analyzer,(implementsSerializable || className.startsWith("java/nio/") || className.startsWith("java/io/BUfferedInputStream") || className.startsWith("sun/nio")),analyzer); //TODO - how do we handle directbytebuffers?
-
-			ReflectionHidingMV reflectionMasker = new ReflectionHidingMV(mv, className, name, analyzer);
-			PrimitiveBoxingFixer boxFixer = new PrimitiveBoxingFixer(access, className, name, desc, signature, exceptions, reflectionMasker, analyzer);
-			LocalVariableManager lvs;
-			TaintPassingMV tmv;
-			MethodVisitor nextMV;
-			InstOrUninstChoosingMV instOrUninstChoosingMV;
-			{
-//				ImplicitTaintRemoverMV implicitCleanup = new ImplicitTaintRemoverMV(access, className, name, desc, signature, exceptions, boxFixer, analyzer);
-				tmv = new TaintPassingMV(boxFixer, access, className, name, newDesc, signature, exceptions, desc, analyzer,rootmV,wrapperMethodsToAdd);
-				tmv.setFields(fields);
-				TaintAdapter custom = null;
-
-				UninstrumentedCompatMV umv = new UninstrumentedCompatMV(access, className, name, newDesc, signature, exceptions, boxFixer, analyzer, ignoreFrames);
-				instOrUninstChoosingMV = new InstOrUninstChoosingMV(tmv,umv);
-				lvs = new LocalVariableManager(access, newDesc, instOrUninstChoosingMV, analyzer,mv, generateExtraLVDebug);
-				umv.setLocalVariableSorter(lvs);
-
-
-				nextMV = lvs;
-
-			}
-
-			somv.setLVS(lvs);
-			MethodArgReindexer mar = new MethodArgReindexer(nextMV, access, name, newDesc, desc, wrapper, isLambda);
-			TaintLoadCoercer tlc = new TaintLoadCoercer(className, access, name, desc, signature, exceptions, mar, ignoreFrames, instOrUninstChoosingMV, aggressivelyReduceMethodSize);
-
-			PrimitiveArrayAnalyzer primitiveArrayFixer = new PrimitiveArrayAnalyzer(className, access, name, desc, signature, exceptions, tlc);
-			NeverNullArgAnalyzerAdapter preAnalyzer = new NeverNullArgAnalyzerAdapter(className, access, name, desc, primitiveArrayFixer);
-
-			MethodVisitor mvNext = preAnalyzer;
-			mvNext = preAnalyzer;
-			primitiveArrayFixer.setAnalyzer(preAnalyzer);
-			boxFixer.setLocalVariableSorter(lvs);
-			tmv.setArrayAnalyzer(primitiveArrayFixer);
-			tmv.setLVOffset(mar.getNewArgOffset());
-			tmv.setLocalVariableSorter(lvs);
-			lvs.setPrimitiveArrayAnalyzer(primitiveArrayFixer); // i'm lazy. this guy will tell the LVS what return types to prealloc
-			reflectionMasker.setLvs(lvs);
-			
-			//			if(IS_RUNTIME_INST)
-			//			{
-			//				return mvNext;
-			//			}
-			final MethodVisitor prev = mvNext;
+			final MethodVisitor out = super.visitMethod(access, name, newDesc, signature, exceptions);
+			final MethodSplittingMV splitter = Configuration.SPLIT_LARGE_METHODS && canAddStaticHelpers ? new MethodSplittingMV(access, className, name, newDesc, signature, exceptions, out, cv, isInterface, splitHelperNames) : null;
+			// If it still doesn't fit once split, just this method is instrumented again with reduceSize
+			if (splitter != null && !aggressivelyReduceMethodSize)
+				splitter.deferIfTooLarge();
+			final MethodNode lvStore = wrapper;
+			final int nWrappers = wrapperMethodsToAdd.size();
+			// The dispatch to the uninstrumented copy is only added once the method's code is known to be eligible
+			final FastPathDispatchMV fastPath = Configuration.FAST_PATH_DISPATCH && !isInterface && !isLambda && !requiresNoChange && !Configuration.WITH_SELECTIVE_INST ?
+					new FastPathDispatchMV(splitter == null ? out : splitter, access, className, wrapper.name, desc, newDesc, ignoreFrames) : null;
+			final MethodVisitor prev = instrumentingChain(fastPath != null ? fastPath : splitter == null ? out : splitter, access, name, desc, newDesc, signature, exceptions, wrapper, aggressivelyReduceMethodSize);
 			MethodNode rawMethod = new MethodNode(Configuration.ASM_VERSION, access, name, desc, signature, exceptions) {
 				@Override
 				protected LabelNode getLabelNode(Label l) {
@@ -528,7 +480,15 @@ public class TaintTrackingClassVisitor extends ClassVisitor {
 				@Override
 				public void visitEnd() {
 					super.visitEnd();
+					InstrumentationProfiler.MethodProfile profile = InstrumentationProfiler.methodStarted(originalName, this, name, newDesc);
+					if (fastPath != null && FastPathDispatchMV.isEligible(this)) {
+						fastPath.enable();
+						fastPathCopies.put(this, fastPath.uninstName);
+					}
 					this.accept(prev);
+					if (splitter != null && splitter.isTooLarge())
+						reinstrumentReduced(this, out, newDesc, lvStore, nWrappers);
+					InstrumentationProfiler.methodFinished(profile);
 				}
 
 				@Override
@@ -580,6 +540,97 @@ public class TaintTrackingClassVisitor extends ClassVisitor {
 		}
 	}
 
+	/*
+	 * Builds the chain of visitors that instruments a method and writes the result to mv, returning the start of it.
+	 * If reduceSize is set, the instrumented code is made smaller at the cost of precision.
+	 */
+	private MethodVisitor instrumentingChain(MethodVisitor mv, int access, String name, String desc, String newDesc, String signature, String[] exceptions, MethodNode wrapper, boolean reduceSize) {
+		mv = new TaintTagFieldCastMV(mv, name);
+
+		MethodVisitor rootmV = mv;
+//			mv = new SourceSinkTaintingMV(mv, access, className, name, newDesc, desc);
+		//			mv = new CheckMethodAdapter(mv);
+//			mv = new SpecialOpcodeRemovingMV(mv,ignoreFrames, className);
+
+//			mv = reflectionMasker;
+		//			PropertyDebug debug = new PropertyDebug(Configuration.ASM_VERSION, mv, access, name, newDesc,className);
+		MethodVisitor optimizer;
+		optimizer = mv;
+
+//			if (DO_OPT)
+//				optimizer = new PopOptimizingMV(mv, access, className, name, newDesc, signature, exceptions);
+		SpecialOpcodeRemovingMV somv = new SpecialOpcodeRemovingMV(optimizer,ignoreFrames, access, className, newDesc, fixLdcClass);
+		mv = somv;
+//			optimizer = new PopOptimizingMV(mv, access,className, name, newDesc, signature, exceptions);
+
+		NeverNullArgAnalyzerAdapter analyzer = new NeverNullArgAnalyzerAdapter(className, access, name, newDesc, mv);
+		mv = new StringTaintVerifyingMV(analyzer,(implementsSerializable || className.startsWith("java/nio/") || className.startsWith("java/io/BUfferedInputStream") || className.startsWith("sun/nio")),analyzer); //TODO - how do we handle directbytebuffers?
+
+		ReflectionHidingMV reflectionMasker = new ReflectionHidingMV(mv, className, name, analyzer);
+		PrimitiveBoxingFixer boxFixer = new PrimitiveBoxingFixer(access, className, name, desc, signature, exceptions, reflectionMasker, analyzer);
+		LocalVariableManager lvs;
+		TaintPassingMV tmv;
+		MethodVisitor nextMV;
+		InstOrUninstChoosingMV instOrUninstChoosingMV;
+		{
+//				ImplicitTaintRemoverMV implicitCleanup = new ImplicitTaintRemoverMV(access, className, name, desc, signature, exceptions, boxFixer, analyzer);
+			tmv = new TaintPassingMV(boxFixer, access, className, name, newDesc, signature, exceptions, desc, analyzer,rootmV,wrapperMethodsToAdd);
+			tmv.setFields(fields);
+			TaintAdapter custom = null;
+
+			UninstrumentedCompatMV umv = new UninstrumentedCompatMV(access, className, name, newDesc, signature, exceptions, boxFixer, analyzer, ignoreFrames);
+			instOrUninstChoosingMV = new InstOrUninstChoosingMV(tmv,umv);
+			lvs = new LocalVariableManager(access, newDesc, instOrUninstChoosingMV, analyzer,mv, generateExtraLVDebug);
+			umv.setLocalVariableSorter(lvs);
+
+
+			nextMV = lvs;
+
+		}
+
+		somv.setLVS(lvs);
+		MethodArgReindexer mar = new MethodArgReindexer(nextMV, access, name, newDesc, desc, wrapper, isLambda);
+		TaintLoadCoercer tlc = new TaintLoadCoercer(className, access, name, desc, signature, exceptions, mar, ignoreFrames, instOrUninstChoosingMV, reduceSize);
+
+		PrimitiveArrayAnalyzer primitiveArrayFixer = new PrimitiveArrayAnalyzer(className, access, name, desc, signature, exceptions, tlc);
+		NeverNullArgAnalyzerAdapter preAnalyzer = new NeverNullArgAnalyzerAdapter(className, access, name, desc, primitiveArrayFixer);
+
+		MethodVisitor mvNext = preAnalyzer;
+		mvNext = preAnalyzer;
+		primitiveArrayFixer.setAnalyzer(preAnalyzer);
+		boxFixer.setLocalVariableSorter(lvs);
+		tmv.setArrayAnalyzer(primitiveArrayFixer);
+		tmv.setLVOffset(mar.getNewArgOffset());
+		tmv.setLocalVariableSorter(lvs);
+		lvs.setPrimitiveArrayAnalyzer(primitiveArrayFixer); // i'm lazy. this guy will tell the LVS what return types to prealloc
+		reflectionMasker.setLvs(lvs);
+		
+		//			if(IS_RUNTIME_INST)
+		//			{
+		//				return mvNext;
+		//			}
+		return mvNext;
+	}
+
+	/*
+	 * Instruments source, the original code of a method, again with reduceSize set and writes it to out, since its
+	 * first instrumentation was too large to fit even after splitting. Only invokedynamic wrappers added from index
+	 * nWrappers on can have come from the first attempt.
+	 */
+	private void reinstrumentReduced(MethodNode source, MethodVisitor out, String newDesc, MethodNode wrapper, int nWrappers) {
+		long start = System.nanoTime();
+		InstrumentationProfiler.methodReinstrumenting();
+		for (Iterator<MethodNode> itr = wrapperMethodsToAdd.iterator(); itr.hasNext(); ) {
+			String wrapperName = itr.next().name;
+			if (Integer.parseInt(wrapperName.substring(TaintPassingMV.INDY_WRAPPER_PREFIX.length())) >= nWrappers)
+				itr.remove();
+		}
+		String[] exceptions = source.exceptions.toArray(new String[source.exceptions.size()]);
+		MethodVisitor mv = new MethodSplittingMV(source.access, className, source.name, newDesc, source.signature, exceptions, out, cv, isInterface, splitHelperNames);
+		source.accept(instrumentingChain(mv, source.access, source.name, source.desc, newDesc, source.signature, exceptions, wrapper, true));
+		MethodSizeStats.methodReduced(className, source.name, System.nanoTime() - start);
+	}
+
 	private boolean methodIsTooBigAlready(String name, String desc) {
 		// TODO we need to implement something to detect massive constant array loads and optimize it. for now... just this :-/
 		return false;
@@ -1482,6 +1533,14 @@ public class TaintTrackingClassVisitor extends ClassVisitor {
 				mv.visitEnd();
 			}
 		}
+		if (!Configuration.GENERATE_UNINST_STUBS) {
+			// They read nothing but their arguments and call nothing, so their code is the same uninstrumented
+			for (Entry<MethodNode, String> copy : fastPathCopies.entrySet()) {
+				MethodNode mn = copy.getKey();
+				MethodVisitor mv = super.visitMethod(mn.access, copy.getValue(), mn.desc, mn.signature, (String[]) mn.exceptions.toArray(new String[0]));
+				mn.accept(mv);
+			}
+		}
 		if(Configuration.GENERATE_UNINST_STUBS)
 		{
 			//make a copy of each raw method, using the proper suffix. right now this only goes 
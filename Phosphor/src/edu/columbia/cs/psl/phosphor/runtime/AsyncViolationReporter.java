@@ -0,0 +1,224 @@
+package edu.columbia.cs.psl.phosphor.runtime;
+
+import edu.columbia.cs.psl.phosphor.Logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/* Hands reports to another ViolationReporter on a background thread, so that the threads that call sanitizers and
+ * sinks do not format or write them. Reports wait in a bounded ring buffer that any thread adds to without locking:
+ * the sequence number of each slot tells producers whether it is free and the consumer whether it is filled. What
+ * happens when the buffer is full is up to the Overflow policy. Objects are only converted to strings on the
+ * background thread, so they are reported as they are by then. */
+public class AsyncViolationReporter extends ViolationReporter {
+
+	public enum Overflow {
+		/* Discards the report, counting how many were discarded */
+		DROP,
+		/* Waits for the background thread to make room */
+		BLOCK,
+		/* Reports on the calling thread */
+		CALLER_RUNS
+	}
+
+	private static final int SANITIZED = 0;
+	private static final int SUNK = 1;
+	private static final long IDLE_PARK_NANOS = 1000000;
+	private static final long FULL_PARK_NANOS = 10000;
+	private static final long DRAIN_WAIT_NANOS = 100000000;
+
+	private final ViolationReporter delegate;
+	private final Overflow overflow;
+	private final int mask;
+	private final AtomicLongArray sequences;
+	private final Report[] reports;
+	private final AtomicLong tail = new AtomicLong();
+	// Only used by the background thread
+	private long head;
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile Thread consumer;
+	private volatile boolean closed;
+	// Whether the background thread is parked, or about to be, waiting for reports
+	private volatile boolean idle;
+
+	/* A slot of the ring buffer, which is reused for every report that goes through it */
+	private static final class Report {
+		int kind;
+		Taint<?> tag;
+		Object obj;
+		String actualSink;
+		TaintLevel taintLevel;
+	}
+
+	public AsyncViolationReporter(ViolationReporter delegate, int capacity, Overflow overflow) {
+		int size = 2;
+		while (size < capacity)
+			size <<= 1;
+		this.delegate = delegate;
+		this.overflow = overflow;
+		this.mask = size - 1;
+		this.sequences = new AtomicLongArray(size);
+		this.reports = new Report[size];
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+			reports[i] = new Report();
+		}
+	}
+
+	@Override
+	public void sanitized(Object obj) {
+		if (!offer(SANITIZED, null, obj, null, null))
+			delegate.sanitized(obj);
+	}
+
+	@Override
+	public void sunk(Taint<?> tag, Object obj, String actualSink, TaintLevel taintLevel) {
+		if (!offer(SUNK, tag, obj, actualSink, taintLevel))
+			delegate.sunk(tag, obj, actualSink, taintLevel);
+	}
+
+	/* Returns the number of reports discarded so far because the buffer was full, or because they were not added to
+	 * it in time when it was closed */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/* Adds a report to the buffer, returning false if it must be made on the calling thread instead */
+	private boolean offer(int kind, Taint<?> tag, Object obj, String actualSink, TaintLevel taintLevel) {
+		if (consumer == null)
+			start();
+		// A report made while the background thread makes another (say, by a delegate that reaches a sink) can't
+		// wait for that thread to make room
+		if (Thread.currentThread() == consumer)
+			return false;
+		long pos;
+		while (true) {
+			if (closed)
+				return false;
+			pos = tail.get();
+			long seq = sequences.get((int) pos & mask);
+			if (seq == pos) {
+				if (tail.compareAndSet(pos, pos + 1))
+					break;
+			} else if (seq < pos) {
+				// The slot still holds the report from one lap ago, so the buffer is full
+				if (overflow == Overflow.DROP) {
+					dropped.incrementAndGet();
+					return true;
+				} else if (overflow == Overflow.CALLER_RUNS) {
+					return false;
+				}
+				LockSupport.parkNanos(FULL_PARK_NANOS);
+			}
+		}
+		int i = (int) pos & mask;
+		Report r = reports[i];
+		r.kind = kind;
+		r.tag = tag;
+		r.obj = obj;
+		r.actualSink = actualSink;
+		r.taintLevel = taintLevel;
+		sequences.lazySet(i, pos + 1);
+		if (idle)
+			LockSupport.unpark(consumer);
+		return true;
+	}
+
+	/* Makes the next report in the buffer, returning false if there is none yet */
+	private boolean poll() {
+		int i = (int) head & mask;
+		if (sequences.get(i) != head + 1)
+			return false;
+		Report r = reports[i];
+		int kind = r.kind;
+		Taint<?> tag = r.tag;
+		Object obj = r.obj;
+		String actualSink = r.actualSink;
+		TaintLevel taintLevel = r.taintLevel;
+		// Lets the objects be collected while the slot waits for its next report
+		r.tag = null;
+		r.obj = null;
+		sequences.lazySet(i, head + mask + 1);
+		head++;
+		try {
+			if (kind == SANITIZED)
+				delegate.sanitized(obj);
+			else
+				delegate.sunk(tag, obj, actualSink, taintLevel);
+		} catch (RuntimeException ex) {
+			ex.printStackTrace();
+		}
+		return true;
+	}
+
+	/* Makes the reports left in the buffer once it is closed. A producer may have claimed a slot before the buffer was
+	 * closed without having filled it yet, so slots that are not filled are waited for, for a short while. After that,
+	 * the reports of the slots that are still not filled are counted as dropped, and those of the slots after them are
+	 * still made. */
+	private void drain() {
+		long deadline = System.nanoTime() + DRAIN_WAIT_NANOS;
+		while (head != tail.get()) {
+			if (poll())
+				continue;
+			if (System.nanoTime() - deadline < 0) {
+				LockSupport.parkNanos(FULL_PARK_NANOS);
+			} else {
+				dropped.incrementAndGet();
+				head++;
+			}
+		}
+	}
+
+	private synchronized void start() {
+		if (consumer != null)
+			return;
+		Thread t = new Thread("Phosphor violation reporter") {
+			@Override
+			public void run() {
+				while (!closed) {
+					if (!poll()) {
+						idle = true;
+						// A report that was added before idle was set would not have woken this thread
+						if (!poll())
+							LockSupport.parkNanos(IDLE_PARK_NANOS);
+						idle = false;
+					}
+				}
+				drain();
+				long n = dropped.get();
+				if (n > 0)
+					Logger.warning("Dropped " + n + " reports of sanitized and sunk values, since the report buffer was full or was closed");
+			}
+		};
+		t.setDaemon(true);
+		try {
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					close();
+				}
+			});
+		} catch (IllegalStateException ex) {
+			// Already shutting down: report on the calling threads
+			closed = true;
+		}
+		consumer = t;
+		if (!closed)
+			t.start();
+	}
+
+	/* Makes the reports left in the buffer and stops the background thread. Later reports are made on the calling
+	 * thread. */
+	public void close() {
+		closed = true;
+		Thread t = consumer;
+		if (t != null && t.isAlive()) {
+			try {
+				t.join(1000);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -7,6 +7,8 @@ public class AutoTaintLabel implements Serializable {
 	private static final long serialVersionUID = -5401643312355612496L;
 	private String source;
 	private StackTraceElement[] trace;
+	// Computed when first needed, since labels are compared while building the sets of labels of tags
+	private transient int hash;
 
 	@Override
 	public boolean equals(Object o) {
@@ -15,6 +17,7 @@ public class AutoTaintLabel implements Serializable {
 
 		AutoTaintLabel that = (AutoTaintLabel) o;
 
+		if (hashCode() != that.hashCode()) return false;
 		if (source != null ? !source.equals(that.source) : that.source != null) return false;
 		// Probably incorrect - comparing Object[] arrays with Arrays.equals
 		return Arrays.equals(trace, that.trace);
@@ -22,8 +25,12 @@ public class AutoTaintLabel implements Serializable {
 
 	@Override
 	public int hashCode() {
-		int result = source != null ? source.hashCode() : 0;
-		result = 31 * result + Arrays.hashCode(trace);
+		int result = hash;
+		if (result == 0) {
+			result = source != null ? source.hashCode() : 0;
+			result = 31 * result + Arrays.hashCode(trace);
+			hash = result;
+		}
 		return result;
 	}
 
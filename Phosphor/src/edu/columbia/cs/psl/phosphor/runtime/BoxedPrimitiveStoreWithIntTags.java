@@ -1,44 +1,57 @@
 package edu.columbia.cs.psl.phosphor.runtime;
 
-import java.util.WeakHashMap;
-
 import edu.columbia.cs.psl.phosphor.struct.TaintedBooleanWithIntTag;
 import edu.columbia.cs.psl.phosphor.struct.TaintedByteWithIntTag;
 import edu.columbia.cs.psl.phosphor.struct.TaintedCharWithIntTag;
 import edu.columbia.cs.psl.phosphor.struct.TaintedShortWithIntTag;
+import edu.columbia.cs.psl.phosphor.struct.WeakIdentityTagMap;
 
 public class BoxedPrimitiveStoreWithIntTags {
-	public static WeakHashMap<Object, Integer> tags = new WeakHashMap<Object, Integer>();
+	// Tags of the boxes created by valueOf, which are marked by their valueOf field. Looked up by identity, since
+	// equal boxes with different tags must not share them.
+	public static final WeakIdentityTagMap<Integer> tags = new WeakIdentityTagMap<Integer>();
 
 	public static TaintedBooleanWithIntTag booleanValue(Boolean z) {
 		TaintedBooleanWithIntTag ret = new TaintedBooleanWithIntTag();
 		ret.val = z;
-		if (z.valueOf && tags.containsKey(z))
-			ret.taint = tags.get(z);
+		if (z.valueOf) {
+			Integer tag = tags.get(z);
+			if (tag != null)
+				ret.taint = tag;
+		}
 		return ret;
 	}
 
 	public static TaintedByteWithIntTag byteValue(Byte z) {
 		TaintedByteWithIntTag ret = new TaintedByteWithIntTag();
 		ret.val = z;
-		if (z.valueOf && tags.containsKey(z))
-			ret.taint = tags.get(z);
+		if (z.valueOf) {
+			Integer tag = tags.get(z);
+			if (tag != null)
+				ret.taint = tag;
+		}
 		return ret;
 	}
 
 	public static TaintedShortWithIntTag shortValue(Short z) {
 		TaintedShortWithIntTag ret = new TaintedShortWithIntTag();
 		ret.val = z;
-		if (z.valueOf && tags.containsKey(z))
-			ret.taint = tags.get(z);
+		if (z.valueOf) {
+			Integer tag = tags.get(z);
+			if (tag != null)
+				ret.taint = tag;
+		}
 		return ret;
 	}
 
 	public static TaintedCharWithIntTag charValue(Character z) {
 		TaintedCharWithIntTag ret = new TaintedCharWithIntTag();
 		ret.val = z.charValue();
-		if (z.valueOf && tags.containsKey(z))
-			ret.taint = tags.get(z);
+		if (z.valueOf) {
+			Integer tag = tags.get(z);
+			if (tag != null)
+				ret.taint = tag;
+		}
 		return ret;
 	}
 
@@ -1,19 +1,20 @@
 package edu.columbia.cs.psl.phosphor.runtime;
 
-import java.util.WeakHashMap;
-
 import edu.columbia.cs.psl.phosphor.struct.TaintedBooleanWithObjTag;
 import edu.columbia.cs.psl.phosphor.struct.TaintedByteWithObjTag;
 import edu.columbia.cs.psl.phosphor.struct.TaintedCharWithObjTag;
 import edu.columbia.cs.psl.phosphor.struct.TaintedShortWithObjTag;
+import edu.columbia.cs.psl.phosphor.struct.WeakIdentityTagMap;
 
 public class BoxedPrimitiveStoreWithObjTags {
-	public static WeakHashMap<Object, Taint> tags = new WeakHashMap<Object, Taint>();
+	// Tags of the boxes created by valueOf, which are marked by their valueOf field. Looked up by identity, since
+	// equal boxes with different tags must not share them.
+	public static final WeakIdentityTagMap<Taint> tags = new WeakIdentityTagMap<Taint>();
 
 	public static TaintedBooleanWithObjTag booleanValue(Boolean z) {
 		TaintedBooleanWithObjTag ret = new TaintedBooleanWithObjTag();
 		ret.val = z;
-		if (z.valueOf && tags.containsKey(z))
+		if (z.valueOf)
 			ret.taint = tags.get(z);
 		return ret;
 	}
@@ -21,7 +22,7 @@ public class BoxedPrimitiveStoreWithObjTags {
 	public static TaintedByteWithObjTag byteValue(Byte z) {
 		TaintedByteWithObjTag ret = new TaintedByteWithObjTag();
 		ret.val = z;
-		if (z.valueOf && tags.containsKey(z))
+		if (z.valueOf)
 			ret.taint = tags.get(z);
 		return ret;
 	}
@@ -29,7 +30,7 @@ public class BoxedPrimitiveStoreWithObjTags {
 	public static TaintedShortWithObjTag shortValue(Short z) {
 		TaintedShortWithObjTag ret = new TaintedShortWithObjTag();
 		ret.val = z;
-		if (tags.containsKey(z))
+		if (z.valueOf)
 			ret.taint = tags.get(z);
 		return ret;
 	}
@@ -37,7 +38,7 @@ public class BoxedPrimitiveStoreWithObjTags {
 	public static TaintedCharWithObjTag charValue(Character z) {
 		TaintedCharWithObjTag ret = new TaintedCharWithObjTag();
 		ret.val = z.charValue();
-		if (tags.containsKey(z))
+		if (z.valueOf)
 			ret.taint = tags.get(z);
 		return ret;
 	}
@@ -1,9 +1,9 @@
 package edu.columbia.cs.psl.phosphor.runtime;
 
-import edu.columbia.cs.psl.phosphor.struct.GarbageCollectedArrayList;
+import edu.columbia.cs.psl.phosphor.struct.ConcurrentGarbageCollectedArrayList;
 
 public class HardcodedBypassStore {
-	static GarbageCollectedArrayList<Object> vals = new GarbageCollectedArrayList<>();
+	static ConcurrentGarbageCollectedArrayList<Object> vals = new ConcurrentGarbageCollectedArrayList<>();
 
 	static {
 		vals.add(null,null);
@@ -12,16 +12,12 @@ public class HardcodedBypassStore {
 	public static final Object get(int i) {
 		if (i == -1 || i == 0)
 			return null;
-		synchronized (vals) {
-			return vals.get(i);
-		}
+		return vals.get(i);
 	}
 
 	public static final int add(Object taintObjectToPointTo, Object referent) {
 		if (taintObjectToPointTo == null)
 			return -1;
-		synchronized (vals) {
-			return vals.add(referent, taintObjectToPointTo);
-		}
+		return vals.add(referent, taintObjectToPointTo);
 	}
 }
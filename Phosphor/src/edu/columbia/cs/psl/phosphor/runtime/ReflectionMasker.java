@@ -15,13 +15,69 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ReflectionMasker {
 
 	static {
 		System.setSecurityManager(null);
 	}
-	//	static WeakHashMap<Method, Method> methodCache = new WeakHashMap<Method, Method>();
+
+	/* The methods of a class that were looked up or called reflectively, by the method that was looked up or called.
+	 * isObjTags is the same for the whole run, so it is not part of the keys. */
+	private static final class ClassMethods {
+		/* Kept with the class so that it can still be unloaded. The ClassValue is made the first time it is used rather
+		 * than when ReflectionMasker is loaded, which can be while the JVM boots, before a ClassValue can be made. */
+		private static final ClassValue<ClassMethods> cache = new PhosphorClassValue<ClassMethods>() {
+			@Override
+			protected ClassMethods computeValue(Class<?> type) {
+				return new ClassMethods(type);
+			}
+		};
+
+		final boolean isIgnored;
+		final ConcurrentHashMap<Method, Method> taintMethods = new ConcurrentHashMap<>();
+		final ConcurrentHashMap<Method, Method> taintMethodsControlTrack = new ConcurrentHashMap<>();
+		final ConcurrentHashMap<Method, Method> unTaintMethods = new ConcurrentHashMap<>();
+		final ConcurrentHashMap<Method, MethodCall> calls = new ConcurrentHashMap<>();
+		final ConcurrentHashMap<Method, MethodCall> callsControlTrack = new ConcurrentHashMap<>();
+
+		ClassMethods(Class<?> c) {
+			isIgnored = Instrumenter.isIgnoredClass(c.getName().replace('.', '/'));
+		}
+
+		static ClassMethods of(Class<?> c) {
+			return cache.get(c);
+		}
+	}
+
+	/* The method that a reflective call actually invokes, made accessible, with its parameter types and the type of
+	 * the container to preallocate for its primitive return value, if any */
+	private static final class MethodCall {
+		final Method method;
+		final Class<?>[] params;
+		final Class<?> returnContainer;
+
+		MethodCall(Method method) {
+			method.setAccessible(true);
+			this.method = method;
+			this.params = method.getParameterTypes();
+			Class<?> returnType = method.getReturnType();
+			if(TaintedPrimitiveWithIntTag.class.isAssignableFrom(returnType) || TaintedPrimitiveWithObjTag.class.isAssignableFrom(returnType))
+				returnContainer = returnType;
+			else
+				returnContainer = null;
+		}
+	}
+
+	/* Returns the cached result of looking up m, or puts the specified result of looking it up */
+	private static Method cachedLookup(ConcurrentHashMap<Method, Method> cache, Method m, Method found) {
+		if(found == null)
+			return null;
+		Method prev = cache.putIfAbsent(m, found);
+		return prev == null ? found : prev;
+	}
 
 	public static final boolean IS_KAFFE = false;
 
@@ -54,30 +110,20 @@ public class ReflectionMasker {
 		//Need to put the actual obj if its a lazyarray and the offset points to the tag field
 		if(val instanceof LazyArrayIntTags)
 		{
-			for (Field f : obj.getClass().getDeclaredFields())
-				if (!Modifier.isStatic(f.getModifiers()) && u.objectFieldOffset(f) == fieldOffset)
+			FieldOffsets fields = FieldOffsets.of(obj.getClass());
+			int i = fields.indexOf(fieldOffset);
+			if(i >= 0)
+			{
+				if(fields.isArray[i])
 				{
-					if(f.getType().isArray())
-					{
-						u.putObject(obj, fieldOffset, ((LazyArrayIntTags) val).getVal());
-						putTaintWrapper(u, f, obj, val);
-					}
-					else
-						u.putObject(obj, fieldOffset, val);
-					return;
-				}
-			for (Field f : obj.getClass().getFields())
-				if (!Modifier.isStatic(f.getModifiers()) && u.objectFieldOffset(f) == fieldOffset)
-				{
-					if(f.getType().isArray())
-					{
-						u.putObject(obj, fieldOffset, ((LazyArrayIntTags) val).getVal());
-						putTaintWrapper(u, f, obj, val);
-					}
-					else
-						u.putObject(obj, fieldOffset, val);
-					return;
+					u.putObject(obj, fieldOffset, ((LazyArrayIntTags) val).getVal());
+					if(fields.taintOffsets[i] != -1)
+						u.putObject(obj, fields.taintOffsets[i], val);
 				}
+				else
+					u.putObject(obj, fieldOffset, val);
+				return;
+			}
 			u.putObject(obj, fieldOffset, ((LazyArrayIntTags) val).getVal());
 		}
 		u.putObject(obj, fieldOffset, val);
@@ -88,46 +134,85 @@ public class ReflectionMasker {
 		//Need to put the actual obj if its a lazyarray and the offset points to the tag field
 		if(val instanceof LazyArrayObjTags)
 		{
-			for (Field f : obj.getClass().getDeclaredFields())
-				if (!Modifier.isStatic(f.getModifiers()) && u.objectFieldOffset(f) == fieldOffset)
-				{
-					if(f.getType().isArray())
-					{
-						u.putObject(obj, fieldOffset, ((LazyArrayObjTags) val).getVal());
-						putTaintWrapper(u, f, obj, val);
-					}
-					else
-						u.putObject(obj, fieldOffset, val);
-					return;
-				}
-			for (Field f : obj.getClass().getFields())
-				if (!Modifier.isStatic(f.getModifiers()) && u.objectFieldOffset(f) == fieldOffset)
+			FieldOffsets fields = FieldOffsets.of(obj.getClass());
+			int i = fields.indexOf(fieldOffset);
+			if(i >= 0)
+			{
+				if(fields.isArray[i])
 				{
-					if(f.getType().isArray())
-					{
-						u.putObject(obj, fieldOffset, ((LazyArrayObjTags) val).getVal());
-						putTaintWrapper(u, f, obj, val);
-					}
-					else
-						u.putObject(obj, fieldOffset, val);
-					return;
+					u.putObject(obj, fieldOffset, ((LazyArrayObjTags) val).getVal());
+					if(fields.taintOffsets[i] != -1)
+						u.putObject(obj, fields.taintOffsets[i], val);
 				}
+				else
+					u.putObject(obj, fieldOffset, val);
+				return;
+			}
 			u.putObject(obj, fieldOffset, ((LazyArrayObjTags) val).getVal());
 		}
 		u.putObject(obj, fieldOffset, val);
 	}
-	
-	private static void putTaintWrapper(Unsafe u, Field origField, Object obj, Object val)
-	{
-		if(origField.getType().isArray() && origField.getType().getComponentType().isPrimitive())
-			try {
-				Field taintField = origField.getDeclaringClass().getDeclaredField(origField.getName()+TaintUtils.TAINT_FIELD);
-				u.putObject(obj, u.objectFieldOffset(taintField), val);
-			} catch (NoSuchFieldException | SecurityException | IllegalArgumentException e) {
-//				e.printStackTrace();
+
+	/* The instance fields of each class, including inherited ones, by Unsafe offset */
+	private static final class FieldOffsets {
+		private static final ClassValue<FieldOffsets> cache = new PhosphorClassValue<FieldOffsets>() {
+			@Override
+			protected FieldOffsets computeValue(Class<?> type) {
+				return new FieldOffsets(type);
 			}
-		
+		};
+
+		/* Sorted */
+		final long[] offsets;
+		/* Whether the field at each offset is an array */
+		final boolean[] isArray;
+		/* Offset of the taint field of each primitive array field, or -1 */
+		final long[] taintOffsets;
+
+		FieldOffsets(Class<?> c) {
+			Unsafe u = Unsafe.getUnsafe();
+			ArrayList<Field> fields = new ArrayList<Field>();
+			for(Class<?> k = c; k != null; k = k.getSuperclass())
+				for(Field f : k.getDeclaredFields())
+					if(!Modifier.isStatic(f.getModifiers()))
+						fields.add(f);
+			int n = fields.size();
+			offsets = new long[n];
+			isArray = new boolean[n];
+			taintOffsets = new long[n];
+			for(int i = 0; i < n; i++) {
+				Field f = fields.get(i);
+				long offset = u.objectFieldOffset(f);
+				long taintOffset = -1;
+				if(f.getType().isArray() && f.getType().getComponentType().isPrimitive())
+					try {
+						taintOffset = u.objectFieldOffset(f.getDeclaringClass().getDeclaredField(f.getName() + TaintUtils.TAINT_FIELD));
+					} catch (NoSuchFieldException | SecurityException e) {
+						//
+					}
+				// Insertion sort, classes do not have that many fields
+				int j = i;
+				for(; j > 0 && offsets[j - 1] > offset; j--) {
+					offsets[j] = offsets[j - 1];
+					isArray[j] = isArray[j - 1];
+					taintOffsets[j] = taintOffsets[j - 1];
+				}
+				offsets[j] = offset;
+				isArray[j] = f.getType().isArray();
+				taintOffsets[j] = taintOffset;
+			}
+		}
+
+		static FieldOffsets of(Class<?> c) {
+			return cache.get(c);
+		}
+
+		/* Returns the index of the field at the specified offset, or a negative number if there is none */
+		int indexOf(long offset) {
+			return Arrays.binarySearch(offsets, offset);
+		}
 	}
+
 	public static void putObjectVolatile$$PHOSPHORTAGGED(Unsafe u, Object obj, Taint<?> tag, long fieldOffset, Object val, ControlTaintTagStack ctrl){
 		putObjectVolatile$$PHOSPHORTAGGED(u, obj, tag, fieldOffset, val);
 	}
@@ -136,30 +221,20 @@ public class ReflectionMasker {
 		//Need to put the actual obj if its a lazyarray and the offset points to the tag field
 		if(val instanceof LazyArrayObjTags)
 		{
-			for (Field f : obj.getClass().getDeclaredFields())
-				if (!Modifier.isStatic(f.getModifiers()) && u.objectFieldOffset(f) == fieldOffset)
+			FieldOffsets fields = FieldOffsets.of(obj.getClass());
+			int i = fields.indexOf(fieldOffset);
+			if(i >= 0)
+			{
+				if(fields.isArray[i])
 				{
-					if(f.getType().isArray())
-					{
-						u.putObjectVolatile(obj, fieldOffset, ((LazyArrayObjTags) val).getVal());
-						putTaintWrapper(u, f, obj, val);
-					}
-					else
-						u.putObjectVolatile(obj, fieldOffset, val);
-					return;
-				}
-			for (Field f : obj.getClass().getFields())
-				if (!Modifier.isStatic(f.getModifiers()) && u.objectFieldOffset(f) == fieldOffset)
-				{
-					if(f.getType().isArray())
-					{
-						u.putObjectVolatile(obj, fieldOffset, ((LazyArrayObjTags) val).getVal());
-						putTaintWrapper(u, f, obj, val);
-					}
-					else
-						u.putObjectVolatile(obj, fieldOffset, val);
-					return;
+					u.putObjectVolatile(obj, fieldOffset, ((LazyArrayObjTags) val).getVal());
+					if(fields.taintOffsets[i] != -1)
+						u.putObject(obj, fields.taintOffsets[i], val);
 				}
+				else
+					u.putObjectVolatile(obj, fieldOffset, val);
+				return;
+			}
 			u.putObjectVolatile(obj, fieldOffset, ((LazyArrayObjTags) val).getVal());
 		}
 		u.putObjectVolatile(obj, fieldOffset, val);
@@ -243,7 +318,7 @@ public class ReflectionMasker {
 				return m;
 			}
 			x = 0;
-			if (Configuration.GENERATE_UNINST_STUBS && chars.length > SUFFIX_LEN + 2)
+			if ((Configuration.GENERATE_UNINST_STUBS || Configuration.FAST_PATH_DISPATCH) && chars.length > SUFFIX_LEN + 2)
 				for (int i = chars.length - SUFFIX_LEN - 2; i < chars.length; i++) {
 					if (chars[i] != SUFFIX2CHARS[x]) {
 						isEq = false;
@@ -256,12 +331,20 @@ public class ReflectionMasker {
 				return m;
 			}
 		}
-		if(Instrumenter.isIgnoredClass(m.getDeclaringClass().getName().replace('.', '/')))
+		ClassMethods methods = ClassMethods.of(m.getDeclaringClass());
+		if(methods.isIgnored)
 		{
 			return m;
 		}
-		//		if (methodCache.containsKey(m))
-		//			return methodCache.get(m);
+		Method ret = methods.taintMethodsControlTrack.get(m);
+		if(ret == null)
+			ret = cachedLookup(methods.taintMethodsControlTrack, m, findTaintMethodControlTrack(m));
+		return ret != null && ret.equals(m) ? m : ret;
+	}
+
+	/* Looks up the method that takes the tags and control stack for m, returning m if there is none */
+	@SuppressWarnings("rawtypes")
+	private static Method findTaintMethodControlTrack(Method m) {
 		ArrayList<Class> newArgs = new ArrayList<Class>();
 		boolean madeChange = false;
 		for (final Class c : m.getParameterTypes()) {
@@ -342,16 +425,8 @@ public class ReflectionMasker {
 			} catch (SecurityException e) {
 				e.printStackTrace();
 			}
-			//			lastTaintMethodOrig = m;
-			//			lastTaintMethod = ret;
-			//			methodCache.put(m, ret);
-			//			ret.INVIVO_PC_TAINTmarked = true;
 			return ret;
 		} else {
-			//			lastTaintMethodOrig = m;
-			//			lastTaintMethod = m;
-			//			methodCache.put(m, m);
-			//			m.INVIVO_PC_TAINTmarked = true;
 			return m;
 		}
 	}
@@ -385,7 +460,7 @@ public class ReflectionMasker {
 				return m;
 			}
 			x = 0;
-			if (Configuration.GENERATE_UNINST_STUBS && chars.length > SUFFIX_LEN + 2)
+			if ((Configuration.GENERATE_UNINST_STUBS || Configuration.FAST_PATH_DISPATCH) && chars.length > SUFFIX_LEN + 2)
 				for (int i = chars.length - SUFFIX_LEN - 2; i < chars.length; i++) {
 					if (chars[i] != SUFFIX2CHARS[x]) {
 						isEq = false;
@@ -398,8 +473,24 @@ public class ReflectionMasker {
 				return m;
 			}
 		}
-		//		if (methodCache.containsKey(m))
-		//			return methodCache.get(m);
+		ClassMethods methods = ClassMethods.of(m.getDeclaringClass());
+		Method ret = methods.taintMethods.get(m);
+		if(ret == null)
+			ret = cachedLookup(methods.taintMethods, m, findTaintMethod(m, isObjTags));
+		if (ret.equals(m)) {
+			m.PHOSPHOR_TAGmarked = false;
+			m.PHOSPHOR_TAGmethod = m;
+			return m;
+		}
+		ret.PHOSPHOR_TAGmarked = true;
+		m.PHOSPHOR_TAGmethod = ret;
+		ret.PHOSPHOR_TAGmethod = m;
+		return ret;
+	}
+
+	/* Looks up the method that takes the tags for m, returning m if there is none */
+	@SuppressWarnings("rawtypes")
+	private static Method findTaintMethod(Method m, boolean isObjTags) {
 		ArrayList<Class> newArgs = new ArrayList<Class>();
 		boolean madeChange = false;
 		for (final Class c : m.getParameterTypes()) {
@@ -504,21 +595,8 @@ public class ReflectionMasker {
 			} catch (SecurityException e) {
 				e.printStackTrace();
 			}
-			//			lastTaintMethodOrig = m;
-			//			lastTaintMethod = ret;
-			//			methodCache.put(m, ret);
-			//			ret.INVIVO_PC_TAINTmarked = true;
-			ret.PHOSPHOR_TAGmarked = true;
-			m.PHOSPHOR_TAGmethod = ret;
-			ret.PHOSPHOR_TAGmethod = m;
 			return ret;
 		} else {
-			//			lastTaintMethodOrig = m;
-			//			lastTaintMethod = m;
-			//			methodCache.put(m, m);
-			//			m.INVIVO_PC_TAINTmarked = true;
-			m.PHOSPHOR_TAGmarked = false;
-			m.PHOSPHOR_TAGmethod = m;
 			return m;
 		}
 	}
@@ -545,6 +623,16 @@ public class ReflectionMasker {
 				return m;
 			}
 		}
+		ClassMethods methods = ClassMethods.of(m.getDeclaringClass());
+		Method ret = methods.unTaintMethods.get(m);
+		if(ret == null)
+			ret = cachedLookup(methods.unTaintMethods, m, findUnTaintMethod(m, isObjTags));
+		return ret != null && ret.equals(m) ? m : ret;
+	}
+
+	/* Looks up the uninstrumented copy of m that takes unboxed arrays, returning m if it takes the same arguments */
+	@SuppressWarnings("rawtypes")
+	private static Method findUnTaintMethod(Method m, boolean isObjTags) {
 		ArrayList<Class> newArgs = new ArrayList<Class>();
 		boolean madeChange = false;
 		for (final Class c : m.getParameterTypes()) {
@@ -591,16 +679,8 @@ public class ReflectionMasker {
 			} catch (SecurityException e) {
 				e.printStackTrace();
 			}
-			//			lastTaintMethodOrig = m;
-			//			lastTaintMethod = ret;
-			//			methodCache.put(m, ret);
-			//			ret.INVIVO_PC_TAINTmarked = true;
 			return ret;
 		} else {
-			//			lastTaintMethodOrig = m;
-			//			lastTaintMethod = m;
-			//			methodCache.put(m, m);
-			//			m.INVIVO_PC_TAINTmarked = true;
 			return m;
 		}
 	}
@@ -617,7 +697,7 @@ public class ReflectionMasker {
 		//			System.out.println("Returning " + lastMethod);
 		//			return lastMethod;
 		//		}
-		if(Configuration.GENERATE_UNINST_STUBS && m.getName().endsWith("$$PHOSPHORUNTAGGED"))
+		if((Configuration.GENERATE_UNINST_STUBS || Configuration.FAST_PATH_DISPATCH) && m.getName().endsWith("$$PHOSPHORUNTAGGED"))
 		{
 			String origName = m.getName().replace("$$PHOSPHORUNTAGGED", "");
 			try {
@@ -757,7 +837,7 @@ public class ReflectionMasker {
 	}
 
 	public static Method getMethod$$PHOSPHORTAGGED(Class czz, String name, Class[] params, ControlTaintTagStack ctrl) throws NoSuchMethodException {
-		if (czz == Object.class || czz.isAnnotation() || Instrumenter.isIgnoredClass(czz.getName().replace('.', '/')))
+		if (czz == Object.class || czz.isAnnotation() || ClassMethods.of(czz).isIgnored)
 			return czz.getMethod(name, params);
 		//also, return original method if we are calling wait()
 		if (name.equals("wait")) {
@@ -766,7 +846,7 @@ public class ReflectionMasker {
 		}
 		try {
 			Method m = czz.getMethod(name, params);
-			if (Instrumenter.isIgnoredClass(m.getDeclaringClass().getName().replace('.', '/'))) {
+			if (ClassMethods.of(m.getDeclaringClass()).isIgnored) {
 				//maybe "this" class is not ignored, but super, which implements method is ignored
 				return czz.getMethod(name, params);
 			}
@@ -780,7 +860,7 @@ public class ReflectionMasker {
 		return null;
 	}
 	public static Method getMethod(Class czz, String name, Class[] params, boolean isObjTags) throws NoSuchMethodException {
-		if (czz == Object.class || czz.isAnnotation() || Instrumenter.isIgnoredClass(czz.getName().replace('.', '/')))
+		if (czz == Object.class || czz.isAnnotation() || ClassMethods.of(czz).isIgnored)
 		    return czz.getMethod(name, params);
 		//also, return original method if we are calling wait()
 		if (name.equals("wait")) {
@@ -789,7 +869,7 @@ public class ReflectionMasker {
 		}
 		try {
 			Method m = czz.getMethod(name, params);
-			if (Instrumenter.isIgnoredClass(m.getDeclaringClass().getName().replace('.', '/'))) {
+			if (ClassMethods.of(m.getDeclaringClass()).isIgnored) {
 				//maybe "this" class is not ignored, but super, which implements method is ignored
 				return czz.getMethod(name, params);
 			}
@@ -1016,31 +1096,37 @@ public class ReflectionMasker {
 
 	public static MethodInvoke fixAllArgs(Method m, Object owner, Object[] in, boolean isObjTags) {
 		MethodInvoke ret = new MethodInvoke();
-		if(m == null || Instrumenter.isIgnoredClass(m.getDeclaringClass().getName().replace('.', '/'))) {
+		ClassMethods methods = m == null ? null : ClassMethods.of(m.getDeclaringClass());
+		if(methods == null || methods.isIgnored) {
 		    ret.a = in;
             ret.o = owner;
             ret.m = m;
             return ret;
 		}
-		m.setAccessible(true);
-		if ((!m.PHOSPHOR_TAGmarked) && !"java.lang.Object".equals(m.getDeclaringClass().getName())) {
-			m = getTaintMethod(m, isObjTags);
+		MethodCall call = methods.calls.get(m);
+		if(call == null) {
+			m.setAccessible(true);
+			Method target = m;
+			if ((!m.PHOSPHOR_TAGmarked) && !"java.lang.Object".equals(m.getDeclaringClass().getName())) {
+				target = getTaintMethod(m, isObjTags);
+			}
+			call = new MethodCall(target);
+			methods.calls.putIfAbsent(m, call);
 		}
-		m.setAccessible(true);
+		Class<?>[] params = call.params;
 		ret.o = owner;
-		ret.m = m;
-		if(in != null && m.getParameterTypes().length != in.length) {
-			ret.a = new Object[ret.m.getParameterTypes().length];
+		ret.m = call.method;
+		if(in != null && params.length != in.length) {
+			ret.a = new Object[params.length];
 		} else {
 			ret.a = in;
 		}
-		int j = fillInParams(ret.a, in, ret.m.getParameterTypes());
-		if ((in == null && m.getParameterTypes().length == 1) || (in != null && j != in.length - 1)) {
+		int j = fillInParams(ret.a, in, params);
+		if ((in == null && params.length == 1) || (in != null && j != in.length - 1)) {
 			ret.a = (in != null) ? ret.a :  new Object[1];
-			final Class returnType = m.getReturnType();
-			if (TaintedPrimitiveWithIntTag.class.isAssignableFrom(returnType) || TaintedPrimitiveWithObjTag.class.isAssignableFrom(returnType))  {
+			if (call.returnContainer != null)  {
 				try {
-					ret.a[j] = returnType.newInstance();
+					ret.a[j] = call.returnContainer.newInstance();
 				} catch (InstantiationException | IllegalAccessException e) {
 					e.printStackTrace();
 				}
@@ -1051,43 +1137,49 @@ public class ReflectionMasker {
 
 	public static MethodInvoke fixAllArgs(Method m, Object owner, Object[] in, ControlTaintTagStack ctrl) {
 		MethodInvoke ret = new MethodInvoke();
-		m.setAccessible(true);
-		if(Instrumenter.isIgnoredClass(m.getDeclaringClass().getName().replace('.', '/'))) {
+		ClassMethods methods = ClassMethods.of(m.getDeclaringClass());
+		if(methods.isIgnored) {
+			m.setAccessible(true);
 			ret.a = in;
 			ret.o = owner;
 			ret.m = m;
 			return ret;
 		}
-		if (!m.PHOSPHOR_TAGmarked) {
-			m = getTaintMethodControlTrack(m);
+		MethodCall call = methods.callsControlTrack.get(m);
+		if(call == null) {
+			m.setAccessible(true);
+			Method target = m;
+			if (!m.PHOSPHOR_TAGmarked) {
+				target = getTaintMethodControlTrack(m);
+			}
+			call = new MethodCall(target);
+			methods.callsControlTrack.putIfAbsent(m, call);
 		}
-		m.setAccessible(true);
+		Class<?>[] params = call.params;
 		ret.o = owner;
-		ret.m = m;
-		if(in != null && m.getParameterTypes().length != in.length) {
-			ret.a = new Object[ret.m.getParameterTypes().length];
+		ret.m = call.method;
+		if(in != null && params.length != in.length) {
+			ret.a = new Object[params.length];
 		} else {
 			ret.a = in;
 		}
-		int j = fillInParams(ret.a, in, ret.m.getParameterTypes());
+		int j = fillInParams(ret.a, in, params);
 		if(ret.a != null && ret.a.length > j) {
 			ret.a[j++] = ctrl;
 		}
-		if (in == null && m.getParameterTypes().length == 1) {
+		if (in == null && params.length == 1) {
 			ret.a = new Object[1];
 			ret.a[0] = ctrl;
-		} else if ((in == null && m.getParameterTypes().length == 2)
+		} else if ((in == null && params.length == 2)
 				|| (in != null && j != in.length - 1)) {
 			if (in == null) {
 				ret.a = new Object[2];
 				ret.a[0] = ctrl;
 				j++;
 			}
-			final Class returnType = m.getReturnType();
-			if (TaintedPrimitiveWithIntTag.class.isAssignableFrom(returnType)
-					|| TaintedPrimitiveWithObjTag.class.isAssignableFrom(returnType)) {
+			if (call.returnContainer != null) {
 				try {
-					ret.a[j] = returnType.newInstance();
+					ret.a[j] = call.returnContainer.newInstance();
 					if(ret.a[j].getClass().equals(Boolean.class))
 					{
 						System.exit(-1);
@@ -1360,7 +1452,7 @@ public class ReflectionMasker {
 					x++;
 				}
 				x = 0;
-				if (!matched && Configuration.GENERATE_UNINST_STUBS && chars.length > SUFFIX_LEN + 2)
+				if (!matched && (Configuration.GENERATE_UNINST_STUBS || Configuration.FAST_PATH_DISPATCH) && chars.length > SUFFIX_LEN + 2)
 					for (int i = chars.length - SUFFIX_LEN -2; i < chars.length; i++) {
 						if (chars[i] != SUFFIX2CHARS[x]) {
 							ret.add(f);
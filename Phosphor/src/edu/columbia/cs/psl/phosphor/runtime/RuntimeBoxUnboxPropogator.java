@@ -23,38 +23,161 @@ import edu.columbia.cs.psl.phosphor.struct.TaintedWithIntTag;
 import edu.columbia.cs.psl.phosphor.struct.TaintedWithObjTag;
 
 public class RuntimeBoxUnboxPropogator {
+	/* Boxes of the values from -128 to 127 (which the JDK caches untainted) that were made tainted, one per value,
+	 * along with their tag. Tainted boxes of a small value mostly repeat the previous tag, so they share its box. */
+	private static final int BOX_CACHE_LOW = -128;
+	private static final int BOX_CACHE_SIZE = 256;
+	@SuppressWarnings("unchecked")
+	private static final CachedBox<Long>[] longBoxes = new CachedBox[BOX_CACHE_SIZE];
+	@SuppressWarnings("unchecked")
+	private static final CachedBox<Integer>[] integerBoxes = new CachedBox[BOX_CACHE_SIZE];
+
+	/* A box and its tag. The fields are final so that other threads that find it in a cache see the whole box. */
+	private static final class CachedBox<B> {
+		final Taint tag;
+		final int intTag;
+		final B box;
+
+		CachedBox(Taint tag, int intTag, B box) {
+			this.tag = tag;
+			this.intTag = intTag;
+			this.box = box;
+		}
+	}
+
 	public static Long valueOf(int t, long l)
 	{
 		if(t == 0)
 			return Long.valueOf$$PHOSPHORTAGGED(0,l);
-		else
+		if(l >= BOX_CACHE_LOW && l < BOX_CACHE_LOW + BOX_CACHE_SIZE)
 		{
-			Long ret = new Long(t,l,null);
-			((TaintedWithIntTag)((Object)ret)).setPHOSPHOR_TAG(t);
+			int i = (int) l - BOX_CACHE_LOW;
+			CachedBox<Long> c = longBoxes[i];
+			if(c != null && c.intTag == t)
+				return c.box;
+			Long ret = newLong(t, l);
+			longBoxes[i] = new CachedBox<Long>(null, t, ret);
 			return ret;
 		}
+		return newLong(t, l);
 	}
 	public static Long valueOf(Taint t, long l)
 	{
 		if(t == null)
 			return Long.valueOf$$PHOSPHORTAGGED(null,l);
-		else
+		if(l >= BOX_CACHE_LOW && l < BOX_CACHE_LOW + BOX_CACHE_SIZE)
 		{
-			Long ret = new Long(t,l,null);
-			((TaintedWithObjTag)((Object)ret)).setPHOSPHOR_TAG(t);
+			int i = (int) l - BOX_CACHE_LOW;
+			CachedBox<Long> c = longBoxes[i];
+			if(c != null && c.tag == t)
+				return c.box;
+			Long ret = newLong(t, l);
+			longBoxes[i] = new CachedBox<Long>(t, 0, ret);
 			return ret;
 		}
+		return newLong(t, l);
 	}
 	public static Long valueOf(Taint t, long l, ControlTaintTagStack ctrl)
 	{
 		if(t == null)
 			return Long.valueOf$$PHOSPHORTAGGED(null,l, ctrl);
-		else
+		// Only boxes made without control tags are shared. They are still made with ctrl, since a JDK instrumented for
+		// control tracking has no other constructor
+		if((ctrl == null || ctrl.hasNoInfluence()) && l >= BOX_CACHE_LOW && l < BOX_CACHE_LOW + BOX_CACHE_SIZE)
+		{
+			int i = (int) l - BOX_CACHE_LOW;
+			CachedBox<Long> c = longBoxes[i];
+			if(c != null && c.tag == t)
+				return c.box;
+			Long ret = newLong(t, l, ctrl);
+			longBoxes[i] = new CachedBox<Long>(t, 0, ret);
+			return ret;
+		}
+		return newLong(t, l, ctrl);
+	}
+	private static Long newLong(int t, long l)
+	{
+		Long ret = new Long(t,l,null);
+		((TaintedWithIntTag)((Object)ret)).setPHOSPHOR_TAG(t);
+		return ret;
+	}
+	private static Long newLong(Taint t, long l)
+	{
+		Long ret = new Long(t,l,null);
+		((TaintedWithObjTag)((Object)ret)).setPHOSPHOR_TAG(t);
+		return ret;
+	}
+	private static Long newLong(Taint t, long l, ControlTaintTagStack ctrl)
+	{
+		Long ret = new Long(t,l,ctrl, null);
+		((TaintedWithObjTag)((Object)ret)).setPHOSPHOR_TAG(t);
+		return ret;
+	}
+	public static Integer valueOf(int t, int v)
+	{
+		if(t == 0)
+			return Integer.valueOf$$PHOSPHORTAGGED(0,v);
+		int i = v - BOX_CACHE_LOW;
+		if(i >= 0 && i < BOX_CACHE_SIZE)
 		{
-			Long ret = new Long(t,l,ctrl, null);
-			((TaintedWithObjTag)((Object)ret)).setPHOSPHOR_TAG(t);
+			CachedBox<Integer> c = integerBoxes[i];
+			if(c != null && c.intTag == t)
+				return c.box;
+			Integer ret = newInteger(t, v);
+			integerBoxes[i] = new CachedBox<Integer>(null, t, ret);
 			return ret;
 		}
+		return newInteger(t, v);
+	}
+	public static Integer valueOf(Taint t, int v)
+	{
+		if(t == null)
+			return Integer.valueOf$$PHOSPHORTAGGED(null,v);
+		int i = v - BOX_CACHE_LOW;
+		if(i >= 0 && i < BOX_CACHE_SIZE)
+		{
+			CachedBox<Integer> c = integerBoxes[i];
+			if(c != null && c.tag == t)
+				return c.box;
+			Integer ret = newInteger(t, v);
+			integerBoxes[i] = new CachedBox<Integer>(t, 0, ret);
+			return ret;
+		}
+		return newInteger(t, v);
+	}
+	public static Integer valueOf(Taint t, int v, ControlTaintTagStack ctrl)
+	{
+		if(t == null)
+			return Integer.valueOf$$PHOSPHORTAGGED(null,v, ctrl);
+		int i = v - BOX_CACHE_LOW;
+		if((ctrl == null || ctrl.hasNoInfluence()) && i >= 0 && i < BOX_CACHE_SIZE)
+		{
+			CachedBox<Integer> c = integerBoxes[i];
+			if(c != null && c.tag == t)
+				return c.box;
+			Integer ret = newInteger(t, v, ctrl);
+			integerBoxes[i] = new CachedBox<Integer>(t, 0, ret);
+			return ret;
+		}
+		return newInteger(t, v, ctrl);
+	}
+	private static Integer newInteger(int t, int v)
+	{
+		Integer ret = new Integer(t,v,null);
+		((TaintedWithIntTag)((Object)ret)).setPHOSPHOR_TAG(t);
+		return ret;
+	}
+	private static Integer newInteger(Taint t, int v)
+	{
+		Integer ret = new Integer(t,v,null);
+		((TaintedWithObjTag)((Object)ret)).setPHOSPHOR_TAG(t);
+		return ret;
+	}
+	private static Integer newInteger(Taint t, int v, ControlTaintTagStack ctrl)
+	{
+		Integer ret = new Integer(t,v,ctrl, null);
+		((TaintedWithObjTag)((Object)ret)).setPHOSPHOR_TAG(t);
+		return ret;
 	}
 	public static void getChars$$PHOSPHORTAGGED(int lt, long l, int idt, int idx, LazyCharArrayIntTags ta, char[] ar)
 	{
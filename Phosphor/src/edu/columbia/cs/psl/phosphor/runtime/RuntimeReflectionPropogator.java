@@ -2,7 +2,7 @@ package edu.columbia.cs.psl.phosphor.runtime;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.objectweb.asm.Type;
 
@@ -27,6 +27,7 @@ import edu.columbia.cs.psl.phosphor.struct.LazyLongArrayIntTags;
 import edu.columbia.cs.psl.phosphor.struct.LazyLongArrayObjTags;
 import edu.columbia.cs.psl.phosphor.struct.LazyShortArrayIntTags;
 import edu.columbia.cs.psl.phosphor.struct.LazyShortArrayObjTags;
+import edu.columbia.cs.psl.phosphor.struct.PhosphorClassValue;
 import edu.columbia.cs.psl.phosphor.struct.TaintedBooleanWithIntTag;
 import edu.columbia.cs.psl.phosphor.struct.TaintedBooleanWithObjTag;
 import edu.columbia.cs.psl.phosphor.struct.TaintedByteWithIntTag;
@@ -124,7 +125,7 @@ public class RuntimeReflectionPropogator {
 		return get(f, obj, true);
 	}
 	public static Object get(Field f, Object obj, boolean isObjTags) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
+		FieldShadow shadow = FieldShadow.of(f);
 		Object ret;
 		if(f.getType().isPrimitive())
 		{
@@ -172,33 +173,14 @@ public class RuntimeReflectionPropogator {
 				throw new IllegalArgumentException();
 		}
 		else 
-			ret = f.get(obj);
+			ret = shadow.field.get(obj);
 		if (f.getType().isArray() && f.getType().getComponentType().isPrimitive()) {
-			Object taint = null;
-
-			try {
-				try {
-					if (ret instanceof LazyArrayIntTags && ((LazyArrayIntTags)ret).taints != null) {
-						return ret;
-					} else if (ret instanceof LazyArrayObjTags && ((LazyArrayObjTags)ret).taints != null) {
-						return ret;
-					} else {
-						Field taintField;
-						if (fieldToField.containsKey(f))
-							taintField = fieldToField.get(f);
-						else {
-							taintField = f.getDeclaringClass().getDeclaredField(f.getName() + TaintUtils.TAINT_FIELD);
-							taintField.setAccessible(true);
-							fieldToField.put(f, taintField);
-						}
-						taint = taintField.get(obj);
-						return taint;
-					}
-				} catch (NoSuchFieldException t) {
-				
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
+			if (ret instanceof LazyArrayIntTags && ((LazyArrayIntTags)ret).taints != null) {
+				return ret;
+			} else if (ret instanceof LazyArrayObjTags && ((LazyArrayObjTags)ret).taints != null) {
+				return ret;
+			} else if (shadow.hasTaint()) {
+				return shadow.getTaintObject(obj);
 			}
 		}
 		if (ret instanceof TaintedPrimitiveWithIntTag) {
@@ -260,374 +242,233 @@ public class RuntimeReflectionPropogator {
 	}
 	
 	public static TaintedBooleanWithIntTag getBoolean$$PHOSPHORTAGGED(Field f, Object obj,TaintedBooleanWithIntTag ret) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		ret.val = f.getBoolean(obj);
-		try {
-			Field taintField;
-			if (fieldToField.containsKey(f))
-				taintField = fieldToField.get(f);
-			else {
-				taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-				taintField.setAccessible(true);
-				fieldToField.put(f, taintField);
-			}
-			ret.taint = taintField.getInt(obj);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		ret.val = shadow.field.getBoolean(obj);
+		if (shadow.hasTaint())
+			ret.taint = shadow.getIntTaint(obj);
 		return ret;
 	}
 
 	public static TaintedByteWithIntTag getByte$$PHOSPHORTAGGED(Field f, Object obj, TaintedByteWithIntTag ret) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		ret.val = f.getByte(obj);
-		try {
-			Field taintField;
-			if (fieldToField.containsKey(f))
-				taintField = fieldToField.get(f);
-			else {
-				taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-				taintField.setAccessible(true);
-				fieldToField.put(f, taintField);
-			}
-			ret.taint = taintField.getInt(obj);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		ret.val = shadow.field.getByte(obj);
+		if (shadow.hasTaint())
+			ret.taint = shadow.getIntTaint(obj);
 		return ret;
 	}
 
 	public static TaintedCharWithIntTag getChar$$PHOSPHORTAGGED(Field f, Object obj, TaintedCharWithIntTag ret) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		ret.val = f.getChar(obj);
-		try {
-			Field taintField;
-			if (fieldToField.containsKey(f))
-				taintField = fieldToField.get(f);
-			else {
-				taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-				taintField.setAccessible(true);
-				fieldToField.put(f, taintField);
-			}
-			ret.taint = taintField.getInt(obj);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		ret.val = shadow.field.getChar(obj);
+		if (shadow.hasTaint())
+			ret.taint = shadow.getIntTaint(obj);
 		return ret;
 	}
 
 	public static TaintedDoubleWithIntTag getDouble$$PHOSPHORTAGGED(Field f, Object obj, TaintedDoubleWithIntTag ret) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		ret.val = f.getDouble(obj);
-		try {
-			Field taintField;
-			if (fieldToField.containsKey(f))
-				taintField = fieldToField.get(f);
-			else {
-				taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-				taintField.setAccessible(true);
-				fieldToField.put(f, taintField);
-			}
-			ret.taint = taintField.getInt(obj);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		ret.val = shadow.field.getDouble(obj);
+		if (shadow.hasTaint())
+			ret.taint = shadow.getIntTaint(obj);
 		return ret;
 	}
 
 	public static TaintedFloatWithIntTag getFloat$$PHOSPHORTAGGED(Field f, Object obj, TaintedFloatWithIntTag ret) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		ret.val = f.getFloat(obj);
-		try {
-			Field taintField;
-			if (fieldToField.containsKey(f))
-				taintField = fieldToField.get(f);
-			else {
-				taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-				taintField.setAccessible(true);
-				fieldToField.put(f, taintField);
-			}
-			ret.taint = taintField.getInt(obj);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		ret.val = shadow.field.getFloat(obj);
+		if (shadow.hasTaint())
+			ret.taint = shadow.getIntTaint(obj);
 		return ret;
 	}
 
-	static WeakHashMap<Field, Field> fieldToField = new WeakHashMap<Field, Field>();
+	/*
+	 * A field along with its taint tag field: an accessible copy of the field, and where the tag is so that it can be
+	 * read directly. The value is still read through the field, which checks obj before the tag is read.
+	 */
+	static final class FieldShadow {
+		/* The fields of each class that were accessed reflectively, by name. Made the first time a field is accessed,
+		 * rather than when RuntimeReflectionPropogator is loaded, which can be before a ClassValue can be made. */
+		private static final ClassValue<ConcurrentHashMap<String, FieldShadow>> shadows = new PhosphorClassValue<ConcurrentHashMap<String, FieldShadow>>() {
+			@Override
+			protected ConcurrentHashMap<String, FieldShadow> computeValue(Class<?> type) {
+				return new ConcurrentHashMap<>();
+			}
+		};
+
+		final Field field;
+		/* Accessible, or null if the field has no taint tag field */
+		final Field taintField;
+		private final Object taintBase;
+		private final long taintOffset;
+		private final boolean isIntTaint;
+		private final boolean isVolatile;
+
+		private FieldShadow(Field f) {
+			field = f;
+			field.setAccessible(true);
+			Field tf = null;
+			try {
+				tf = f.getDeclaringClass().getDeclaredField(f.getName() + TaintUtils.TAINT_FIELD);
+				tf.setAccessible(true);
+			} catch (NoSuchFieldException | SecurityException e) {
+				tf = null;
+			}
+			taintField = tf;
+			if (tf == null) {
+				taintBase = null;
+				taintOffset = -1;
+				isIntTaint = false;
+				isVolatile = false;
+			} else {
+				Unsafe u = getUnsafe();
+				boolean isStatic = Modifier.isStatic(tf.getModifiers());
+				taintBase = isStatic ? u.staticFieldBase(tf) : null;
+				taintOffset = isStatic ? u.staticFieldOffset(tf) : u.objectFieldOffset(tf);
+				isIntTaint = tf.getType() == Integer.TYPE;
+				isVolatile = Modifier.isVolatile(tf.getModifiers());
+			}
+		}
+
+		static FieldShadow of(Field f) {
+			ConcurrentHashMap<String, FieldShadow> byName = shadows.get(f.getDeclaringClass());
+			FieldShadow ret = byName.get(f.getName());
+			if (ret == null) {
+				// A copy, so that making it accessible does not change the caller's field
+				ret = new FieldShadow(copyOf(f));
+				FieldShadow prev = byName.putIfAbsent(f.getName(), ret);
+				if (prev != null)
+					ret = prev;
+			}
+			return ret;
+		}
 
-	public static TaintedIntWithIntTag getInt$$PHOSPHORTAGGED(Field f, Object obj, TaintedIntWithIntTag ret) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		ret.val = f.getInt(obj);
-		try {
-			//			Class c = f.getDeclaringClass();
-			Field taintField;
-			if (fieldToField.containsKey(f))
-				taintField = fieldToField.get(f);
-			else {
-				taintField = f.getDeclaringClass().getDeclaredField(f.getName() + TaintUtils.TAINT_FIELD);
-				taintField.setAccessible(true);
-				fieldToField.put(f, taintField);
+		private static Field copyOf(Field f) {
+			try {
+				return f.getDeclaringClass().getDeclaredField(f.getName());
+			} catch (NoSuchFieldException | SecurityException e) {
+				return f;
 			}
-			ret.taint = taintField.getInt(obj);
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		} catch (NoSuchFieldException e) {
-			// TODO Auto-generated catch block
-			System.err.println("Couldn't find taint field: " + f.getDeclaringClass() + ", taint field for: " + f.getName()+TaintUtils.TAINT_FIELD);
-			e.printStackTrace();
 		}
+
+		boolean hasTaint() {
+			return taintField != null;
+		}
+
+		/* Only once the value of the field was read from obj, which checks that obj has the field */
+		private Object base(Object obj) {
+			return taintBase != null ? taintBase : obj;
+		}
+
+		int getIntTaint(Object obj) {
+			if (!isIntTaint)
+				return 0;
+			Unsafe u = getUnsafe();
+			return isVolatile ? u.getIntVolatile(base(obj), taintOffset) : u.getInt(base(obj), taintOffset);
+		}
+
+		Object getTaintObject(Object obj) {
+			if (isIntTaint)
+				return getIntTaint(obj);
+			Unsafe u = getUnsafe();
+			return isVolatile ? u.getObjectVolatile(base(obj), taintOffset) : u.getObject(base(obj), taintOffset);
+		}
+
+		/* The tag of the field, which is in the HardcodedBypassStore if the taint field is an int */
+		Taint getTaint(Object obj) {
+			if (isIntTaint)
+				return (Taint) HardcodedBypassStore.get(getIntTaint(obj));
+			Object t = getTaintObject(obj);
+			return t instanceof Taint ? (Taint) t : null;
+		}
+	}
+
+	public static TaintedIntWithIntTag getInt$$PHOSPHORTAGGED(Field f, Object obj, TaintedIntWithIntTag ret) throws IllegalArgumentException, IllegalAccessException {
+		FieldShadow shadow = FieldShadow.of(f);
+		ret.val = shadow.field.getInt(obj);
+		if (shadow.hasTaint())
+			ret.taint = shadow.getIntTaint(obj);
 		return ret;
 	}
 
 	public static TaintedLongWithIntTag getLong$$PHOSPHORTAGGED(Field f, Object obj, TaintedLongWithIntTag ret) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		ret.val = f.getLong(obj);
-		try {
-			Field taintField;
-			if (fieldToField.containsKey(f))
-				taintField = fieldToField.get(f);
-			else {
-				taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-				taintField.setAccessible(true);
-				fieldToField.put(f, taintField);
-			}
-			ret.taint = taintField.getInt(obj);
-		} catch (NoSuchFieldException e) {
-		} catch (SecurityException e) {
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		ret.val = shadow.field.getLong(obj);
+		if (shadow.hasTaint())
+			ret.taint = shadow.getIntTaint(obj);
 		return ret;
 	}
 
 	public static TaintedShortWithIntTag getShort$$PHOSPHORTAGGED(Field f, Object obj, TaintedShortWithIntTag ret) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		ret.val = f.getShort(obj);
-		try {
-			Field taintField;
-			if (fieldToField.containsKey(f))
-				taintField = fieldToField.get(f);
-			else {
-				taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-				taintField.setAccessible(true);
-				fieldToField.put(f, taintField);
-			}
-			ret.taint = taintField.getInt(obj);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		ret.val = shadow.field.getShort(obj);
+		if (shadow.hasTaint())
+			ret.taint = shadow.getIntTaint(obj);
 		return ret;
 	}
 
 	
 	
 	public static TaintedBooleanWithObjTag getBoolean$$PHOSPHORTAGGED(Field f, Object obj,TaintedBooleanWithObjTag ret) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		ret.val = f.getBoolean(obj);
-		try {
-			Field taintField;
-			if (fieldToField.containsKey(f))
-				taintField = fieldToField.get(f);
-			else {
-				taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-				taintField.setAccessible(true);
-				fieldToField.put(f, taintField);
-			}
-			Object t = taintField.get(obj);
-			if (t instanceof Taint)
-				ret.taint = (Taint) t;
-			if (t instanceof Integer)
-				ret.taint = (Taint) HardcodedBypassStore.get(((Integer) t).intValue());
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		ret.val = shadow.field.getBoolean(obj);
+		if (shadow.hasTaint())
+			ret.taint = shadow.getTaint(obj);
 		return ret;
 	}
 
 	public static TaintedByteWithObjTag getByte$$PHOSPHORTAGGED(Field f, Object obj, TaintedByteWithObjTag ret) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		ret.val = f.getByte(obj);
-		try {
-			Field taintField;
-			if (fieldToField.containsKey(f))
-				taintField = fieldToField.get(f);
-			else {
-				taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-				taintField.setAccessible(true);
-				fieldToField.put(f, taintField);
-			}
-			Object t = taintField.get(obj);
-			if (t instanceof Taint)
-				ret.taint = (Taint) t;
-			if (t instanceof Integer)
-				ret.taint = (Taint) HardcodedBypassStore.get(((Integer) t).intValue());
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		ret.val = shadow.field.getByte(obj);
+		if (shadow.hasTaint())
+			ret.taint = shadow.getTaint(obj);
 		return ret;
 	}
 
 	public static TaintedCharWithObjTag getChar$$PHOSPHORTAGGED(Field f, Object obj, TaintedCharWithObjTag ret) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		ret.val = f.getChar(obj);
-		try {
-			Field taintField;
-			if (fieldToField.containsKey(f))
-				taintField = fieldToField.get(f);
-			else {
-				taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-				taintField.setAccessible(true);
-				fieldToField.put(f, taintField);
-			}
-			Object t = taintField.get(obj);
-			if (t instanceof Taint)
-				ret.taint = (Taint) t;
-			if (t instanceof Integer)
-				ret.taint = (Taint) HardcodedBypassStore.get(((Integer) t).intValue());
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		ret.val = shadow.field.getChar(obj);
+		if (shadow.hasTaint())
+			ret.taint = shadow.getTaint(obj);
 		return ret;
 	}
 
 	public static TaintedDoubleWithObjTag getDouble$$PHOSPHORTAGGED(Field f, Object obj, TaintedDoubleWithObjTag ret) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		ret.val = f.getDouble(obj);
-		try {
-			Field taintField;
-			if (fieldToField.containsKey(f))
-				taintField = fieldToField.get(f);
-			else {
-				taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-				taintField.setAccessible(true);
-				fieldToField.put(f, taintField);
-			}
-			Object t = taintField.get(obj);
-			if (t instanceof Taint)
-				ret.taint = (Taint) t;
-			if (t instanceof Integer)
-				ret.taint = (Taint) HardcodedBypassStore.get(((Integer) t).intValue());
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		ret.val = shadow.field.getDouble(obj);
+		if (shadow.hasTaint())
+			ret.taint = shadow.getTaint(obj);
 		return ret;
 	}
 
 	public static TaintedFloatWithObjTag getFloat$$PHOSPHORTAGGED(Field f, Object obj, TaintedFloatWithObjTag ret) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		ret.val = f.getFloat(obj);
-		try {
-			Field taintField;
-			if (fieldToField.containsKey(f))
-				taintField = fieldToField.get(f);
-			else {
-				taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-				taintField.setAccessible(true);
-				fieldToField.put(f, taintField);
-			}
-			Object t = taintField.get(obj);
-			if (t instanceof Taint)
-				ret.taint = (Taint) t;
-			if (t instanceof Integer)
-				ret.taint = (Taint) HardcodedBypassStore.get(((Integer) t).intValue());
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		ret.val = shadow.field.getFloat(obj);
+		if (shadow.hasTaint())
+			ret.taint = shadow.getTaint(obj);
 		return ret;
 	}
 
 	public static TaintedIntWithObjTag getInt$$PHOSPHORTAGGED(Field f, Object obj, TaintedIntWithObjTag ret) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		ret.val = f.getInt(obj);
-		try {
-			Field taintField;
-			if (fieldToField.containsKey(f))
-				taintField = fieldToField.get(f);
-			else {
-				taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-				taintField.setAccessible(true);
-				fieldToField.put(f, taintField);
-			}
-			Object t = taintField.get(obj);
-			if (t instanceof Taint)
-				ret.taint = (Taint) t;
-			if (t instanceof Integer)
-				ret.taint = (Taint) HardcodedBypassStore.get(((Integer) t).intValue());
-
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		ret.val = shadow.field.getInt(obj);
+		if (shadow.hasTaint())
+			ret.taint = shadow.getTaint(obj);
 		return ret;
 	}
 
 	public static TaintedLongWithObjTag getLong$$PHOSPHORTAGGED(Field f, Object obj, TaintedLongWithObjTag ret) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		ret.val = f.getLong(obj);
-		try {
-			Field taintField;
-			if (fieldToField.containsKey(f))
-				taintField = fieldToField.get(f);
-			else {
-				taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-				taintField.setAccessible(true);
-				fieldToField.put(f, taintField);
-			}
-			Object t = taintField.get(obj);
-			if (t instanceof Taint)
-				ret.taint = (Taint) t;
-			if (t instanceof Integer)
-				ret.taint = (Taint) HardcodedBypassStore.get(((Integer) t).intValue());
-		} catch (NoSuchFieldException e) {
-		} catch (SecurityException e) {
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		ret.val = shadow.field.getLong(obj);
+		if (shadow.hasTaint())
+			ret.taint = shadow.getTaint(obj);
 		return ret;
 	}
 
 	public static TaintedShortWithObjTag getShort$$PHOSPHORTAGGED(Field f, Object obj, TaintedShortWithObjTag ret) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		ret.val = f.getShort(obj);
-		try {
-			Field taintField;
-			if (fieldToField.containsKey(f))
-				taintField = fieldToField.get(f);
-			else {
-				taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-				taintField.setAccessible(true);
-				fieldToField.put(f, taintField);
-			}
-			Object t = taintField.get(obj);
-			if (t instanceof Taint)
-				ret.taint = (Taint) t;
-			if (t instanceof Integer)
-				ret.taint = (Taint) HardcodedBypassStore.get(((Integer) t).intValue());
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		ret.val = shadow.field.getShort(obj);
+		if (shadow.hasTaint())
+			ret.taint = shadow.getTaint(obj);
 		return ret;
 	}
 	public static void setAccessible$$PHOSPHORTAGGED(Field f, int tag, boolean flag) {
@@ -714,227 +555,115 @@ public class RuntimeReflectionPropogator {
 		setShort$$PHOSPHORTAGGED(f, obj, tag, val);
 	}
 	public static void setBoolean$$PHOSPHORTAGGED(Field f, Object obj, int tag, boolean val) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		f.setBoolean(obj, val);
-		try {
-			Field taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-			taintField.setAccessible(true);
-			taintField.setInt(obj, tag);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		shadow.field.setBoolean(obj, val);
+		if (shadow.hasTaint())
+			shadow.taintField.setInt(obj, tag);
 	}
 
 	public static void setByte$$PHOSPHORTAGGED(Field f, Object obj, int tag, byte val) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		f.setByte(obj, val);
-		try {
-			Field taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-			taintField.setAccessible(true);
-			taintField.setInt(obj, tag);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		shadow.field.setByte(obj, val);
+		if (shadow.hasTaint())
+			shadow.taintField.setInt(obj, tag);
 	}
 
 	public static void setChar$$PHOSPHORTAGGED(Field f, Object obj, int tag, char val) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		f.setChar(obj, val);
-		try {
-			Field taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-			taintField.setAccessible(true);
-			taintField.setInt(obj, tag);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		shadow.field.setChar(obj, val);
+		if (shadow.hasTaint())
+			shadow.taintField.setInt(obj, tag);
 	}
 
 	public static void setDouble$$PHOSPHORTAGGED(Field f, Object obj, int tag, double val) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		f.setDouble(obj, val);
-		try {
-			Field taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-			taintField.setAccessible(true);
-			taintField.setInt(obj, tag);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		shadow.field.setDouble(obj, val);
+		if (shadow.hasTaint())
+			shadow.taintField.setInt(obj, tag);
 	}
 
 	public static void setFloat$$PHOSPHORTAGGED(Field f, Object obj, int tag, float val) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		f.setFloat(obj, val);
-		try {
-			Field taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-			taintField.setAccessible(true);
-			taintField.setInt(obj, tag);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		shadow.field.setFloat(obj, val);
+		if (shadow.hasTaint())
+			shadow.taintField.setInt(obj, tag);
 	}
 
 	public static void setInt$$PHOSPHORTAGGED(Field f, Object obj, int tag, int val) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		f.setInt(obj, val);
-		try {
-			Field taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-			taintField.setAccessible(true);
-			taintField.setInt(obj, tag);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		shadow.field.setInt(obj, val);
+		if (shadow.hasTaint())
+			shadow.taintField.setInt(obj, tag);
 	}
 
 	public static void setLong$$PHOSPHORTAGGED(Field f, Object obj, int tag, long val) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		f.setLong(obj, val);
-		try {
-			Field taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-			taintField.setAccessible(true);
-			taintField.setInt(obj, tag);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		shadow.field.setLong(obj, val);
+		if (shadow.hasTaint())
+			shadow.taintField.setInt(obj, tag);
 	}
 
 	public static void setShort$$PHOSPHORTAGGED(Field f, Object obj, int tag, short val) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		f.setShort(obj, val);
-		try {
-			Field taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-			taintField.setAccessible(true);
-			taintField.setInt(obj, tag);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		shadow.field.setShort(obj, val);
+		if (shadow.hasTaint())
+			shadow.taintField.setInt(obj, tag);
 	}
 	
 	public static void setBoolean$$PHOSPHORTAGGED(Field f, Object obj, Taint tag, boolean val) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		f.setBoolean(obj, val);
-		try {
-			Field taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-			taintField.setAccessible(true);
-			taintField.set(obj, tag);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		shadow.field.setBoolean(obj, val);
+		if (shadow.hasTaint())
+			shadow.taintField.set(obj, tag);
 	}
 
 	public static void setByte$$PHOSPHORTAGGED(Field f, Object obj, Taint tag, byte val) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		f.setByte(obj, val);
-		try {
-			Field taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-			taintField.setAccessible(true);
-			taintField.set(obj, tag);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		shadow.field.setByte(obj, val);
+		if (shadow.hasTaint())
+			shadow.taintField.set(obj, tag);
 	}
 
 	public static void setChar$$PHOSPHORTAGGED(Field f, Object obj, Taint tag, char val) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		f.setChar(obj, val);
-		try {
-			Field taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-			taintField.setAccessible(true);
-			taintField.set(obj, tag);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		shadow.field.setChar(obj, val);
+		if (shadow.hasTaint())
+			shadow.taintField.set(obj, tag);
 	}
 
 	public static void setDouble$$PHOSPHORTAGGED(Field f, Object obj, Taint tag, double val) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		f.setDouble(obj, val);
-		try {
-			Field taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-			taintField.setAccessible(true);
-			taintField.set(obj, tag);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		shadow.field.setDouble(obj, val);
+		if (shadow.hasTaint())
+			shadow.taintField.set(obj, tag);
 	}
 
 	public static void setFloat$$PHOSPHORTAGGED(Field f, Object obj, Taint tag, float val) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		f.setFloat(obj, val);
-		try {
-			Field taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-			taintField.setAccessible(true);
-			taintField.set(obj, tag);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		shadow.field.setFloat(obj, val);
+		if (shadow.hasTaint())
+			shadow.taintField.set(obj, tag);
 	}
 
 	public static void setInt$$PHOSPHORTAGGED(Field f, Object obj, Taint tag, int val) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		f.setInt(obj, val);
-		try {
-			Field taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-			taintField.setAccessible(true);
-			taintField.set(obj, tag);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		shadow.field.setInt(obj, val);
+		if (shadow.hasTaint())
+			shadow.taintField.set(obj, tag);
 	}
 
 	public static void setLong$$PHOSPHORTAGGED(Field f, Object obj, Taint tag, long val) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		f.setLong(obj, val);
-		try {
-			Field taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-			taintField.setAccessible(true);
-			taintField.set(obj, tag);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		shadow.field.setLong(obj, val);
+		if (shadow.hasTaint())
+			shadow.taintField.set(obj, tag);
 	}
 
 	public static void setShort$$PHOSPHORTAGGED(Field f, Object obj, Taint tag, short val) throws IllegalArgumentException, IllegalAccessException {
-		f.setAccessible(true);
-		f.setShort(obj, val);
-		try {
-			Field taintField = f.getDeclaringClass().getField(f.getName() + TaintUtils.TAINT_FIELD);
-			taintField.setAccessible(true);
-			taintField.set(obj, tag);
-		} catch (NoSuchFieldException e) {
-//			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		}
+		FieldShadow shadow = FieldShadow.of(f);
+		shadow.field.setShort(obj, val);
+		if (shadow.hasTaint())
+			shadow.taintField.set(obj, tag);
 	}
 	private static Taint getTagObj(Object val) throws IllegalArgumentException, IllegalAccessException, NoSuchFieldException, SecurityException {
 		Object ret = val.getClass().getField("value" + TaintUtils.TAINT_FIELD).get(val);
@@ -0,0 +1,26 @@
+package edu.columbia.cs.psl.phosphor.runtime;
+
+/**
+ * Returned by the helpers that MethodSplittingMV outlines from methods that return
+ * objects, to tell the caller which of the region's exits was taken (as opposed to the
+ * method's own return value). Instances never escape the split method.
+ */
+public final class SplitMethodExit {
+	private static final SplitMethodExit[] EXITS = new SplitMethodExit[64];
+	static {
+		for (int i = 0; i < EXITS.length; i++)
+			EXITS[i] = new SplitMethodExit(i);
+	}
+
+	public final int idx;
+
+	private SplitMethodExit(int idx) {
+		this.idx = idx;
+	}
+
+	public static SplitMethodExit get(int idx) {
+		if (idx < EXITS.length)
+			return EXITS[idx];
+		return new SplitMethodExit(idx);
+	}
+}
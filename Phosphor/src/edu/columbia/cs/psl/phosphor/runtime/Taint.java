@@ -479,6 +479,10 @@ public class Taint<T> implements Serializable {
 			}
 			tagsTaint = tags.copyTagExceptions();
 		} else {
+			// Values stored over and over in a loop usually already carry the control tag, no need to copy it again
+			Taint ctrlTag = tags.getTag();
+			if(t1 != null && !t1.isEmpty() && (ctrlTag == null || t1 == ctrlTag || t1.contains(ctrlTag)))
+				return t1;
 			tagsTaint = tags.copyTag();
 		}
 		if(t1 == null || t1.isEmpty()) {
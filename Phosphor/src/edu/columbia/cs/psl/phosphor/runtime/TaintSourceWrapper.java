@@ -4,15 +4,19 @@ import com.sun.org.apache.xpath.internal.operations.Mult;
 import edu.columbia.cs.psl.phosphor.Configuration;
 import edu.columbia.cs.psl.phosphor.Logger;
 import edu.columbia.cs.psl.phosphor.struct.*;
+import sun.misc.JavaLangAccess;
+import sun.misc.SharedSecrets;
+import sun.misc.Unsafe;
 import sun.text.resources.CollationData;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 
 import java.lang.reflect.Array;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class handles dynamically doing source-based tainting.
@@ -35,13 +39,83 @@ import java.util.List;
  */
 public class TaintSourceWrapper<T extends AutoTaintLabel> {
 
-	// https://stackoverflow.com/questions/1042798/retrieving-the-inherited-attribute-names-values-using-java-reflection
-	private static List<Field> getFields(List<Field> fields, Class<?> type) {
-		fields.addAll(Arrays.asList(type.getDeclaredFields()));
-		if (type.getSuperclass() != null) {
-			getFields(fields, type.getSuperclass());
+	/* Reads the fields of objects of one class that sanitize and checkTaint look into, without reflection */
+	static final class FieldWalker {
+		private static final Unsafe unsafe = getUnsafe();
+		/* The fields of each class (and its superclasses) that may hold a String or a List, for CHECK_OBJECT_FIELDS.
+		 * Kept here rather than in TaintSourceWrapper, which Configuration loads while the JVM boots, before
+		 * a ClassValue can be made. */
+		private static final ClassValue<FieldWalker> walkers = new PhosphorClassValue<FieldWalker>() {
+			@Override
+			protected FieldWalker computeValue(Class<?> type) {
+				return new FieldWalker(type);
+			}
+		};
+		/* The object the field is read from, which is null for instance fields */
+		private final Object[] bases;
+		private final long[] offsets;
+		private final boolean[] isVolatile;
+
+		FieldWalker(Class<?> type) {
+			ArrayList<Field> fields = new ArrayList<>();
+			for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+				for (Field f : c.getDeclaredFields()) {
+					if (mayHoldStringOrList(f.getType()))
+						fields.add(f);
+				}
+			}
+			bases = new Object[fields.size()];
+			offsets = new long[fields.size()];
+			isVolatile = new boolean[fields.size()];
+			for (int i = 0; i < fields.size(); i++) {
+				Field f = fields.get(i);
+				if (Modifier.isStatic(f.getModifiers())) {
+					bases[i] = unsafe.staticFieldBase(f);
+					offsets[i] = unsafe.staticFieldOffset(f);
+				} else {
+					offsets[i] = unsafe.objectFieldOffset(f);
+				}
+				isVolatile[i] = Modifier.isVolatile(f.getModifiers());
+			}
+		}
+
+		/* Phosphor is on the boot class path when it runs as an agent, but not when it is loaded by the application
+		 * class loader, as in its unit tests */
+		private static Unsafe getUnsafe() {
+			try {
+				return Unsafe.getUnsafe();
+			} catch (SecurityException e) {
+				try {
+					Field f = Unsafe.class.getDeclaredField("theUnsafe");
+					f.setAccessible(true);
+					return (Unsafe) f.get(null);
+				} catch (ReflectiveOperationException ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+		}
+
+		private static boolean mayHoldStringOrList(Class<?> t) {
+			if (t.isPrimitive() || t.isArray())
+				return false;
+			if (t.isAssignableFrom(String.class) || t.isInterface())
+				return true;
+			// Any other class could be extended by a List, except for Phosphor's own, which hold tags
+			return !Modifier.isFinal(t.getModifiers()) && !t.getName().startsWith("edu.columbia.cs.psl.phosphor.");
+		}
+
+		static FieldWalker of(Class<?> type) {
+			return walkers.get(type);
+		}
+
+		int size() {
+			return offsets.length;
+		}
+
+		Object get(Object obj, int i) {
+			Object base = bases[i] == null ? obj : bases[i];
+			return isVolatile[i] ? unsafe.getObjectVolatile(base, offsets[i]) : unsafe.getObject(base, offsets[i]);
 		}
-		return fields;
 	}
 
 	public void combineTaintsOnArray(Object inputArray, Taint<T> tag){
@@ -90,7 +164,7 @@ public class TaintSourceWrapper<T extends AutoTaintLabel> {
 
 	/* called by sanitizers */
 	public static void sanitize(Object obj) {
-		Logger.info("sanitized: " + obj);
+		Configuration.violationReporter.sanitized(obj);
 		if(obj instanceof String) {
 			Taint[] taints = getStringValueTaints((String) obj);
 			if (taints != null) {
@@ -101,14 +175,11 @@ public class TaintSourceWrapper<T extends AutoTaintLabel> {
 		} else if(obj instanceof TaintedWithObjTag) {
 			sanitizeTaint((Taint) ((TaintedWithObjTag) obj).getPHOSPHOR_TAG());
 			if (Configuration.CHECK_OBJECT_FIELDS) {
-				for (Field field : getFields(new ArrayList<Field>(), obj.getClass())) {
-					try {
-						field.setAccessible(true);
-						if (field.get(obj) instanceof String) {
-							sanitize(field.get(obj));
-						}
-					} catch (IllegalAccessException e) {
-						e.printStackTrace();
+				FieldWalker walker = FieldWalker.of(obj.getClass());
+				for (int i = 0; i < walker.size(); i++) {
+					Object value = walker.get(obj, i);
+					if (value instanceof String) {
+						sanitize(value);
 					}
 				}
 			}
@@ -135,13 +206,45 @@ public class TaintSourceWrapper<T extends AutoTaintLabel> {
 		}
 	}
 
+	/* Labels shared by the sources called from the same place, when SOURCE_TRACE_DEPTH is set. In a class of its own so
+	 * that the map is made by the first source rather than by Configuration, which is loaded while the JVM boots. */
+	static final class SharedLabels {
+		static final ConcurrentHashMap<AutoTaintLabel, AutoTaintLabel> labels = new ConcurrentHashMap<>();
+	}
+	// Stops sharing labels past this many places, so that recursive callers cannot grow the map without bound
+	static final int MAX_LABELS = 1 << 16;
+
 	public Taint<AutoTaintLabel> generateTaint(String source) {
+		if (Configuration.SOURCE_TRACE_DEPTH >= 0) {
+			AutoTaintLabel label = new AutoTaintLabel(source, boundedTrace(Configuration.SOURCE_TRACE_DEPTH));
+			ConcurrentHashMap<AutoTaintLabel, AutoTaintLabel> labels = SharedLabels.labels;
+			AutoTaintLabel shared = labels.get(label);
+			if (shared == null && labels.size() < MAX_LABELS) {
+				shared = labels.putIfAbsent(label, label);
+			}
+			return new Taint<>(shared == null ? label : shared);
+		}
 		StackTraceElement[] st = Thread.currentThread().getStackTrace();
 		StackTraceElement[] s = new StackTraceElement[st.length - 3];
 		System.arraycopy(st, 3, s, 0, s.length);
 		return new Taint<>(new AutoTaintLabel(source, s));
 	}
 
+	/* Returns at most depth frames of the stack of the caller of generateTaint's caller. Only those frames are made
+	 * into StackTraceElements, the rest of the stack is left in the Throwable's native backtrace. */
+	private static StackTraceElement[] boundedTrace(int depth) {
+		// Skips this method, generateTaint and autoTaint, like generateTaint skips getStackTrace instead of this method
+		final int skip = 3;
+		Throwable t = new Throwable();
+		JavaLangAccess access = SharedSecrets.getJavaLangAccess();
+		int n = Math.max(0, Math.min(access.getStackTraceDepth(t) - skip, depth));
+		StackTraceElement[] ret = new StackTraceElement[n];
+		for (int i = 0; i < n; i++) {
+			ret[i] = access.getStackTraceElement(t, i + skip);
+		}
+		return ret;
+	}
+
 	/* Called by sources for the arguments and return value. */
 	@SuppressWarnings("unused")
 	public Object autoTaint(Object obj, String baseSource, String actualSource, int argIdx) {
@@ -228,7 +331,8 @@ public class TaintSourceWrapper<T extends AutoTaintLabel> {
 		}
 	}
 
-	/* Called by sink methods. */
+	/* Checks the receiver and arguments of a sink together. Sink methods used to call this, and now check each
+	 * argument on its own. */
 	@SuppressWarnings("unused")
 	public void checkTaint(Object self, Object[] arguments, String baseSink, String actualSink) {
 		if(arguments != null) {
@@ -242,22 +346,84 @@ public class TaintSourceWrapper<T extends AutoTaintLabel> {
 		}
 	}
 
+	/* Sink methods call the checkTaint method for the static type of each argument, see SinkTaintingMV. Primitive
+	 * arguments are only boxed to be reported. */
+	public void checkTaint(Taint<T> tag, boolean val, String baseSink, String actualSink) {
+		if(tag != null)
+			taintViolation(tag, val, baseSink, actualSink);
+	}
+
+	public void checkTaint(Taint<T> tag, byte val, String baseSink, String actualSink) {
+		if(tag != null)
+			taintViolation(tag, val, baseSink, actualSink);
+	}
+
+	public void checkTaint(Taint<T> tag, char val, String baseSink, String actualSink) {
+		if(tag != null)
+			taintViolation(tag, val, baseSink, actualSink);
+	}
+
+	public void checkTaint(Taint<T> tag, short val, String baseSink, String actualSink) {
+		if(tag != null)
+			taintViolation(tag, val, baseSink, actualSink);
+	}
+
+	public void checkTaint(Taint<T> tag, int val, String baseSink, String actualSink) {
+		if(tag != null)
+			taintViolation(tag, val, baseSink, actualSink);
+	}
+
+	public void checkTaint(Taint<T> tag, long val, String baseSink, String actualSink) {
+		if(tag != null)
+			taintViolation(tag, val, baseSink, actualSink);
+	}
+
+	public void checkTaint(Taint<T> tag, float val, String baseSink, String actualSink) {
+		if(tag != null)
+			taintViolation(tag, val, baseSink, actualSink);
+	}
+
+	public void checkTaint(Taint<T> tag, double val, String baseSink, String actualSink) {
+		if(tag != null)
+			taintViolation(tag, val, baseSink, actualSink);
+	}
+
+	@SuppressWarnings("unchecked")
+	public void checkTaint(String str, String baseSink, String actualSink) {
+		Taint[] taints = getStringValueTaints(str);
+		if (taints != null) {
+			SimpleHashSet<String> reported = new SimpleHashSet<>();
+			for (Taint t : taints) {
+				if (t != null) {
+					//System.out.println(t.getTaintLevel());
+					String _t = new String(t.toString().getBytes());
+					if (reported.add(_t))
+						taintViolation(t, str, baseSink, actualSink);
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public void checkTaint(LazyArrayObjTags tags, String baseSink, String actualSink) {
+		if(tags != null && tags.taints != null) {
+			for(Object i : tags.taints) {
+				if(i != null)
+					taintViolation((Taint<T>) i, tags, baseSink, actualSink);
+			}
+		}
+	}
+
+	public void checkTaint(LazyArrayIntTags tags, String baseSink, String actualSink) {
+		if(tags != null)
+			checkTaints(tags.taints, actualSink);
+	}
+
 	@SuppressWarnings("unchecked")
 	public void checkTaint(Object obj, String baseSink, String actualSink) {
 		//Logger.debug("checking: " + obj);
 		if(obj instanceof String) {
-			Taint[] taints = getStringValueTaints((String) obj);
-			if (taints != null) {
-				SimpleHashSet<String> reported = new SimpleHashSet<>();
-				for (Taint t : taints) {
-					if (t != null) {
-						//System.out.println(t.getTaintLevel());
-						String _t = new String(t.toString().getBytes());
-						if (reported.add(_t))
-							taintViolation(t, obj, baseSink, actualSink);
-					}
-				}
-			}
+			checkTaint((String) obj, baseSink, actualSink);
 		} else if(obj instanceof Collection) {
 			for(Object o : ((Collection) obj)) {
 				checkTaint(o, baseSink, actualSink);
@@ -269,28 +435,18 @@ public class TaintSourceWrapper<T extends AutoTaintLabel> {
 				taintViolation((Taint<T>) ((TaintedWithObjTag) obj).getPHOSPHOR_TAG(), obj, baseSink, actualSink);
 			}
 			if (Configuration.CHECK_OBJECT_FIELDS) {
-				for (Field field : getFields(new ArrayList<Field>(), obj.getClass())) {
-					try {
-						field.setAccessible(true);
-						if (field.get(obj) instanceof String ||
-							field.get(obj) instanceof List) {
-							checkTaint(field.get(obj), baseSink, actualSink);
-						}
-					} catch (IllegalAccessException e) {
-						e.printStackTrace();
+				FieldWalker walker = FieldWalker.of(obj.getClass());
+				for (int i = 0; i < walker.size(); i++) {
+					Object value = walker.get(obj, i);
+					if (value instanceof String || value instanceof List) {
+						checkTaint(value, baseSink, actualSink);
 					}
 				}
 			}
 		} else if(obj instanceof LazyArrayIntTags) {
-			checkTaints(((LazyArrayIntTags) obj).taints, actualSink);
+			checkTaint((LazyArrayIntTags) obj, baseSink, actualSink);
 		} else if(obj instanceof LazyArrayObjTags) {
-			LazyArrayObjTags tags = ((LazyArrayObjTags) obj);
-			if(tags.taints != null) {
-				for(Object i : tags.taints) {
-					if(i != null)
-						taintViolation((Taint<T>) i, obj, baseSink, actualSink);
-				}
-			}
+			checkTaint((LazyArrayObjTags) obj, baseSink, actualSink);
 		} else if(obj instanceof Object[]) {
 			for(Object o : ((Object[]) obj)) {
 				checkTaint(o, baseSink, actualSink);
@@ -311,10 +467,8 @@ public class TaintSourceWrapper<T extends AutoTaintLabel> {
 
     public void taintViolation(Taint<T> tag, Object obj, String baseSink, String actualSink) {
 		TaintLevel taintLevel = TaintLevel.fromTaint(tag);
-		Logger.debug(actualSink + ", sinking: " + obj + ": " + taintLevel);
-		if (taintLevel == TaintLevel.MAYBE_TAINTED) {
-			Logger.warning("maybe tainted value sunk!\n" + tag + "\n" + obj);
-		} else if (taintLevel == TaintLevel.TAINTED) {
+		Configuration.violationReporter.sunk(tag, obj, actualSink, taintLevel);
+		if (taintLevel == TaintLevel.TAINTED) {
 			throw new TaintSinkError(tag, obj);
 		}
     }
@@ -0,0 +1,22 @@
+package edu.columbia.cs.psl.phosphor.runtime;
+
+import edu.columbia.cs.psl.phosphor.Logger;
+
+/* Receives the values that TaintSourceWrapper sanitized and those that reached sinks with a tag. Extend it and set
+ * Configuration.violationReporter (or the violationReporter agent option) to handle them differently, and see
+ * AsyncViolationReporter to handle them off of the application's threads. */
+public class ViolationReporter {
+
+	/* Called when a sanitizer is called with obj */
+	public void sanitized(Object obj) {
+		Logger.info("sanitized: " + obj);
+	}
+
+	/* Called when obj reaches actualSink with the specified tag, before a TaintSinkError is thrown if it is tainted */
+	public void sunk(Taint<?> tag, Object obj, String actualSink, TaintLevel taintLevel) {
+		Logger.debug(actualSink + ", sinking: " + obj + ": " + taintLevel);
+		if (taintLevel == TaintLevel.MAYBE_TAINTED) {
+			Logger.warning("maybe tainted value sunk!\n" + tag + "\n" + obj);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package edu.columbia.cs.psl.phosphor.struct;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/* Threadsafe version of GarbageCollectedArrayList. Elements are kept in fixed size chunks that never move, so get does
+ * not lock. Indexes are handed out by an atomic counter, and the indexes of elements whose referent was collected are
+ * reused by the threads of the stripe that added them: only threads that share a stripe contend on add. */
+public final class ConcurrentGarbageCollectedArrayList<T> {
+	private static final int CHUNK_SHIFT = 10;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	// Number of stripes, which must be a power of 2
+	private static final int STRIPES = 16;
+
+	private volatile AtomicReferenceArray<Slot<T>>[] chunks;
+	private final AtomicInteger max = new AtomicInteger();
+	private final Stripe[] stripes = new Stripe[STRIPES];
+
+	@SuppressWarnings("unchecked")
+	public ConcurrentGarbageCollectedArrayList() {
+		chunks = new AtomicReferenceArray[16];
+		for (int i = 0; i < STRIPES; i++)
+			stripes[i] = new Stripe();
+	}
+
+	public T get(int i) {
+		AtomicReferenceArray<Slot<T>>[] c = chunks;
+		int chunk = i >>> CHUNK_SHIFT;
+		if (chunk >= c.length || c[chunk] == null) {
+			System.out.println("Asking for invalid idx: " + i + " in " + max.get());
+			return null;
+		}
+		Slot<T> slot = c[chunk].get(i & CHUNK_MASK);
+		return slot == null ? null : slot.value;
+	}
+
+	/* Adds obj, returning its index. The index is reused once referent is collected, unless referent is null. */
+	public int add(Object referent, T obj) {
+		Stripe stripe = stripes[(int) Thread.currentThread().getId() & (STRIPES - 1)];
+		int ret = reuse(stripe);
+		if (ret < 0)
+			ret = max.getAndIncrement();
+		chunk(ret >>> CHUNK_SHIFT).set(ret & CHUNK_MASK, new Slot<T>(referent, obj, ret, stripe.queue));
+		return ret;
+	}
+
+	/* Returns a free index of the specified stripe, or -1 if it has none */
+	@SuppressWarnings("unchecked")
+	private int reuse(Stripe stripe) {
+		Reference<?> ref = stripe.queue.poll();
+		// Most adds find nothing to reuse, and need not lock to find out
+		if (ref == null && stripe.free.size() == 0)
+			return -1;
+		synchronized (stripe) {
+			for (; ref != null; ref = stripe.queue.poll()) {
+				Slot<T> freed = (Slot<T>) ref;
+				chunks[freed.idx >>> CHUNK_SHIFT].compareAndSet(freed.idx & CHUNK_MASK, freed, null);
+				stripe.free.add(freed.idx);
+			}
+			return stripe.free.size() > 0 ? stripe.free.pop() : -1;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private AtomicReferenceArray<Slot<T>> chunk(int i) {
+		AtomicReferenceArray<Slot<T>>[] c = chunks;
+		if (i < c.length && c[i] != null)
+			return c[i];
+		synchronized (this) {
+			c = chunks;
+			if (i >= c.length) {
+				AtomicReferenceArray<Slot<T>>[] tmp = c;
+				c = new AtomicReferenceArray[Math.max(tmp.length << 1, i + 1)];
+				System.arraycopy(tmp, 0, c, 0, tmp.length);
+			}
+			if (c[i] == null)
+				c[i] = new AtomicReferenceArray<Slot<T>>(CHUNK_SIZE);
+			chunks = c;
+			return c[i];
+		}
+	}
+
+	private static final class Stripe {
+		final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+		final IntArrayList free = new IntArrayList();
+	}
+
+	/* An element, along with the reference that frees its index once the referent is collected */
+	private static final class Slot<T> extends PhantomReference<Object> {
+		final T value;
+		final int idx;
+
+		Slot(Object referent, T value, int idx, ReferenceQueue<Object> q) {
+			super(referent, referent == null ? null : q);
+			this.value = value;
+			this.idx = idx;
+		}
+	}
+}
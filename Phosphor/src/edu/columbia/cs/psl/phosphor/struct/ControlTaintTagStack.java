@@ -7,12 +7,16 @@ public final class ControlTaintTagStack {
 
 	public boolean isDisabled;
 	public Taint taint;
-	LinkedList<MaybeThrownException> unThrownExceptionStack;// = new LinkedList<>();
+	ExceptionInfluenceTable unThrownExceptionStack;
 
-	public LinkedList<MaybeThrownException> influenceExceptions;// = new LinkedList<>();
+	public ExceptionInfluenceTable influenceExceptions;
 	public final boolean isEmpty() {
 		return taint == null || this.isDisabled || taint.isEmpty();
 	}
+	/* Whether nothing computed now would get a control tag, neither from branches nor from exceptions */
+	public final boolean hasNoInfluence() {
+		return isEmpty() && (influenceExceptions == null || influenceExceptions.isEmpty());
+	}
 	public ControlTaintTagStack(int zz) {
 		this();
 	}
@@ -81,23 +85,9 @@ public final class ControlTaintTagStack {
 	 * @param exTypeHandled
 	 */
 	public final void tryBlockEnd(Class<? extends Throwable> exTypeHandled){
-		if(influenceExceptions == null)
+		if(influenceExceptions == null || influenceExceptions.isEmpty())
 			return;
-		LinkedList.Node<MaybeThrownException> n = influenceExceptions.getFirst();
-		LinkedList.Node<MaybeThrownException> prev = null;
-		while(n != null){
-			if(exTypeHandled.isAssignableFrom(n.entry.clazz)){
-				if(prev == null)
-					influenceExceptions.pop();
-				else {
-					prev.next = n.next;
-				}
-			}
-			else
-				prev = n;
-			n = n.next;
-		}
-
+		influenceExceptions.removeSubclassesOf(exTypeHandled);
 	}
 
 	/*
@@ -107,25 +97,11 @@ public final class ControlTaintTagStack {
 	 */
 	public final void applyPossiblyUnthrownExceptionToTaint(Class<? extends Throwable> t)
 	{
-		if(unThrownExceptionStack == null)
+		if(unThrownExceptionStack == null || unThrownExceptionStack.isEmpty())
 			return;
-		LinkedList.Node<MaybeThrownException> n = unThrownExceptionStack.getFirst();
-		LinkedList.Node<MaybeThrownException> prev = null;
-		while(n != null){
-			if(t.isAssignableFrom(n.entry.clazz)){
-				if(prev == null)
-					unThrownExceptionStack.pop();
-				else {
-					prev.next = n.next;
-				}
-				if (influenceExceptions == null)
-					influenceExceptions = new LinkedList<>();
-				influenceExceptions.addFast(n.entry);
-			}
-			else
-				prev = n;
-			n = n.next;
-		}
+		if (influenceExceptions == null)
+			influenceExceptions = new ExceptionInfluenceTable();
+		unThrownExceptionStack.moveSubclassesOf(t, influenceExceptions);
 	}
 
 	/*
@@ -137,23 +113,8 @@ public final class ControlTaintTagStack {
 	public final void addUnthrownException(ExceptionalTaintData taints, Class<? extends Throwable> t) {
 		if (taints != null && taints.taint != null) {
 			if(unThrownExceptionStack == null)
-				unThrownExceptionStack = new LinkedList<>();
-			LinkedList.Node<MaybeThrownException> i = unThrownExceptionStack.getFirst();
-			boolean found = false;
-			while(i != null)
-			{
-				if(i.entry != null && i.entry.clazz == t)
-				{
-					found = true;
-					i.entry.tag.addDependency(taints.taint);
-					break;
-				}
-				i = i.next;
-			}
-			if(!found) {
-				MaybeThrownException ex = new MaybeThrownException(t, taints.taint.copy());
-				unThrownExceptionStack.addFast(ex);
-			}
+				unThrownExceptionStack = new ExceptionInfluenceTable();
+			unThrownExceptionStack.addTaint(t, taints.taint);
 		}
 	}
 
@@ -186,6 +147,75 @@ public final class ControlTaintTagStack {
 		return _push(tag, prev, i, maxSize, null);
 	}
 
+	/**
+	 * Same as push, but for branches that are inside of a loop (the instrumenter marks these with LOOP_HEADER).
+	 * The tag pushed for each branch is kept, and is pushed again on later iterations instead of a new copy
+	 * for as long as neither the tag on the condition nor the enclosing control tag changes.
+	 */
+	public final int[] pushLoopBranch(Taint tag, int prev[], int i, int maxSize, ExceptionalTaintData curMethod) {
+		if (tag == null)
+			return prev;
+		return _pushLoopBranch(tag, prev, i, maxSize, curMethod);
+	}
+	public final int[] pushLoopBranch(Taint tag, int[] prev, int i, int maxSize) {
+		if (tag == null || tag == taint)
+			return prev;
+		return _pushLoopBranch(tag, prev, i, maxSize, null);
+	}
+	public final int[] pushLoopBranch(Object obj, int prev[], int i, int maxSize, ExceptionalTaintData curMethod) {
+		Taint tag = null;
+		if(obj instanceof TaintedWithObjTag)
+			tag = (Taint) ((TaintedWithObjTag) obj).getPHOSPHOR_TAG();
+		if(tag == null || tag == taint)
+			return prev;
+		return _pushLoopBranch(tag, prev, i, maxSize, curMethod);
+	}
+	public final int[] pushLoopBranch(Object obj, int[] prev, int i, int maxSize) {
+		Taint tag = null;
+		if(obj instanceof TaintedWithObjTag)
+			tag = (Taint) ((TaintedWithObjTag) obj).getPHOSPHOR_TAG();
+		if(tag == null || tag == taint)
+			return prev;
+		return _pushLoopBranch(tag, prev, i, maxSize, null);
+	}
+
+	private static final int LOOP_CACHE_SIZE = 16;
+	/* For each cached branch: the enclosing control tag, the tag on the condition and the tag that was pushed */
+	private Taint[] loopCache;
+
+	private int[] _pushLoopBranch(Taint tag, int[] invocationCountPerBranch, int indexOfBranchInMethod, int maxSize, ExceptionalTaintData exceptionData) {
+		if(isDisabled)
+			return invocationCountPerBranch;
+		if(invocationCountPerBranch == null)
+			invocationCountPerBranch = new int[maxSize];
+		invocationCountPerBranch[indexOfBranchInMethod]++;
+		if(invocationCountPerBranch[indexOfBranchInMethod] == 1) {
+			prevTaints.addFast(this.taint);
+			if (exceptionData != null) {
+				exceptionData.push(tag);
+			}
+			if(loopCache == null)
+				loopCache = new Taint[LOOP_CACHE_SIZE * 3];
+			int slot = (indexOfBranchInMethod & (LOOP_CACHE_SIZE - 1)) * 3;
+			Taint cached = loopCache[slot + 2];
+			// The tags may have been changed in place (e.g. sanitized) since they were cached
+			if(cached != null && loopCache[slot] == this.taint && loopCache[slot + 1] == tag && cached.contains(tag) && cached.contains(this.taint)) {
+				this.taint = cached;
+			} else {
+				loopCache[slot] = this.taint;
+				loopCache[slot + 1] = tag;
+				if (this.taint == null) {
+					this.taint = new Taint(tag);
+				} else {
+					this.taint = this.taint.copy();
+					this.taint.addDependency(tag);
+				}
+				loopCache[slot + 2] = this.taint;
+			}
+		}
+		return invocationCountPerBranch;
+	}
+
 	public final int[] _push(Taint tag, int[] invocationCountPerBranch, int indexOfBranchInMethod, int maxSize, ExceptionalTaintData exceptionData){
 		if(isDisabled)
 			return invocationCountPerBranch;
@@ -223,6 +253,26 @@ public final class ControlTaintTagStack {
 		}
 		return invocationCountPerBranch;
 	}
+	/**
+	 * Used instead of push when instrumenting with IMPLICIT_LIGHT_SUMMARY_TRACKING: there is a single control tag
+	 * for the whole method, the union of the tags of every branch condition evaluated so far, and nothing is popped.
+	 * The tag is replaced rather than changed in place, since earlier stores may still refer to it.
+	 */
+	public final void addSummaryTag(Taint tag) {
+		if (tag == null || tag == taint || isDisabled)
+			return;
+		if (this.taint == null)
+			this.taint = new Taint(tag);
+		else if (!this.taint.contains(tag)) {
+			Taint prevTaint = this.taint;
+			this.taint = prevTaint.copy();
+			this.taint.addDependency(tag);
+		}
+	}
+	public final void addSummaryTag(Object obj) {
+		if(obj instanceof TaintedWithObjTag)
+			addSummaryTag((Taint) ((TaintedWithObjTag) obj).getPHOSPHOR_TAG());
+	}
 	public final EnqueuedTaint push(Taint tag, EnqueuedTaint prev) {
 		if (tag == null || tag == taint || isDisabled)
 			return null;
@@ -315,12 +365,7 @@ public final class ControlTaintTagStack {
 			ret = new Taint();
 		else
 			ret = ret.copy();
-		LinkedList.Node<MaybeThrownException> n = influenceExceptions.getFirst();
-		while(n != null){
-			if(n.entry != null && n.entry.tag != null)
-				ret.addDependency(n.entry.tag);
-			n=n.next;
-		}
+		influenceExceptions.addDependenciesTo(ret);
 		return ret;
 	}
 	public Taint getTag() {
@@ -331,9 +376,10 @@ public final class ControlTaintTagStack {
 	public void reset() {
 		prevTaints = new LinkedList<>();
 		taint = null;
+		loopCache = null;
 		if(Configuration.IMPLICIT_EXCEPTION_FLOW) {
-			unThrownExceptionStack = new LinkedList<>();
-			influenceExceptions = new LinkedList<>();
+			unThrownExceptionStack = new ExceptionInfluenceTable();
+			influenceExceptions = new ExceptionInfluenceTable();
 		}
 	}
 }
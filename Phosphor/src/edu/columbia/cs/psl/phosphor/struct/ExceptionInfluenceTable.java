@@ -0,0 +1,138 @@
+package edu.columbia.cs.psl.phosphor.struct;
+
+import edu.columbia.cs.psl.phosphor.runtime.Taint;
+
+/**
+ * The exceptions tracked by a ControlTaintTagStack, keyed by exception class. There is at most one
+ * entry per class (the taints of repeated entries are merged into it), and checking whether an entry is
+ * handled by some catch type goes through a cached superclass display instead of Class.isAssignableFrom.
+ * Tags are shared rather than copied, and are never changed in place: merging a tag that adds labels to an entry
+ * replaces the entry's tag with a new one. So merging a tag that is already covered by its entry does not allocate.
+ */
+public final class ExceptionInfluenceTable {
+
+	/* For each class, its superclasses ordered from Object down to the class itself. In a class of its own, so that the
+	 * ClassValue is only made once exceptions are checked, rather than when the first ControlTaintTagStack is made,
+	 * which can be while the JVM boots, before a ClassValue can be made. */
+	private static final class Superclasses {
+		static final ClassValue<Class<?>[]> DISPLAY = new PhosphorClassValue<Class<?>[]>() {
+			@Override
+			protected Class<?>[] computeValue(Class<?> type) {
+				int depth = 0;
+				for(Class<?> c = type.getSuperclass(); c != null; c = c.getSuperclass())
+					depth++;
+				Class<?>[] ret = new Class<?>[depth + 1];
+				for(Class<?> c = type; c != null; c = c.getSuperclass())
+					ret[depth--] = c;
+				return ret;
+			}
+		};
+	}
+
+	private MaybeThrownException[] entries = new MaybeThrownException[4];
+	private int size;
+
+	/* Returns whether type is the same as or a subclass of the class sup. */
+	public static boolean isSubclass(Class<?> type, Class<?> sup) {
+		if(type == sup)
+			return true;
+		Class<?>[] display = Superclasses.DISPLAY.get(type);
+		int depth = Superclasses.DISPLAY.get(sup).length - 1;
+		return depth < display.length && display[depth] == sup;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public MaybeThrownException get(Class<? extends Throwable> clazz) {
+		for(int i = 0; i < size; i++)
+			if(entries[i].clazz == clazz)
+				return entries[i];
+		return null;
+	}
+
+	/* Adds the specified tag to the entry for clazz, creating the entry if there isn't one. */
+	public void addTaint(Class<? extends Throwable> clazz, Taint tag) {
+		MaybeThrownException existing = get(clazz);
+		if(existing != null)
+			existing.tag = union(existing.tag, tag);
+		else
+			append(new MaybeThrownException(clazz, tag));
+	}
+
+	/* Adds the specified entry, merging it into the existing entry for its class if there is one. */
+	public void add(MaybeThrownException ex) {
+		MaybeThrownException existing = get(ex.clazz);
+		if(existing == null)
+			append(ex);
+		else if(ex.tag != null)
+			existing.tag = union(existing.tag, ex.tag);
+	}
+
+	private static Taint union(Taint existing, Taint tag) {
+		if(existing == null || existing == tag)
+			return tag;
+		if(existing.contains(tag))
+			return existing;
+		Taint ret = existing.copy();
+		ret.addDependency(tag);
+		return ret;
+	}
+
+	private void append(MaybeThrownException ex) {
+		if(size == entries.length) {
+			MaybeThrownException[] tmp = new MaybeThrownException[size * 2];
+			System.arraycopy(entries, 0, tmp, 0, size);
+			entries = tmp;
+		}
+		entries[size++] = ex;
+	}
+
+	/* Removes the entries for handled and its subclasses. */
+	public void removeSubclassesOf(Class<? extends Throwable> handled) {
+		moveSubclassesOf(handled, null);
+	}
+
+	/* Moves the entries for handled and its subclasses into the specified table, or drops them if it is null. */
+	public void moveSubclassesOf(Class<? extends Throwable> handled, ExceptionInfluenceTable to) {
+		for(int i = 0; i < size; ) {
+			MaybeThrownException ex = entries[i];
+			if(isSubclass(ex.clazz, handled)) {
+				entries[i] = entries[--size];
+				entries[size] = null;
+				if(to != null)
+					to.add(ex);
+			} else
+				i++;
+		}
+	}
+
+	/* Adds the tags of all entries to the specified taint. */
+	public void addDependenciesTo(Taint ret) {
+		for(int i = 0; i < size; i++)
+			if(entries[i].tag != null)
+				ret.addDependency(entries[i].tag);
+	}
+
+	public void clear() {
+		for(int i = 0; i < size; i++)
+			entries[i] = null;
+		size = 0;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder ret = new StringBuilder("[");
+		for(int i = 0; i < size; i++) {
+			ret.append(entries[i].clazz.getName()).append('=').append(entries[i].tag);
+			if(i + 1 < size)
+				ret.append(',');
+		}
+		return ret.append(']').toString();
+	}
+}
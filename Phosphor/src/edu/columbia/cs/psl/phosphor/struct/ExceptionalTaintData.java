@@ -2,30 +2,51 @@ package edu.columbia.cs.psl.phosphor.struct;
 
 import edu.columbia.cs.psl.phosphor.runtime.Taint;
 
+/**
+ * The tags of the branches taken so far in the current invocation of a method that can throw, see
+ * ControlTaintTagStack.addUnthrownException. The tags held in taint are never changed in place once they are set,
+ * so they can be shared without being copied. Each nesting depth has a slot that remembers the last tag that was
+ * pushed there, so pushing the same branch tag on top of the same enclosing tag again (e.g. on each iteration of a
+ * loop) reuses it instead of making a new one.
+ */
 public class ExceptionalTaintData {
 	public Taint taint;
-	public LinkedList<Taint> prevTaints = new LinkedList<>();
+	private int depth;
+	/* For each depth: the enclosing tag, the tag that was pushed on top of it and their union */
+	private Taint[] slots;
+
 	public void push(Taint tag) {
-		if(this.taint == tag)
+		if(slots == null)
+			slots = new Taint[24];
+		else if((depth + 1) * 3 > slots.length) {
+			Taint[] tmp = new Taint[slots.length * 2];
+			System.arraycopy(slots, 0, tmp, 0, slots.length);
+			slots = tmp;
+		}
+		int slot = depth * 3;
+		depth++;
+		Taint prev = this.taint;
+		Taint cached = slots[slot + 2];
+		if(cached != null && slots[slot] == prev && slots[slot + 1] == tag && cached.contains(tag)) {
+			this.taint = cached;
 			return;
-		prevTaints.addFast(this.taint);
-		if(this.taint == null)
-		{
-			this.taint = new Taint(tag);
 		}
-		else
-		{
-			if(!this.taint.contains(tag)) {
-				this.taint = this.taint.copy();
-				this.taint.addDependency(tag);
-			}
+		slots[slot] = prev;
+		slots[slot + 1] = tag;
+		if(prev == null)
+			this.taint = new Taint(tag);
+		else if(prev != tag && !prev.contains(tag)) {
+			this.taint = prev.copy();
+			this.taint.addDependency(tag);
 		}
+		slots[slot + 2] = this.taint;
 	}
-	public void pop(int n){
 
-		while(n > 0){
-			this.taint = prevTaints.pop();
-			n--;
-		}
+	/* Undoes the most recent push; like ControlTaintTagStack.pop, a branch that was pushed n times was only recorded once. */
+	public void pop(int n) {
+		if(n <= 0 || depth == 0)
+			return;
+		depth--;
+		this.taint = slots[depth * 3];
 	}
 }
@@ -0,0 +1,13 @@
+package edu.columbia.cs.psl.phosphor.struct;
+
+/**
+ * A ClassValue for Phosphor's own (uninstrumented) classes. With control tracking, the instrumented ClassValue.get
+ * calls computeValue$$PHOSPHORTAGGED, which a subclass that was never instrumented would not have. So it is written
+ * here by hand, like PhosphorBaseTransformer does for transform. Every ClassValue in Phosphor should extend this class.
+ */
+public abstract class PhosphorClassValue<T> extends ClassValue<T> {
+
+	protected T computeValue$$PHOSPHORTAGGED(Class<?> type, ControlTaintTagStack ctrl) {
+		return computeValue(type);
+	}
+}
@@ -0,0 +1,170 @@
+package edu.columbia.cs.psl.phosphor.struct;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/* Threadsafe map from objects, compared by identity and only weakly referenced, to their tags. Lookups do not lock:
+ * each one reads a single bucket of the segment that the key's identity hash falls in. Updates lock that segment only,
+ * and unlink the entries of keys that were garbage collected along the way. */
+public final class WeakIdentityTagMap<V> {
+
+    // Number of segments, which must be a power of 2
+    private static final int SEGMENTS = 16;
+    private static final int SEGMENT_SHIFT = 28;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Segment<V>[] segments;
+
+    @SuppressWarnings("unchecked")
+    public WeakIdentityTagMap() {
+        segments = new Segment[SEGMENTS];
+        for(int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>();
+        }
+    }
+
+    /* Returns the tag of the specified object, or null if it has none. */
+    public V get(Object key) {
+        int hash = hash(key);
+        return segments[hash >>> SEGMENT_SHIFT].get(key, hash);
+    }
+
+    /* Associates the specified object with the specified tag, replacing its previous tag. */
+    public void put(Object key, V value) {
+        int hash = hash(key);
+        segments[hash >>> SEGMENT_SHIFT].put(key, hash, value);
+    }
+
+    /* Returns the number of objects with tags, including any that were collected but not yet removed. */
+    public int size() {
+        int size = 0;
+        for(Segment<V> segment : segments) {
+            size += segment.count;
+        }
+        return size;
+    }
+
+    private static int hash(Object key) {
+        // Spreads the bits of the identity hash, whose high bits select the segment and low bits the bucket
+        int h = System.identityHashCode(key);
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h;
+    }
+
+    private static final class Entry<V> extends WeakReference<Object> {
+        final int hash;
+        // Only changed to unlink the entry after it, so a reader at this entry still reaches the rest of its bucket
+        volatile Entry<V> next;
+        volatile V value;
+
+        Entry(Object key, int hash, V value, Entry<V> next, ReferenceQueue<Object> queue) {
+            super(key, queue);
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    private static final class Segment<V> {
+        private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+        private volatile Entry<V>[] table;
+        // Only written while holding the lock on this segment
+        volatile int count;
+
+        @SuppressWarnings("unchecked")
+        Segment() {
+            table = new Entry[INITIAL_CAPACITY];
+        }
+
+        V get(Object key, int hash) {
+            Entry<V>[] tab = table;
+            for(Entry<V> e = tab[hash & (tab.length - 1)]; e != null; e = e.next) {
+                if(e.get() == key) {
+                    return e.value;
+                }
+            }
+            return null;
+        }
+
+        synchronized void put(Object key, int hash, V value) {
+            expungeStaleEntries();
+            Entry<V>[] tab = table;
+            int i = hash & (tab.length - 1);
+            for(Entry<V> e = tab[i]; e != null; e = e.next) {
+                if(e.get() == key) {
+                    e.value = value;
+                    return;
+                }
+            }
+            if(count + 1 > tab.length - (tab.length >>> 2)) {
+                tab = rehash();
+                i = hash & (tab.length - 1);
+            }
+            tab[i] = new Entry<>(key, hash, value, tab[i], queue);
+            table = tab;
+            count++;
+        }
+
+        /* Unlinks the entries of collected keys from the table in place, as WeakHashMap does. Entries that are not in
+         * the table anymore because it was copied since are skipped. */
+        @SuppressWarnings("unchecked")
+        private void expungeStaleEntries() {
+            Entry<V>[] tab = table;
+            boolean any = false;
+            for(Object x; (x = queue.poll()) != null; ) {
+                Entry<V> stale = (Entry<V>) x;
+                int i = stale.hash & (tab.length - 1);
+                Entry<V> prev = null;
+                for(Entry<V> e = tab[i]; e != null; prev = e, e = e.next) {
+                    if(e == stale) {
+                        if(prev == null) {
+                            tab[i] = e.next;
+                        } else {
+                            prev.next = e.next;
+                        }
+                        count--;
+                        any = true;
+                        break;
+                    }
+                }
+            }
+            if(any) {
+                // Publishes the unlinked buckets to readers
+                table = tab;
+            }
+        }
+
+        /* Copies the live entries into a new table, growing it if it is more than half full. Readers that are still
+         * using the old table keep seeing all of the entries that were in it. */
+        @SuppressWarnings("unchecked")
+        private Entry<V>[] rehash() {
+            Entry<V>[] old = table;
+            int live = 0;
+            for(Entry<V> head : old) {
+                for(Entry<V> e = head; e != null; e = e.next) {
+                    if(e.get() != null) {
+                        live++;
+                    }
+                }
+            }
+            int capacity = old.length;
+            while(live + 1 > capacity >>> 1) {
+                capacity <<= 1;
+            }
+            Entry<V>[] tab = new Entry[capacity];
+            for(Entry<V> head : old) {
+                for(Entry<V> e = head; e != null; e = e.next) {
+                    Object key = e.get();
+                    if(key != null) {
+                        int i = e.hash & (capacity - 1);
+                        tab[i] = new Entry<>(key, e.hash, e.value, tab[i], queue);
+                    }
+                }
+            }
+            count = live;
+            return tab;
+        }
+    }
+}
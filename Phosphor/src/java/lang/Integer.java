@@ -19,6 +19,10 @@
 
 package java.lang;
 
+import edu.columbia.cs.psl.phosphor.runtime.Taint;
+import edu.columbia.cs.psl.phosphor.runtime.TaintSentinel;
+import edu.columbia.cs.psl.phosphor.struct.ControlTaintTagStack;
+
 /**
  * The wrapper for the primitive type {@code int}.
  * <p>
@@ -86,6 +90,18 @@ public final class Integer extends Number implements Comparable<Integer> {
         this.value = value;
     }
 
+    public Integer(int t, int value, TaintSentinel stl) {
+        this.value = value;
+    }
+
+    public Integer(Taint t, int value, TaintSentinel stl) {
+        this.value = value;
+    }
+
+    public Integer(Taint t, int value, ControlTaintTagStack ctrl, TaintSentinel stl) {
+        this.value = value;
+    }
+
     /**
      * Constructs a new {@code Integer} from the specified string.
      * 
@@ -890,4 +906,16 @@ public final class Integer extends Number implements Comparable<Integer> {
 	public static int parseUnsignedInt(String s) {
 		return 0;
 	}
-}
\ No newline at end of file
+
+	public static Integer valueOf$$PHOSPHORTAGGED(int t, int i) {
+		return null;
+	}
+
+	public static Integer valueOf$$PHOSPHORTAGGED(Taint t, int i) {
+		return null;
+	}
+
+	public static Integer valueOf$$PHOSPHORTAGGED(Taint t, int i, ControlTaintTagStack ctrl) {
+		return null;
+	}
+}
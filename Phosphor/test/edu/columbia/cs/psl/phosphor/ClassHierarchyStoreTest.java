@@ -0,0 +1,60 @@
+package edu.columbia.cs.psl.phosphor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class ClassHierarchyStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ClassHierarchyStore makeStore() {
+        ClassHierarchyStore store = new ClassHierarchyStore();
+        store.add(Opcodes.ACC_PUBLIC, "java/lang/Object", null, null);
+        store.add(Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, "p/I", "java/lang/Object", null);
+        store.add(Opcodes.ACC_PUBLIC, "p/A", "java/lang/Object", null);
+        store.add(Opcodes.ACC_PUBLIC, "p/B", "p/A", new String[]{"p/I"});
+        store.add(Opcodes.ACC_PUBLIC, "p/C", "p/A", null);
+        store.add(Opcodes.ACC_PUBLIC, "p/D", "p/C", new String[]{"p/I"});
+        return store;
+    }
+
+    /* Checks that common supertypes are computed the same way as ClassWriter does, from the stored classes alone. */
+    @Test
+    public void testCommonSuperClass() {
+        ClassHierarchyStore store = makeStore();
+        assertEquals("p/A", store.getCommonSuperClass("p/B", "p/D", null));
+        assertEquals("p/A", store.getCommonSuperClass("p/A", "p/D", null));
+        assertEquals("p/C", store.getCommonSuperClass("p/D", "p/C", null));
+        assertEquals("p/I", store.getCommonSuperClass("p/I", "p/B", null));
+        assertEquals("java/lang/Object", store.getCommonSuperClass("p/I", "p/C", null));
+        assertNull(store.getCommonSuperClass("p/B", "p/Unknown", null));
+    }
+
+    /* Checks that classes that are not stored yet are read from the class loader, without being loaded. */
+    @Test
+    public void testReadsMissingClassesFromLoader() {
+        ClassHierarchyStore store = new ClassHierarchyStore();
+        ClassLoader loader = ClassLoader.getSystemClassLoader();
+        assertEquals("java/lang/Number", store.getCommonSuperClass("java/lang/Integer", "java/lang/Long", loader));
+        assertEquals("java/lang/Object", store.getCommonSuperClass("java/lang/Integer", "java/lang/String", loader));
+    }
+
+    /* Checks that a saved store can be loaded again. */
+    @Test
+    public void testSaveLoad() throws Exception {
+        File f = new File(folder.getRoot(), ClassHierarchyStore.FILE_NAME);
+        makeStore().save(f);
+        ClassHierarchyStore store = new ClassHierarchyStore();
+        store.load(f);
+        assertEquals(6, store.size());
+        assertEquals("p/A", store.getCommonSuperClass("p/B", "p/D", null));
+        assertEquals("java/lang/Object", store.getCommonSuperClass("p/I", "p/C", null));
+    }
+}
@@ -0,0 +1,87 @@
+package edu.columbia.cs.psl.phosphor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class IncrementalManifestTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final long FINGERPRINT = 42;
+    private static final String JAR = "/lib.jar";
+    private static final String FIRST_CLASS = JAR + "!/a/First.class";
+    private static final String SECOND_CLASS = JAR + "!/a/Second.class";
+    private static final String OTHER_JAR_CLASS = "/lib.jar2!/a/First.class";
+
+    /* Writes a manifest the way a run that instrumented the two classes of lib.jar would. */
+    private File firstRun() throws Exception {
+        File dir = folder.newFolder();
+        IncrementalManifest manifest = new IncrementalManifest(dir, FINGERPRINT);
+        assertFalse(manifest.hasPrevious());
+        manifest.written(FIRST_CLASS, 1);
+        manifest.written(SECOND_CLASS, 2);
+        manifest.written(JAR, 3);
+        manifest.save();
+        return dir;
+    }
+
+    /* Checks that the keys that were written are read back by the next run with the same fingerprint. */
+    @Test
+    public void testKeysAreReadBack() throws Exception {
+        File dir = firstRun();
+        IncrementalManifest manifest = new IncrementalManifest(dir, FINGERPRINT);
+        assertTrue(manifest.hasPrevious());
+        assertTrue(manifest.isUnchanged(JAR, 3));
+        assertTrue(manifest.isUnchanged(FIRST_CLASS, 1));
+        assertFalse(manifest.isUnchanged(FIRST_CLASS, 2));
+        assertFalse(manifest.isUnchanged("/other.jar", 3));
+    }
+
+    /* Checks that the keys of a run with a different configuration are not used. */
+    @Test
+    public void testFingerprintMismatch() throws Exception {
+        File dir = firstRun();
+        IncrementalManifest manifest = new IncrementalManifest(dir, FINGERPRINT + 1);
+        assertFalse(manifest.hasPrevious());
+        assertFalse(manifest.isUnchanged(JAR, 3));
+    }
+
+    /* Checks that after a run that kept lib.jar as it was, a run in which one of its classes changed can still reuse
+     * the other one. */
+    @Test
+    public void testNoOpRunThenOneClassChanged() throws Exception {
+        File dir = firstRun();
+        IncrementalManifest noOp = new IncrementalManifest(dir, FINGERPRINT);
+        assertTrue(noOp.isUnchanged(JAR, 3));
+        noOp.kept(JAR, 3);
+        noOp.save();
+
+        IncrementalManifest changed = new IncrementalManifest(dir, FINGERPRINT);
+        assertFalse(changed.isUnchanged(JAR, 4));
+        assertTrue(changed.isUnchanged(FIRST_CLASS, 1));
+        assertFalse(changed.isUnchanged(SECOND_CLASS, 5));
+    }
+
+    /* Checks that keeping a zip does not keep the classes of another zip whose path starts with the same name. */
+    @Test
+    public void testKeptOnlyKeepsItsOwnClasses() throws Exception {
+        File dir = folder.newFolder();
+        IncrementalManifest manifest = new IncrementalManifest(dir, FINGERPRINT);
+        manifest.written(JAR, 3);
+        manifest.written(FIRST_CLASS, 1);
+        manifest.written(OTHER_JAR_CLASS, 6);
+        manifest.save();
+        manifest = new IncrementalManifest(dir, FINGERPRINT);
+        manifest.kept(JAR, 3);
+        manifest.save();
+        manifest = new IncrementalManifest(dir, FINGERPRINT);
+        assertTrue(manifest.isUnchanged(FIRST_CLASS, 1));
+        assertFalse(manifest.isUnchanged(OTHER_JAR_CLASS, 6));
+    }
+}
@@ -0,0 +1,69 @@
+package edu.columbia.cs.psl.phosphor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class InstrumentedClassCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final byte[] ORIGINAL = "original class bytes".getBytes();
+    private static final byte[] INSTRUMENTED = "instrumented class bytes".getBytes();
+
+    /* Checks that a class that was put is found again, both by the same cache and after the archive is reopened. */
+    @Test
+    public void testPutGet() throws Exception {
+        File archive = folder.newFile();
+        long hash = InstrumentedClassCache.hash(ORIGINAL);
+        InstrumentedClassCache cache = new InstrumentedClassCache(archive, 1);
+        assertNull(cache.get(ORIGINAL, hash));
+        cache.put(ORIGINAL, hash, INSTRUMENTED);
+        assertArrayEquals(INSTRUMENTED, cache.get(ORIGINAL, hash));
+        cache.close();
+        cache = new InstrumentedClassCache(archive, 1);
+        assertArrayEquals(INSTRUMENTED, cache.get(ORIGINAL, hash));
+        cache.close();
+    }
+
+    /* Checks that classes instrumented with a different configuration are not served. */
+    @Test
+    public void testFingerprintMismatch() throws Exception {
+        File archive = folder.newFile();
+        long hash = InstrumentedClassCache.hash(ORIGINAL);
+        InstrumentedClassCache cache = new InstrumentedClassCache(archive, 1);
+        cache.put(ORIGINAL, hash, INSTRUMENTED);
+        cache.close();
+        cache = new InstrumentedClassCache(archive, 2);
+        assertNull(cache.get(ORIGINAL, hash));
+        cache.close();
+    }
+
+    /* Checks that a partially written record is dropped while the records before it are kept. */
+    @Test
+    public void testTruncatedRecordIsDropped() throws Exception {
+        File archive = folder.newFile();
+        byte[] other = "other class bytes".getBytes();
+        InstrumentedClassCache cache = new InstrumentedClassCache(archive, 1);
+        cache.put(ORIGINAL, InstrumentedClassCache.hash(ORIGINAL), INSTRUMENTED);
+        cache.put(other, InstrumentedClassCache.hash(other), INSTRUMENTED);
+        cache.close();
+        RandomAccessFile raf = new RandomAccessFile(archive, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+        cache = new InstrumentedClassCache(archive, 1);
+        assertArrayEquals(INSTRUMENTED, cache.get(ORIGINAL, InstrumentedClassCache.hash(ORIGINAL)));
+        assertNull(cache.get(other, InstrumentedClassCache.hash(other)));
+        cache.put(other, InstrumentedClassCache.hash(other), INSTRUMENTED);
+        cache.close();
+        cache = new InstrumentedClassCache(archive, 1);
+        assertArrayEquals(INSTRUMENTED, cache.get(other, InstrumentedClassCache.hash(other)));
+        cache.close();
+    }
+}
@@ -0,0 +1,76 @@
+package edu.columbia.cs.psl.phosphor.instrumenter;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class InstrumentationProfilerTest {
+
+    @BeforeClass
+    public static void enable() throws IOException {
+        File f = File.createTempFile("profile", ".json");
+        f.deleteOnExit();
+        InstrumentationProfiler.enable(f);
+    }
+
+    private static MethodNode method(String name) {
+        MethodNode mn = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, name, "()V", null, null);
+        mn.instructions.add(new InsnNode(Opcodes.RETURN));
+        return mn;
+    }
+
+    /* Records the methods of a class being instrumented, each of which had lvs local variables created for it. */
+    private static void instrumentMethods(int lvs, String... names) {
+        for(String name : names) {
+            InstrumentationProfiler.MethodProfile m = InstrumentationProfiler.methodStarted(name, method(name), name + "$$PHOSPHORTAGGED", "()V");
+            InstrumentationProfiler.localsCreated(lvs, 0);
+            InstrumentationProfiler.methodFinished(m);
+        }
+    }
+
+    /* Checks that when a whole class is instrumented again with reduced size, each of its methods is recorded once,
+     * for the attempt that is kept. */
+    @Test
+    public void testClassReinstrumentedRecordsMethodsOnce() {
+        InstrumentationProfiler.ClassProfile profile = InstrumentationProfiler.classStarted("Reduced", 100);
+        try {
+            instrumentMethods(1, "a", "b");
+            profile.reinstrumenting();
+            instrumentMethods(2, "a", "b");
+            assertEquals(2, profile.methods.size());
+            assertEquals("a", profile.methods.get(0).name);
+            assertEquals("b", profile.methods.get(1).name);
+            for(InstrumentationProfiler.MethodProfile m : profile.methods) {
+                assertEquals(2, m.lvsCreated);
+            }
+        } finally {
+            InstrumentationProfiler.classEnded();
+        }
+    }
+
+    /* Checks that when a single method is instrumented again with reduced size, only the local variables created for
+     * the attempt that is kept are counted. */
+    @Test
+    public void testMethodReinstrumentedCountsLastAttempt() {
+        InstrumentationProfiler.ClassProfile profile = InstrumentationProfiler.classStarted("Reduced", 100);
+        try {
+            InstrumentationProfiler.MethodProfile m = InstrumentationProfiler.methodStarted("big", method("big"), "big$$PHOSPHORTAGGED", "()V");
+            InstrumentationProfiler.localsCreated(5, 3);
+            InstrumentationProfiler.methodReinstrumenting();
+            InstrumentationProfiler.localsCreated(2, 1);
+            InstrumentationProfiler.methodFinished(m);
+            assertEquals(1, profile.methods.size());
+            assertEquals(2, m.lvsCreated);
+            assertEquals(1, m.tmpLVsCreated);
+        } finally {
+            InstrumentationProfiler.classEnded();
+        }
+    }
+}
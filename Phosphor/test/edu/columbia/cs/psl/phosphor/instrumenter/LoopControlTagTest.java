@@ -0,0 +1,122 @@
+package edu.columbia.cs.psl.phosphor.instrumenter;
+
+import edu.columbia.cs.psl.phosphor.Configuration;
+import edu.columbia.cs.psl.phosphor.PreMain;
+import edu.columbia.cs.psl.phosphor.TaintUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.util.CheckClassAdapter;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class LoopControlTagTest {
+
+    private static final String CLASS_NAME = "LoopBranches";
+    private static final String CTRL = "edu/columbia/cs/psl/phosphor/struct/ControlTaintTagStack";
+
+    @BeforeClass
+    public static void init() {
+        Configuration.init();
+    }
+
+    /* Returns a class with a method count(Object[], int) that counts the elements of the array that are not null
+     * in a loop, then checks whether its first element is null after the loop. */
+    private static byte[] makeClass() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, CLASS_NAME, null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "count", "([Ljava/lang/Object;I)I", null, null);
+        mv.visitCode();
+        Label head = new Label();
+        Label skip = new Label();
+        Label end = new Label();
+        Label firstNull = new Label();
+        // i = 0; acc = 0
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitVarInsn(Opcodes.ISTORE, 2);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitVarInsn(Opcodes.ISTORE, 3);
+        // while(i < n)
+        mv.visitLabel(head);
+        mv.visitVarInsn(Opcodes.ILOAD, 2);
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitJumpInsn(Opcodes.IF_ICMPGE, end);
+        // if(a[i] != null) acc++
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ILOAD, 2);
+        mv.visitInsn(Opcodes.AALOAD);
+        mv.visitJumpInsn(Opcodes.IFNULL, skip);
+        mv.visitIincInsn(3, 1);
+        mv.visitLabel(skip);
+        // i++
+        mv.visitIincInsn(2, 1);
+        mv.visitJumpInsn(Opcodes.GOTO, head);
+        // if(a[0] == null) return 0
+        mv.visitLabel(end);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitInsn(Opcodes.AALOAD);
+        mv.visitJumpInsn(Opcodes.IFNULL, firstNull);
+        mv.visitVarInsn(Opcodes.ILOAD, 3);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLabel(firstNull);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static MethodNode instrument(String name) throws Exception {
+        byte[] ret = PreMain.PCLoggingTransformer._transform(null, CLASS_NAME, null, null, makeClass());
+        StringWriter errors = new StringWriter();
+        CheckClassAdapter.verify(new ClassReader(ret), LoopControlTagTest.class.getClassLoader(), false, new PrintWriter(errors));
+        assertEquals("", errors.toString());
+        ClassNode cn = new ClassNode();
+        new ClassReader(ret).accept(cn, 0);
+        for(MethodNode mn : cn.methods) {
+            if(mn.name.equals(name)) {
+                return mn;
+            }
+        }
+        fail("No method " + name);
+        return null;
+    }
+
+    private static int calls(MethodNode mn, String name, String argType) {
+        int calls = 0;
+        for(AbstractInsnNode insn = mn.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if(insn instanceof MethodInsnNode) {
+                MethodInsnNode min = (MethodInsnNode) insn;
+                if(min.owner.equals(CTRL) && min.name.equals(name) && min.desc.startsWith("(" + argType)) {
+                    calls++;
+                }
+            }
+        }
+        return calls;
+    }
+
+    /* Checks that branches on the tag of an object inside of a loop have their control tags cached like branches on
+     * primitives, that the tags of both operands of the comparison at the head of the loop are cached, and that the
+     * branch after the loop, which no LOOP_HEADER marks, is pushed as usual. */
+    @Test
+    public void testObjectBranchInLoopPushesLoopBranch() throws Exception {
+        MethodNode mn = instrument("count" + TaintUtils.METHOD_SUFFIX);
+        assertEquals(1, calls(mn, "pushLoopBranch", "Ljava/lang/Object;"));
+        assertEquals(1, calls(mn, "push", "Ljava/lang/Object;"));
+        assertEquals(0, calls(mn, "push", Configuration.TAINT_TAG_DESC));
+        assertEquals(2, calls(mn, "pushLoopBranch", Configuration.TAINT_TAG_DESC));
+    }
+}
@@ -0,0 +1,117 @@
+package edu.columbia.cs.psl.phosphor.instrumenter;
+
+import edu.columbia.cs.psl.phosphor.Configuration;
+import edu.columbia.cs.psl.phosphor.PreMain;
+import edu.columbia.cs.psl.phosphor.TaintUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.util.CheckClassAdapter;
+import org.objectweb.asm.util.Textifier;
+import org.objectweb.asm.util.TraceMethodVisitor;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class MethodSizeReductionTest {
+
+    private static final String CLASS_NAME = "OversizeMethods";
+
+    @BeforeClass
+    public static void init() {
+        Configuration.init();
+    }
+
+    /* Returns a class with a small method, and optionally a method that has no branches to split at but that is too
+     * large once instrumented. Since it reads a field, it can't just have its taints ignored without reducing it. */
+    private static byte[] makeClass(boolean withOversizeMethod) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, CLASS_NAME, null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "small", "(I)I", null, null);
+        mv.visitCode();
+        Label negative = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitJumpInsn(Opcodes.IFLE, negative);
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitInsn(Opcodes.ICONST_2);
+        mv.visitInsn(Opcodes.IMUL);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLabel(negative);
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitInsn(Opcodes.INEG);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        if(withOversizeMethod) {
+            cw.visitField(Opcodes.ACC_STATIC, "F", "I", null, null).visitEnd();
+            mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "big", "([I)V", null, null);
+            mv.visitCode();
+            mv.visitInsn(Opcodes.ICONST_0);
+            mv.visitVarInsn(Opcodes.ISTORE, 1);
+            for(int i = 0; i < 6000; i++) {
+                // acc = F + acc
+                mv.visitFieldInsn(Opcodes.GETSTATIC, CLASS_NAME, "F", "I");
+                mv.visitVarInsn(Opcodes.ILOAD, 1);
+                mv.visitInsn(Opcodes.IADD);
+                mv.visitVarInsn(Opcodes.ISTORE, 1);
+            }
+            // in[0] = acc
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitInsn(Opcodes.ICONST_0);
+            mv.visitVarInsn(Opcodes.ILOAD, 1);
+            mv.visitInsn(Opcodes.IASTORE);
+            mv.visitInsn(Opcodes.RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static ClassNode instrument(byte[] classBytes) throws Exception {
+        byte[] ret = PreMain.PCLoggingTransformer._transform(null, CLASS_NAME, null, null, classBytes);
+        StringWriter errors = new StringWriter();
+        CheckClassAdapter.verify(new ClassReader(ret), MethodSizeReductionTest.class.getClassLoader(), false, new PrintWriter(errors));
+        assertEquals("", errors.toString());
+        ClassNode cn = new ClassNode();
+        new ClassReader(ret).accept(cn, 0);
+        return cn;
+    }
+
+    private static String text(ClassNode cn, String name) {
+        for(MethodNode mn : cn.methods) {
+            if(mn.name.equals(name)) {
+                Textifier t = new Textifier();
+                mn.accept(new TraceMethodVisitor(t));
+                StringWriter sw = new StringWriter();
+                t.print(new PrintWriter(sw));
+                return sw.toString();
+            }
+        }
+        fail("No method " + name);
+        return null;
+    }
+
+    /* Checks that only the method that is too large once instrumented is instrumented again with reduced size: the
+     * other method of the class is instrumented just as it would be without it, and the class still verifies. */
+    @Test
+    public void testOnlyOversizeMethodIsReduced() throws Exception {
+        int methodsBefore = MethodSizeStats.methodsReduced();
+        int classesBefore = MethodSizeStats.classesReduced();
+        ClassNode withBig = instrument(makeClass(true));
+        assertEquals(methodsBefore + 1, MethodSizeStats.methodsReduced());
+        assertEquals(classesBefore, MethodSizeStats.classesReduced());
+        ClassNode withoutBig = instrument(makeClass(false));
+        String small = "small" + TaintUtils.METHOD_SUFFIX;
+        assertEquals(text(withoutBig, small), text(withBig, small));
+        assertNotNull(text(withBig, "big" + TaintUtils.METHOD_SUFFIX));
+    }
+}
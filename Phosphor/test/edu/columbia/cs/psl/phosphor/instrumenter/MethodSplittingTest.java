@@ -0,0 +1,143 @@
+package edu.columbia.cs.psl.phosphor.instrumenter;
+
+import edu.columbia.cs.psl.phosphor.Configuration;
+import edu.columbia.cs.psl.phosphor.PreMain;
+import edu.columbia.cs.psl.phosphor.TaintUtils;
+import edu.columbia.cs.psl.phosphor.struct.ControlTaintTagStack;
+import edu.columbia.cs.psl.phosphor.struct.LazyIntArrayObjTags;
+import edu.columbia.cs.psl.phosphor.struct.TaintedIntWithObjTag;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.util.CheckClassAdapter;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.*;
+
+public class MethodSplittingTest {
+
+    private static final String CLASS_NAME = "SplitMethods";
+    private static final int BLOCKS = 150;
+    private static final int ADDS = 12;
+
+    @BeforeClass
+    public static void init() {
+        Configuration.init();
+    }
+
+    /* Returns a class with a method run(int[]) that only becomes too large once instrumented for control flow
+     * tracking. It adds in[1] to acc ADDS times in each of its many blocks in which in[0] is greater than the block's index,
+     * all inside of a try block. Halfway through, it also stores acc in x, then reads in[in[2]]. If that throws,
+     * the handler returns x, which was written in the blocks before, so it must see the value stored there. */
+    private static byte[] makeClass() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, CLASS_NAME, null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "run", "([I)I", null, null);
+        mv.visitCode();
+        Label start = new Label();
+        Label end = new Label();
+        Label handler = new Label();
+        mv.visitTryCatchBlock(start, end, handler, "java/lang/ArrayIndexOutOfBoundsException");
+        // acc = 0; x = -1
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitVarInsn(Opcodes.ISTORE, 1);
+        mv.visitInsn(Opcodes.ICONST_M1);
+        mv.visitVarInsn(Opcodes.ISTORE, 2);
+        mv.visitLabel(start);
+        for(int i = 0; i < BLOCKS; i++) {
+            // if(in[0] > i) acc += in[1] + in[1] + ...
+            Label skip = new Label();
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitInsn(Opcodes.ICONST_0);
+            mv.visitInsn(Opcodes.IALOAD);
+            mv.visitIntInsn(Opcodes.SIPUSH, i);
+            mv.visitJumpInsn(Opcodes.IF_ICMPLE, skip);
+            for(int j = 0; j < ADDS; j++) {
+                mv.visitVarInsn(Opcodes.ILOAD, 1);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitInsn(Opcodes.ICONST_1);
+                mv.visitInsn(Opcodes.IALOAD);
+                mv.visitInsn(Opcodes.IADD);
+                mv.visitVarInsn(Opcodes.ISTORE, 1);
+            }
+            mv.visitLabel(skip);
+            if(i == BLOCKS / 2) {
+                // x = acc; acc += in[in[2]]
+                mv.visitVarInsn(Opcodes.ILOAD, 1);
+                mv.visitVarInsn(Opcodes.ISTORE, 2);
+                mv.visitVarInsn(Opcodes.ILOAD, 1);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitInsn(Opcodes.ICONST_2);
+                mv.visitInsn(Opcodes.IALOAD);
+                mv.visitInsn(Opcodes.IALOAD);
+                mv.visitInsn(Opcodes.IADD);
+                mv.visitVarInsn(Opcodes.ISTORE, 1);
+            }
+        }
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitLabel(end);
+        mv.visitInsn(Opcodes.IRETURN);
+        // catch(ArrayIndexOutOfBoundsException e) { return x; }
+        mv.visitLabel(handler);
+        mv.visitInsn(Opcodes.POP);
+        mv.visitVarInsn(Opcodes.ILOAD, 2);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static Class<?> instrument(byte[] classBytes) throws Exception {
+        final byte[] ret = PreMain.PCLoggingTransformer._transform(null, CLASS_NAME, null, null, classBytes);
+        StringWriter errors = new StringWriter();
+        CheckClassAdapter.verify(new ClassReader(ret), MethodSplittingTest.class.getClassLoader(), false, new PrintWriter(errors));
+        assertEquals("", errors.toString());
+        return new ClassLoader(MethodSplittingTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                if(!name.equals(CLASS_NAME))
+                    throw new ClassNotFoundException(name);
+                return defineClass(name, ret, 0, ret.length);
+            }
+        }.loadClass(CLASS_NAME);
+    }
+
+    private static int run(Method m, int... in) throws Exception {
+        TaintedIntWithObjTag ret = (TaintedIntWithObjTag) m.invoke(null, new LazyIntArrayObjTags(in), in, new ControlTaintTagStack(), new TaintedIntWithObjTag());
+        return ret.val;
+    }
+
+    /* Checks that a method that is only too large once instrumented is split rather than instrumented again with
+     * reduced size, and that the handler of a try block around the code moved into helpers still sees the locals
+     * written there when an exception is thrown in them. */
+    @Test
+    public void testSplitMethodKeepsLocalsSeenByHandler() throws Exception {
+        int reducedBefore = MethodSizeStats.methodsReduced();
+        Class<?> c = instrument(makeClass());
+        assertEquals(reducedBefore, MethodSizeStats.methodsReduced());
+        Method run = null;
+        boolean split = false;
+        for(Method m : c.getDeclaredMethods()) {
+            if(m.getName().equals("run" + TaintUtils.METHOD_SUFFIX))
+                run = m;
+            else if(m.getName().startsWith("run" + TaintUtils.METHOD_SUFFIX_SPLIT))
+                split = true;
+        }
+        assertNotNull(run);
+        assertTrue(split);
+        // No exception: acc is ADDS times in[1] for each of the first in[0] blocks, plus in[in[2]] = in[1]
+        assertEquals(BLOCKS * ADDS * 3 + 3, run(run, 1000, 3, 1));
+        // in[in[2]] throws: x is what acc was halfway through
+        assertEquals((BLOCKS / 2 + 1) * ADDS * 3, run(run, 1000, 3, 7));
+        assertEquals(2 * ADDS * 5, run(run, 2, 5, -1));
+    }
+}
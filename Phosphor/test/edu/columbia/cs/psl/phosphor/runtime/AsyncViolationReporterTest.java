@@ -0,0 +1,224 @@
+package edu.columbia.cs.psl.phosphor.runtime;
+
+import edu.columbia.cs.psl.phosphor.runtime.AsyncViolationReporter.Overflow;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class AsyncViolationReporterTest {
+
+    /* Records the reports it is given, and the threads that made them. Until open is called, the first report waits,
+     * which keeps the background thread of an AsyncViolationReporter from emptying its buffer. Later reports do not
+     * wait. */
+    private static class RecordingReporter extends ViolationReporter {
+        final List<Object> reports = Collections.synchronizedList(new ArrayList<Object>());
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch gate;
+
+        RecordingReporter(boolean closed) {
+            gate = new CountDownLatch(closed ? 1 : 0);
+        }
+
+        void open() {
+            gate.countDown();
+        }
+
+        void awaitFirst() throws InterruptedException {
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+        }
+
+        @Override
+        public void sanitized(Object obj) {
+            record(obj);
+        }
+
+        @Override
+        public void sunk(Taint<?> tag, Object obj, String actualSink, TaintLevel taintLevel) {
+            record(actualSink + ":" + obj + ":" + taintLevel);
+        }
+
+        private void record(Object obj) {
+            if(entered.getCount() > 0) {
+                entered.countDown();
+                try {
+                    gate.await();
+                } catch(InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+            threads.add(Thread.currentThread());
+            reports.add(obj);
+        }
+    }
+
+    /* Checks that many more reports than fit in the buffer are all made, in order, on the background thread. */
+    @Test
+    public void testReportsAreMadeInOrder() {
+        RecordingReporter delegate = new RecordingReporter(false);
+        AsyncViolationReporter reporter = new AsyncViolationReporter(delegate, 4, Overflow.BLOCK);
+        List<Object> expected = new ArrayList<>();
+        for(int i = 0; i < 1000; i++) {
+            reporter.sanitized(i);
+            expected.add(i);
+        }
+        reporter.sunk(null, "obj", "sink", TaintLevel.TAINTED);
+        expected.add("sink:obj:TAINTED");
+        reporter.close();
+        assertEquals(expected, delegate.reports);
+        assertFalse(delegate.threads.contains(Thread.currentThread()));
+    }
+
+    /* Checks that under DROP the reports that do not fit in the buffer are discarded and counted. */
+    @Test
+    public void testDropCountsDiscardedReports() throws InterruptedException {
+        RecordingReporter delegate = new RecordingReporter(true);
+        AsyncViolationReporter reporter = new AsyncViolationReporter(delegate, 4, Overflow.DROP);
+        reporter.sanitized(0);
+        delegate.awaitFirst();
+        for(int i = 1; i < 8; i++) {
+            reporter.sanitized(i);
+        }
+        assertEquals(3, reporter.getDropped());
+        delegate.open();
+        reporter.close();
+        assertEquals(fromZeroTo(5), delegate.reports);
+    }
+
+    /* Checks that under CALLER_RUNS the reports that do not fit in the buffer are made on the calling thread. */
+    @Test
+    public void testCallerRunsReportsThatDoNotFit() throws InterruptedException {
+        RecordingReporter delegate = new RecordingReporter(true);
+        AsyncViolationReporter reporter = new AsyncViolationReporter(delegate, 4, Overflow.CALLER_RUNS);
+        reporter.sanitized(0);
+        delegate.awaitFirst();
+        for(int i = 1; i < 5; i++) {
+            reporter.sanitized(i);
+        }
+        for(int i = 5; i < 8; i++) {
+            reporter.sanitized(i);
+        }
+        assertEquals(Arrays.<Object>asList(5, 6, 7), delegate.reports);
+        assertEquals(Collections.nCopies(3, Thread.currentThread()), delegate.threads);
+        delegate.open();
+        reporter.close();
+        assertEquals(new HashSet<>(fromZeroTo(8)), new HashSet<>(delegate.reports));
+        assertEquals(8, delegate.reports.size());
+    }
+
+    /* Checks that under BLOCK a report that does not fit in the buffer waits for room, and is not lost. */
+    @Test
+    public void testBlockWaitsForRoom() throws InterruptedException {
+        RecordingReporter delegate = new RecordingReporter(true);
+        final AsyncViolationReporter reporter = new AsyncViolationReporter(delegate, 4, Overflow.BLOCK);
+        reporter.sanitized(0);
+        delegate.awaitFirst();
+        for(int i = 1; i < 5; i++) {
+            reporter.sanitized(i);
+        }
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                reporter.sanitized(5);
+            }
+        };
+        producer.start();
+        producer.join(100);
+        assertTrue(producer.isAlive());
+        delegate.open();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        reporter.close();
+        assertEquals(fromZeroTo(6), delegate.reports);
+        assertEquals(0, reporter.getDropped());
+    }
+
+    /* Checks that a delegate that makes reports of its own under BLOCK, while the buffer is full, does not leave the
+     * background thread waiting on itself. */
+    @Test
+    public void testReportsFromTheBackgroundThreadDoNotBlock() throws InterruptedException {
+        final AsyncViolationReporter[] reporter = new AsyncViolationReporter[1];
+        RecordingReporter delegate = new RecordingReporter(true) {
+            @Override
+            public void sanitized(Object obj) {
+                super.sanitized(obj);
+                if(obj instanceof Integer) {
+                    reporter[0].sanitized(obj + "!");
+                }
+            }
+        };
+        reporter[0] = new AsyncViolationReporter(delegate, 2, Overflow.BLOCK);
+        reporter[0].sanitized(0);
+        delegate.awaitFirst();
+        reporter[0].sanitized(1);
+        reporter[0].sanitized(2);
+        delegate.open();
+        // Closing would let a waiting background thread go on, so the reports must all be made before it
+        for(int i = 0; i < 500 && delegate.reports.size() < 6; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(6, delegate.reports.size());
+        reporter[0].close();
+        assertEquals(new HashSet<Object>(Arrays.asList(0, 1, 2, "0!", "1!", "2!")), new HashSet<>(delegate.reports));
+        for(Thread t : delegate.threads) {
+            assertNotSame(Thread.currentThread(), t);
+        }
+    }
+
+    /* Checks that close makes the reports left in the buffer before returning, and that later reports are made on the
+     * calling thread. */
+    @Test
+    public void testCloseMakesBufferedReports() throws InterruptedException {
+        RecordingReporter delegate = new RecordingReporter(true);
+        AsyncViolationReporter reporter = new AsyncViolationReporter(delegate, 8, Overflow.BLOCK);
+        reporter.sanitized(0);
+        delegate.awaitFirst();
+        for(int i = 1; i < 8; i++) {
+            reporter.sanitized(i);
+        }
+        delegate.open();
+        reporter.close();
+        assertEquals(fromZeroTo(8), delegate.reports);
+        reporter.sanitized(8);
+        assertEquals(fromZeroTo(9), delegate.reports);
+        assertSame(Thread.currentThread(), delegate.threads.get(8));
+    }
+
+    /* Checks that close does not stop at a slot that a producer claimed but has not filled: the reports after it are
+     * still made, and the report of the slot is counted as dropped. */
+    @Test
+    public void testCloseSkipsUnfilledSlots() throws Exception {
+        RecordingReporter delegate = new RecordingReporter(true);
+        AsyncViolationReporter reporter = new AsyncViolationReporter(delegate, 8, Overflow.DROP);
+        reporter.sanitized(0);
+        delegate.awaitFirst();
+        // Claims the next slot like a producer that has not filled it yet
+        Field tail = AsyncViolationReporter.class.getDeclaredField("tail");
+        tail.setAccessible(true);
+        ((AtomicLong) tail.get(reporter)).incrementAndGet();
+        reporter.sanitized(1);
+        reporter.sanitized(2);
+        delegate.open();
+        reporter.close();
+        assertEquals(fromZeroTo(3), delegate.reports);
+        assertEquals(1, reporter.getDropped());
+    }
+
+    private static List<Object> fromZeroTo(int n) {
+        List<Object> ret = new ArrayList<>();
+        for(int i = 0; i < n; i++) {
+            ret.add(i);
+        }
+        return ret;
+    }
+}
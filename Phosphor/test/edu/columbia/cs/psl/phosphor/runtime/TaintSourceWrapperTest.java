@@ -0,0 +1,204 @@
+package edu.columbia.cs.psl.phosphor.runtime;
+
+import edu.columbia.cs.psl.phosphor.Configuration;
+import edu.columbia.cs.psl.phosphor.struct.TaintedWithObjTag;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TaintSourceWrapperTest {
+
+    private boolean singleTaintLabel;
+
+    /* Keeps the label of each tag as it is, rather than an equal label that the sets of labels already hold, so that
+     * the tests can tell whether labels are shared. */
+    @Before
+    public void useSingleTaintLabels() {
+        singleTaintLabel = Configuration.SINGLE_TAINT_LABEL;
+        Configuration.SINGLE_TAINT_LABEL = true;
+    }
+
+    @After
+    public void resetSourceTraces() {
+        Configuration.SINGLE_TAINT_LABEL = singleTaintLabel;
+        Configuration.SOURCE_TRACE_DEPTH = -1;
+        TaintSourceWrapper.SharedLabels.labels.clear();
+    }
+
+    static class Base {
+        String inherited = new String("inherited");
+    }
+
+    static class Fields extends Base {
+        static String staticField = new String("static");
+        volatile String volatileField = new String("volatile");
+        List<String> list = new ArrayList<>(Arrays.asList("element"));
+        Object object = new String("object");
+        Integer boxed = 5;
+        int primitive = 5;
+        String[] array = new String[]{"array"};
+    }
+
+    /* Returns the values that walker reads from obj. */
+    private static List<Object> walk(TaintSourceWrapper.FieldWalker walker, Object obj) {
+        List<Object> values = new ArrayList<>();
+        for(int i = 0; i < walker.size(); i++) {
+            values.add(walker.get(obj, i));
+        }
+        return values;
+    }
+
+    private static boolean containsSame(List<Object> values, Object value) {
+        for(Object v : values) {
+            if(v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* Checks that the field walker reads each field that may hold a String or a List: inherited, static, volatile,
+     * List-typed and Object-typed fields, and no field that cannot. */
+    @Test
+    public void testFieldWalkerReadsStringAndListFields() {
+        Fields obj = new Fields();
+        List<Object> values = walk(TaintSourceWrapper.FieldWalker.of(Fields.class), obj);
+        assertTrue(containsSame(values, obj.inherited));
+        assertTrue(containsSame(values, Fields.staticField));
+        assertTrue(containsSame(values, obj.volatileField));
+        assertTrue(containsSame(values, obj.list));
+        assertTrue(containsSame(values, obj.object));
+        assertFalse(containsSame(values, obj.boxed));
+        assertFalse(containsSame(values, obj.array));
+        assertEquals(5, values.size());
+    }
+
+    /* Checks that the field walker reads the current values of the fields, rather than those the object had when the
+     * walker for its class was made. */
+    @Test
+    public void testFieldWalkerReadsCurrentValues() {
+        Fields obj = new Fields();
+        TaintSourceWrapper.FieldWalker walker = TaintSourceWrapper.FieldWalker.of(Fields.class);
+        assertSame(walker, TaintSourceWrapper.FieldWalker.of(Fields.class));
+        walk(walker, obj);
+        obj.inherited = new String("changed");
+        obj.volatileField = null;
+        obj.object = new String("other");
+        List<Object> values = walk(walker, obj);
+        assertTrue(containsSame(values, obj.inherited));
+        assertTrue(containsSame(values, obj.object));
+        assertTrue(values.contains(null));
+    }
+
+    static class Source implements TaintedWithObjTag {
+        Object tag;
+
+        @Override
+        public Object getPHOSPHOR_TAG() {
+            return tag;
+        }
+
+        @Override
+        public void setPHOSPHOR_TAG(Object t) {
+            tag = t;
+        }
+    }
+
+    /* Calls autoTaint the way that an instrumented source does, and returns the label of the tag that it adds. */
+    private static AutoTaintLabel source(String name) {
+        Source obj = new Source();
+        new TaintSourceWrapper<AutoTaintLabel>().autoTaint(obj, name, name, 0);
+        return (AutoTaintLabel) ((Taint) obj.tag).getSingleLabel();
+    }
+
+    /* Checks that when the depth of the traces of sources is set, their labels have that many frames, starting from
+     * the same frame as a whole trace, which skips generateTaint and autoTaint, or the whole trace if it is shorter. */
+    @Test
+    public void testSourceTraceDepth() {
+        StackTraceElement[][] traces = new StackTraceElement[4][];
+        int[] depths = new int[]{-1, 3, 0, 10000};
+        for(int i = 0; i < depths.length; i++) {
+            Configuration.SOURCE_TRACE_DEPTH = depths[i];
+            traces[i] = source("depth").getTrace();
+        }
+        StackTraceElement[] whole = traces[0];
+        assertEquals("source", whole[0].getMethodName());
+        assertEquals(TaintSourceWrapperTest.class.getName(), whole[0].getClassName());
+        assertArrayEquals(Arrays.copyOf(whole, 3), traces[1]);
+        assertEquals(0, traces[2].length);
+        assertArrayEquals(whole, traces[3]);
+    }
+
+    /* Checks that sources called from the same place share a single label, and that sources called from other places
+     * or with other names do not. */
+    @Test
+    public void testSameCallSiteSharesLabel() {
+        Configuration.SOURCE_TRACE_DEPTH = 2;
+        AutoTaintLabel[] labels = new AutoTaintLabel[2];
+        for(int i = 0; i < labels.length; i++) {
+            labels[i] = source("shared");
+        }
+        assertSame(labels[0], labels[1]);
+        AutoTaintLabel other = source("shared");
+        assertNotEquals(labels[0], other);
+        assertNotSame(labels[0], source("other"));
+    }
+
+    /* Checks that once the map of shared labels is full, the labels of new call sites are no longer shared, but still
+     * equal, while those that were already shared still are. */
+    @Test
+    public void testStopsSharingPastMaxLabels() {
+        Configuration.SOURCE_TRACE_DEPTH = 2;
+        AutoTaintLabel[] before = new AutoTaintLabel[2];
+        AutoTaintLabel[] after = new AutoTaintLabel[2];
+        for(int i = 0; i < 2; i++) {
+            if(i == 1) {
+                for(int j = TaintSourceWrapper.SharedLabels.labels.size(); j < TaintSourceWrapper.MAX_LABELS; j++) {
+                    AutoTaintLabel filler = new AutoTaintLabel("filler" + j, new StackTraceElement[0]);
+                    TaintSourceWrapper.SharedLabels.labels.put(filler, filler);
+                }
+            }
+            before[i] = source("before");
+        }
+        for(int i = 0; i < 2; i++) {
+            after[i] = source("after");
+        }
+        assertSame(before[0], before[1]);
+        assertEquals(after[0], after[1]);
+        assertNotSame(after[0], after[1]);
+        assertEquals(TaintSourceWrapper.MAX_LABELS, TaintSourceWrapper.SharedLabels.labels.size());
+    }
+
+    /* Checks that labels are equal exactly when their sources and traces are, whether or not their hashes were
+     * computed first, including labels whose hashes collide. */
+    @Test
+    public void testAutoTaintLabelEquality() {
+        StackTraceElement[] trace = new StackTraceElement[]{new StackTraceElement("C", "m", "C.java", 1)};
+        StackTraceElement[] sameTrace = new StackTraceElement[]{new StackTraceElement("C", "m", "C.java", 1)};
+        StackTraceElement[] otherTrace = new StackTraceElement[]{new StackTraceElement("C", "m", "C.java", 2)};
+        AutoTaintLabel a = new AutoTaintLabel("Aa", trace);
+        AutoTaintLabel b = new AutoTaintLabel("Aa", sameTrace);
+        assertEquals(a, b);
+        assertEquals(b, a);
+        assertEquals(a.hashCode(), b.hashCode());
+        // Only a has its hash computed
+        AutoTaintLabel c = new AutoTaintLabel("Aa", sameTrace);
+        assertEquals(a, c);
+        assertEquals(new AutoTaintLabel("Aa", trace), a);
+        // "Aa" and "BB" have the same hash
+        AutoTaintLabel collision = new AutoTaintLabel("BB", trace);
+        assertEquals(a.hashCode(), collision.hashCode());
+        assertNotEquals(a, collision);
+        assertNotEquals(a, new AutoTaintLabel("Aa", otherTrace));
+        assertNotEquals(a, new AutoTaintLabel(null, trace));
+        assertEquals(new AutoTaintLabel(null, trace), new AutoTaintLabel(null, sameTrace));
+        assertNotEquals(a, null);
+        assertNotEquals(a, "Aa");
+    }
+}
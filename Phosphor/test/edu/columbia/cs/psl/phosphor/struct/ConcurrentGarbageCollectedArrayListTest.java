@@ -0,0 +1,75 @@
+package edu.columbia.cs.psl.phosphor.struct;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentGarbageCollectedArrayListTest {
+
+    /* Checks that elements added by several threads at once are each given their own index, at which they can be
+     * found. */
+    @Test
+    public void testConcurrentAdds() throws InterruptedException {
+        final ConcurrentGarbageCollectedArrayList<Integer> list = new ConcurrentGarbageCollectedArrayList<>();
+        final Object referent = new Object();
+        final int perThread = 20000;
+        final int[][] indexes = new int[8][perThread];
+        Thread[] threads = new Thread[indexes.length];
+        for(int t = 0; t < threads.length; t++) {
+            final int[] mine = indexes[t];
+            final int base = t * perThread;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for(int i = 0; i < perThread; i++) {
+                        mine[i] = list.add(referent, base + i);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        HashSet<Integer> seen = new HashSet<>();
+        for(int t = 0; t < indexes.length; t++) {
+            for(int i = 0; i < perThread; i++) {
+                assertTrue(seen.add(indexes[t][i]));
+                assertEquals(Integer.valueOf(t * perThread + i), list.get(indexes[t][i]));
+            }
+        }
+    }
+
+    /* Checks that the indexes of elements whose referents were garbage collected are eventually reused, and that the
+     * elements that are still referenced keep their indexes. */
+    @Test
+    public void testIndexesOfCollectedReferentsAreReused() throws InterruptedException {
+        ConcurrentGarbageCollectedArrayList<String> list = new ConcurrentGarbageCollectedArrayList<>();
+        HashSet<Integer> collected = new HashSet<>();
+        for(int i = 0; i < 1000; i++) {
+            collected.add(list.add(new Object(), "collected"));
+        }
+        List<Object> referents = new ArrayList<>();
+        List<Integer> kept = new ArrayList<>();
+        boolean reused = false;
+        for(int attempt = 0; attempt < 20 && !reused; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+            for(int i = 0; i < 100; i++) {
+                Object referent = new Object();
+                referents.add(referent);
+                int idx = list.add(referent, "kept" + referents.size());
+                kept.add(idx);
+                reused |= collected.contains(idx);
+            }
+        }
+        assertTrue(reused);
+        for(int i = 0; i < kept.size(); i++) {
+            assertEquals("kept" + (i + 1), list.get(kept.get(i)));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package edu.columbia.cs.psl.phosphor.struct;
+
+import edu.columbia.cs.psl.phosphor.runtime.Taint;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class ExceptionInfluenceTableTest {
+
+    /* Checks that the cached subclass relation agrees with Class.isAssignableFrom. */
+    @Test
+    public void testIsSubclass() {
+        Class<?>[] classes = new Class<?>[]{Throwable.class, Exception.class, RuntimeException.class, IOException.class,
+                FileNotFoundException.class, IllegalStateException.class, Error.class, Object.class};
+        for(Class<?> a : classes) {
+            for(Class<?> b : classes) {
+                assertEquals(a + " <: " + b, b.isAssignableFrom(a), ExceptionInfluenceTable.isSubclass(a, b));
+            }
+        }
+    }
+
+    /* Checks that taints added for the same class are merged into a single entry. */
+    @Test
+    public void testAddTaintMergesByClass() {
+        ExceptionInfluenceTable table = new ExceptionInfluenceTable();
+        Taint<String> t1 = new Taint<>("a");
+        table.addTaint(IOException.class, t1);
+        table.addTaint(IOException.class, new Taint<>("b"));
+        table.addTaint(RuntimeException.class, new Taint<>("c"));
+        assertEquals(2, table.size());
+        Taint tag = table.get(IOException.class).tag;
+        assertNotSame(t1, tag);
+        assertTrue(tag.contains(new Taint<>("a")));
+        assertTrue(tag.contains(new Taint<>("b")));
+        assertFalse(tag.contains(new Taint<>("c")));
+    }
+
+    /* Checks that tags are shared rather than copied, and that merging replaces the entry's tag instead of changing it. */
+    @Test
+    public void testAddTaintDoesNotChangeTagsInPlace() {
+        ExceptionInfluenceTable table = new ExceptionInfluenceTable();
+        Taint<String> t1 = new Taint<>("a");
+        table.addTaint(IOException.class, t1);
+        assertSame(t1, table.get(IOException.class).tag);
+        table.addTaint(IOException.class, new Taint<>("a"));
+        assertSame(t1, table.get(IOException.class).tag);
+        table.addTaint(IOException.class, new Taint<>("b"));
+        assertFalse(t1.contains(new Taint<>("b")));
+        assertTrue(table.get(IOException.class).tag.contains(new Taint<>("b")));
+    }
+
+    /* Checks that moving the entries handled by a catch type moves exactly its subclasses. */
+    @Test
+    public void testMoveSubclassesOf() {
+        ExceptionInfluenceTable from = new ExceptionInfluenceTable();
+        ExceptionInfluenceTable to = new ExceptionInfluenceTable();
+        from.addTaint(FileNotFoundException.class, new Taint<>("a"));
+        from.addTaint(IllegalStateException.class, new Taint<>("b"));
+        from.addTaint(IOException.class, new Taint<>("c"));
+        from.moveSubclassesOf(IOException.class, to);
+        assertEquals(1, from.size());
+        assertNotNull(from.get(IllegalStateException.class));
+        assertEquals(2, to.size());
+        assertNotNull(to.get(FileNotFoundException.class));
+        assertNotNull(to.get(IOException.class));
+        to.removeSubclassesOf(Exception.class);
+        assertTrue(to.isEmpty());
+    }
+}
@@ -0,0 +1,100 @@
+package edu.columbia.cs.psl.phosphor.struct;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WeakIdentityTagMapTest {
+
+    /* Checks that after adding many objects to a WeakIdentityTagMap, which makes its tables grow, each object is still
+     * mapped to its own tag. */
+    @Test
+    public void testPutManyObjects() {
+        WeakIdentityTagMap<Integer> map = new WeakIdentityTagMap<>();
+        List<Object> keys = new ArrayList<>();
+        for(int i = 0; i < 100000; i++) {
+            Object key = new Object();
+            keys.add(key);
+            map.put(key, i);
+        }
+        for(int i = 0; i < keys.size(); i++) {
+            assertEquals(Integer.valueOf(i), map.get(keys.get(i)));
+        }
+        assertEquals(keys.size(), map.size());
+    }
+
+    /* Checks that objects that are equal but not the same object do not share their tags. */
+    @Test
+    public void testEqualObjectsHaveSeparateTags() {
+        WeakIdentityTagMap<String> map = new WeakIdentityTagMap<>();
+        String a = new String("key");
+        String b = new String("key");
+        map.put(a, "a");
+        assertEquals("a", map.get(a));
+        assertNull(map.get(b));
+        map.put(b, "b");
+        assertEquals("a", map.get(a));
+        assertEquals("b", map.get(b));
+    }
+
+    /* Checks that putting a tag for an object that already has one replaces its tag. */
+    @Test
+    public void testReplaceTag() {
+        WeakIdentityTagMap<String> map = new WeakIdentityTagMap<>();
+        Object key = new Object();
+        map.put(key, "original");
+        map.put(key, "replacement");
+        assertEquals("replacement", map.get(key));
+        assertEquals(1, map.size());
+    }
+
+    /* Checks that the tags of objects that were garbage collected are eventually removed from the map. */
+    @Test
+    public void testCollectedObjectsAreRemoved() throws InterruptedException {
+        WeakIdentityTagMap<Integer> map = new WeakIdentityTagMap<>();
+        for(int i = 0; i < 10000; i++) {
+            map.put(new Object(), i);
+        }
+        List<Object> keys = new ArrayList<>();
+        for(int attempt = 0; attempt < 20 && map.size() >= 10000 + keys.size(); attempt++) {
+            System.gc();
+            Thread.sleep(10);
+            // Adding to the map is what removes the collected entries
+            for(int i = 0; i < 1000; i++) {
+                Object key = new Object();
+                keys.add(key);
+                map.put(key, i);
+            }
+        }
+        assertTrue(map.size() < 10000 + keys.size());
+    }
+
+    /* Checks that when keys are collected between puts, their entries are unlinked without losing the tags of the
+     * keys that are still alive, including those in the same buckets, and that the map stays as small as its live
+     * keys rather than growing with every key that was ever put. */
+    @Test
+    public void testKeysCollectedBetweenPuts() throws InterruptedException {
+        WeakIdentityTagMap<Integer> map = new WeakIdentityTagMap<>();
+        List<Object> kept = new ArrayList<>();
+        int put = 0;
+        for(int round = 0; round < 50; round++) {
+            for(int i = 0; i < 2000; i++, put++) {
+                Object key = new Object();
+                if(put % 10 == 0) {
+                    kept.add(key);
+                }
+                map.put(key, put);
+            }
+            System.gc();
+            Thread.sleep(5);
+        }
+        for(int i = 0; i < kept.size(); i++) {
+            assertEquals(Integer.valueOf(i * 10), map.get(kept.get(i)));
+        }
+        assertTrue(map.size() >= kept.size());
+        assertTrue(map.size() < put / 2);
+    }
+}
@@ -0,0 +1,75 @@
+package edu.columbia.cs.psl.test.phosphor;
+
+import edu.columbia.cs.psl.phosphor.runtime.MultiTainter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/* Calls methods that only compute on their arguments and have a loop, which fastPathDispatch sends to their
+ * uninstrumented copy when neither the arguments nor the control flow carry a tag. */
+public class ArgumentOnlyImplicitFastPathITCase extends BaseMultiTaintClass {
+
+	private static int sumOfDigits(int x) {
+		int sum = 0;
+		while (x != 0) {
+			sum += x % 10;
+			x /= 10;
+		}
+		return sum;
+	}
+
+	private static long power(long base, int exp) {
+		long ret = 1;
+		for (int i = 0; i < exp; i++)
+			ret *= base;
+		return ret;
+	}
+
+	@Test
+	public void testUntaintedArgumentsGiveUntaintedResult() {
+		int ret = sumOfDigits(1234);
+		assertEquals(10, ret);
+		assertNullOrEmpty(MultiTainter.getTaint(ret));
+		long p = power(3, 4);
+		assertEquals(81, p);
+		assertNullOrEmpty(MultiTainter.getTaint(p));
+	}
+
+	@Test
+	public void testTaintedArgumentPropagates() {
+		int x = MultiTainter.taintedInt(1234, "testTaintedArgumentPropagates");
+		int ret = sumOfDigits(x);
+		assertEquals(10, ret);
+		assertTaintHasOnlyLabel(MultiTainter.getTaint(ret), "testTaintedArgumentPropagates");
+	}
+
+	@Test
+	public void testOneTaintedArgumentOfSeveralPropagates() {
+		int exp = MultiTainter.taintedInt(4, "testOneTaintedArgumentOfSeveralPropagates");
+		long p = power(3, exp);
+		assertEquals(81, p);
+		assertTaintHasOnlyLabel(MultiTainter.getTaint(p), "testOneTaintedArgumentOfSeveralPropagates");
+	}
+
+	/* Untainted arguments, but called under a tainted branch: the control tag must still reach the result, so the
+	 * uninstrumented copy must not be called. */
+	@Test
+	public void testControlTagsReachResultOfUntaintedCall() {
+		int c = MultiTainter.taintedInt(1, "testControlTagsReachResultOfUntaintedCall");
+		if (c == 1) {
+			assertTaintHasOnlyLabel(MultiTainter.getTaint(sumOfDigits(1234)), "testControlTagsReachResultOfUntaintedCall");
+		}
+	}
+
+	/* Once the branch is left, nothing influences the call anymore, and its result is untainted again */
+	@Test
+	public void testUntaintedCallAfterTaintedBranch() {
+		int c = MultiTainter.taintedInt(1, "testUntaintedCallAfterTaintedBranch");
+		int ret = 0;
+		if (c == 1) {
+			ret = 5;
+		}
+		assertTaintHasOnlyLabel(MultiTainter.getTaint(ret), "testUntaintedCallAfterTaintedBranch");
+		assertNullOrEmpty(MultiTainter.getTaint(sumOfDigits(1234)));
+	}
+}
@@ -0,0 +1,64 @@
+package edu.columbia.cs.psl.phosphor.bench;
+
+import edu.columbia.cs.psl.phosphor.struct.ConcurrentGarbageCollectedArrayList;
+import edu.columbia.cs.psl.phosphor.struct.GarbageCollectedArrayList;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/* Reads and writes of hard-coded bypass fields from several threads at once, which add to and get from the list behind
+ * HardcodedBypassStore. Compares the lock-free list with a GarbageCollectedArrayList behind a single lock, which is how
+ * the store used to be. */
+@Fork(3)
+@Threads(8)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@State(Scope.Benchmark)
+public class BypassStoreContentionBenchmark {
+
+    // The number of elements added before measuring, which the reads are spread over
+    @Param({"10000"})
+    private int initialSize;
+
+    private final Object tag = new Object();
+    private GarbageCollectedArrayList<Object> lockedList;
+    private ConcurrentGarbageCollectedArrayList<Object> concurrentList;
+
+    @Setup(Level.Trial)
+    public void initLists() {
+        lockedList = new GarbageCollectedArrayList<>();
+        concurrentList = new ConcurrentGarbageCollectedArrayList<>();
+        for(int i = 0; i < initialSize; i++) {
+            lockedList.add(null, tag);
+            concurrentList.add(null, tag);
+        }
+    }
+
+    @Benchmark
+    public Object lockedGetTest() {
+        int i = ThreadLocalRandom.current().nextInt(initialSize);
+        synchronized(lockedList) {
+            return lockedList.get(i);
+        }
+    }
+
+    @Benchmark
+    public Object concurrentGetTest() {
+        return concurrentList.get(ThreadLocalRandom.current().nextInt(initialSize));
+    }
+
+    // Adds elements whose referents are collected right away, so that their indexes are reused
+    @Benchmark
+    public int lockedAddTest() {
+        synchronized(lockedList) {
+            return lockedList.add(new Object(), tag);
+        }
+    }
+
+    @Benchmark
+    public int concurrentAddTest() {
+        return concurrentList.add(new Object(), tag);
+    }
+}
@@ -0,0 +1,56 @@
+package edu.columbia.cs.psl.phosphor.bench;
+
+import edu.columbia.cs.psl.phosphor.Configuration;
+import edu.columbia.cs.psl.phosphor.Instrumenter;
+import edu.columbia.cs.psl.phosphor.PreMain;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/* Instruments a fixed corpus of JDK classes the way the static Instrumenter does, to measure the cost of the
+ * per-method visitor pipeline. */
+@Fork(3)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@State(Scope.Benchmark)
+public class InstrumentationThroughputBenchmark {
+
+    // The class that is instrumented, one of a few large classes with many branches, loops and handlers
+    @Param({"java/util/HashMap", "java/util/TreeMap", "java/util/regex/Pattern", "java/util/concurrent/ConcurrentHashMap"})
+    private String className;
+
+    // Bytes of the class being instrumented
+    private byte[] classBytes;
+
+    @Setup(Level.Trial)
+    public void readClass() throws Exception {
+        // Derives the settings that depend on the tracking mode, without which instrumenting any branch fails
+        Configuration.init();
+        ClassLoader loader = ClassLoader.getSystemClassLoader();
+        Instrumenter.loader = loader;
+        PreMain.bigLoader = loader;
+        try(InputStream is = loader.getResourceAsStream(className + ".class")) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buf = new byte[16384];
+            int n;
+            while((n = is.read(buf)) != -1) {
+                bos.write(buf, 0, n);
+            }
+            classBytes = bos.toByteArray();
+        }
+        Instrumenter.analyzeClass(new ByteArrayInputStream(classBytes));
+        // A class that can not be instrumented comes back empty, which would only measure the failure path
+        if(instrumentTest().length == 0) {
+            throw new IllegalStateException("Could not instrument " + className);
+        }
+    }
+
+    @Benchmark
+    public byte[] instrumentTest() throws Exception {
+        return new PreMain.PCLoggingTransformer().transform(Instrumenter.loader, className, null, null, classBytes);
+    }
+}
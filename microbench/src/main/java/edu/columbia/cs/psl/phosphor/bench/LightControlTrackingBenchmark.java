@@ -0,0 +1,65 @@
+package edu.columbia.cs.psl.phosphor.bench;
+
+import edu.columbia.cs.psl.phosphor.runtime.Taint;
+import edu.columbia.cs.psl.phosphor.struct.ControlTaintTagStack;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/* Replays the calls that instrumentation makes for a method with a sequence of branches on tainted values,
+ * followed by a store, with full -controlTrack push/pop bookkeeping and with -lightControlTrackSummary. */
+@Fork(3)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@State(Scope.Benchmark)
+public class LightControlTrackingBenchmark {
+
+    // The number of branches taken in the method
+    @Param({"4", "16", "64"})
+    private int branches;
+
+    // The number of distinct labels on the branch conditions
+    @Param({"1", "4"})
+    private int labels;
+
+    // Tags of the branch conditions
+    private Taint<String>[] conditionTags;
+    // Tag of the value that is stored under the branches
+    private Taint<String> valueTag;
+
+    @SuppressWarnings("unchecked")
+    @Setup(Level.Trial)
+    public void initTags() {
+        conditionTags = new Taint[branches];
+        for(int i = 0; i < branches; i++) {
+            conditionTags[i] = new Taint<>("label" + (i % labels));
+        }
+        valueTag = new Taint<>("value");
+    }
+
+    @Benchmark
+    public Taint<String> pushPopTest() {
+        ControlTaintTagStack ctrl = new ControlTaintTagStack();
+        int[] branchState = null;
+        Taint<String> result = valueTag;
+        for(int i = 0; i < branches; i++) {
+            branchState = ctrl.push(conditionTags[i], branchState, i, branches + 2);
+            result = Taint.combineTags(result, ctrl);
+            ctrl.pop(branchState, i);
+        }
+        ctrl.pop(branchState);
+        return result;
+    }
+
+    @Benchmark
+    public Taint<String> summaryTagTest() {
+        ControlTaintTagStack ctrl = new ControlTaintTagStack();
+        Taint<String> result = valueTag;
+        for(int i = 0; i < branches; i++) {
+            ctrl.addSummaryTag(conditionTags[i]);
+            result = Taint.combineTags(result, ctrl);
+        }
+        return result;
+    }
+}
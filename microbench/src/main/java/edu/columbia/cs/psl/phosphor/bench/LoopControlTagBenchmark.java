@@ -0,0 +1,68 @@
+package edu.columbia.cs.psl.phosphor.bench;
+
+import edu.columbia.cs.psl.phosphor.runtime.Taint;
+import edu.columbia.cs.psl.phosphor.struct.ControlTaintTagStack;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/* Replays the push and pop calls that -controlTrack instrumentation makes for a nested loop kernel whose loop
+ * conditions depend on tainted bounds, with and without the tags pushed by branches inside of loops being cached. The
+ * control tag is only read in the loop body, not combined into a value: Taint.combineTags returns early for a value
+ * that already has the control tag with either push, which would hide the difference between them. */
+@Fork(3)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@State(Scope.Benchmark)
+public class LoopControlTagBenchmark {
+
+    // The number of iterations of the outer loop
+    @Param({"10", "100"})
+    private int outerIterations;
+
+    // The number of iterations of the inner loop for each iteration of the outer loop
+    @Param({"10", "100"})
+    private int innerIterations;
+
+    // Tags of the outer and inner loop bounds
+    private Taint<String> outerBoundTag;
+    private Taint<String> innerBoundTag;
+
+    @Setup(Level.Trial)
+    public void initTags() {
+        outerBoundTag = new Taint<>("outer");
+        innerBoundTag = new Taint<>("inner");
+    }
+
+    @Benchmark
+    public void nestedLoopPushTest(Blackhole bh) {
+        ControlTaintTagStack ctrl = new ControlTaintTagStack();
+        int[] branches = null;
+        for(int i = 0; i < outerIterations; i++) {
+            branches = ctrl.push(outerBoundTag, branches, 0, 2);
+            for(int j = 0; j < innerIterations; j++) {
+                branches = ctrl.push(innerBoundTag, branches, 1, 2);
+                bh.consume(ctrl.getTag());
+                ctrl.pop(branches, 1);
+            }
+            ctrl.pop(branches, 0);
+        }
+    }
+
+    @Benchmark
+    public void nestedLoopPushLoopBranchTest(Blackhole bh) {
+        ControlTaintTagStack ctrl = new ControlTaintTagStack();
+        int[] branches = null;
+        for(int i = 0; i < outerIterations; i++) {
+            branches = ctrl.pushLoopBranch(outerBoundTag, branches, 0, 2);
+            for(int j = 0; j < innerIterations; j++) {
+                branches = ctrl.pushLoopBranch(innerBoundTag, branches, 1, 2);
+                bh.consume(ctrl.getTag());
+                ctrl.pop(branches, 1);
+            }
+            ctrl.pop(branches, 0);
+        }
+    }
+}